@@ -0,0 +1,309 @@
+package vandy.mooc.prime.activities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import vandy.mooc.prime.utils.BoundedMemoizer;
+import vandy.mooc.prime.utils.Memoizer;
+import vandy.mooc.prime.utils.MillerRabinPrimeChecker;
+import vandy.mooc.prime.utils.PollardRhoPrimeChecker;
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.SegmentedSieve;
+import vandy.mooc.prime.utils.TrialDivisionPrimeChecker;
+
+/**
+ * Measures the throughput and time per candidate of each PrimeChecker
+ * strategy over several distributions of candidates.  Each operation
+ * checks the next candidate from a fixed, seeded array, and its
+ * result is returned so JMH feeds it to a Blackhole.  A new strategy
+ * is benchmarked by adding it to the Checker enum.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PrimeCheckerBenchmark {
+    /**
+     * Number of candidates in each array, which must be a power of 2.
+     */
+    private static final int sCANDIDATES = 1 << 10;
+
+    /**
+     * Number of distinct values in the REPEATED distribution.
+     */
+    private static final int sDISTINCT_REPEATED = 64;
+
+    /**
+     * Seed used to generate the candidates, so every run checks the
+     * same ones.
+     */
+    private static final long sSEED = 42;
+
+    /**
+     * The distributions of candidates.
+     */
+    public enum Distribution {
+        /**
+         * Numbers below 2^16.  Numbers below 10 are left out so the
+         * results stay comparable with runs made when the brute-force
+         * checker couldn't handle them.
+         */
+        SMALL {
+            long next(Random random) {
+                return 10 + random.nextInt((1 << 16) - 10);
+            }
+        },
+
+        /**
+         * Numbers in the 2^20 values below Integer.MAX_VALUE, as in
+         * the apps.
+         */
+        NEAR_INT_MAX {
+            long next(Random random) {
+                return Integer.MAX_VALUE - random.nextInt(1 << 20);
+            }
+        },
+
+        /**
+         * Primes near Integer.MAX_VALUE, which are the worst case for
+         * trial division.
+         */
+        PRIMES {
+            long next(Random random) {
+                long n;
+                do
+                    n = NEAR_INT_MAX.next(random);
+                while (!MillerRabinPrimeChecker.isPrime(n));
+                return n;
+            }
+        },
+
+        /**
+         * Products of two primes near the square root of
+         * Integer.MAX_VALUE.
+         */
+        SEMIPRIMES {
+            long next(Random random) {
+                return nextPrime(random) * nextPrime(random);
+            }
+
+            /**
+             * Returns a random prime between 2^14 and 2^15.5.
+             */
+            private long nextPrime(Random random) {
+                long n;
+                do
+                    n = (1 << 14) + random.nextInt(46_340 - (1 << 14));
+                while (!MillerRabinPrimeChecker.isPrime(n));
+                return n;
+            }
+        },
+
+        /**
+         * A small set of NEAR_INT_MAX numbers that's checked over
+         * and over, which shows the benefit of memoizing results.
+         */
+        REPEATED {
+            long next(Random random) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            long[] candidates(Random random) {
+                long[] distinct = NEAR_INT_MAX.candidates(random);
+                long[] candidates = new long[sCANDIDATES];
+                for (int i = 0; i < candidates.length; ++i)
+                    candidates[i] = distinct[random.nextInt(sDISTINCT_REPEATED)];
+                return candidates;
+            }
+        };
+
+        /**
+         * Returns the next candidate generated by @a random.
+         */
+        abstract long next(Random random);
+
+        /**
+         * Returns an array of sCANDIDATES candidates generated by @a
+         * random.
+         */
+        long[] candidates(Random random) {
+            long[] candidates = new long[sCANDIDATES];
+            for (int i = 0; i < candidates.length; ++i)
+                candidates[i] = next(random);
+            return candidates;
+        }
+    }
+
+    /**
+     * The PrimeChecker strategies.
+     */
+    public enum Checker {
+        /**
+         * The brute-force loop used by PrimeCallable, which is the
+         * same algorithm as PrimeRunnable.isPrime().
+         */
+        BRUTE_FORCE {
+            PrimeChecker create(long[] candidates) {
+                return PrimeCallable.sPrimeChecker::applyAsLong;
+            }
+        },
+
+        /**
+         * The brute-force loop memoized by a BoundedMemoizer.
+         */
+        MEMOIZED {
+            PrimeChecker create(long[] candidates) {
+                Memoizer<Long, Long> cache =
+                    new BoundedMemoizer<>(PrimeCallable.sPrimeChecker::applyAsLong,
+                                          100_000);
+                return cache::get;
+            }
+        },
+
+        /**
+         * Trial division by the primes up to the square root, as
+         * memoized by PrimeCallable's default constructor.
+         */
+        TRIAL_DIVISION {
+            PrimeChecker create(long[] candidates) {
+                return new TrialDivisionPrimeChecker();
+            }
+        },
+
+        /**
+         * Deterministic Miller-Rabin, backed by trial division for
+         * composites.
+         */
+        MILLER_RABIN {
+            PrimeChecker create(long[] candidates) {
+                return new MillerRabinPrimeChecker();
+            }
+        },
+
+        /**
+         * Deterministic Miller-Rabin, backed by Pollard's rho for
+         * composites.
+         */
+        POLLARD_RHO {
+            PrimeChecker create(long[] candidates) {
+                return new PollardRhoPrimeChecker();
+            }
+        },
+
+        /**
+         * A segmented sieve over the candidates.
+         */
+        SEGMENTED_SIEVE {
+            PrimeChecker create(long[] candidates) {
+                return new SegmentedSieve(candidates);
+            }
+        },
+
+        /**
+         * A segmented sieve over each chunk of the candidates, as
+         * PrimeStrategy.SEGMENTED_SIEVE builds them in the apps.  The
+         * next chunk's sieve is built when its first candidate is
+         * checked, so the cost of building a sieve per chunk is
+         * spread over the chunk's candidates.
+         */
+        SEGMENTED_SIEVE_PER_CHUNK {
+            PrimeChecker create(long[] candidates) {
+                int chunkSize =
+                    PrimeChunkCallable.chunkSize(candidates.length,
+                                                 Runtime.getRuntime().availableProcessors());
+
+                return new PrimeChecker() {
+                    /**
+                     * Index of the next candidate to check.
+                     */
+                    private int mNext;
+
+                    /**
+                     * The sieve over the current chunk.
+                     */
+                    private PrimeChecker mSieve;
+
+                    @Override
+                    public long smallestFactor(long n) {
+                        int from = mNext++ & (sCANDIDATES - 1);
+                        if (from % chunkSize == 0)
+                            mSieve = PrimeStrategy.SEGMENTED_SIEVE
+                                .create(Arrays.copyOfRange(candidates,
+                                                           from,
+                                                           Math.min(from + chunkSize,
+                                                                    candidates.length)));
+                        return mSieve.smallestFactor(n);
+                    }
+                };
+            }
+        };
+
+        /**
+         * Returns a new PrimeChecker that checks @a candidates.
+         */
+        abstract PrimeChecker create(long[] candidates);
+    }
+
+    /**
+     * The distribution of candidates to check.
+     */
+    @Param
+    public Distribution distribution;
+
+    /**
+     * The strategy used to check the candidates.
+     */
+    @Param
+    public Checker checker;
+
+    /**
+     * The candidates, which are checked in order.
+     */
+    private long[] mCandidates;
+
+    /**
+     * The PrimeChecker being measured.
+     */
+    private PrimeChecker mPrimeChecker;
+
+    /**
+     * Index of the next candidate to check.
+     */
+    private int mNext;
+
+    /**
+     * Generate the candidates and create the PrimeChecker before each
+     * trial, so memoized results don't carry over between trials.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        mCandidates = distribution.candidates(new Random(sSEED));
+        mPrimeChecker = checker.create(mCandidates);
+        mNext = 0;
+    }
+
+    /**
+     * Check the next candidate, returning its smallest factor.
+     */
+    @Benchmark
+    public long smallestFactor() {
+        return mPrimeChecker.smallestFactor(mCandidates[mNext++ & (sCANDIDATES - 1)]);
+    }
+}
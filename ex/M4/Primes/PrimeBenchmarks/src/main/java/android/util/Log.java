@@ -0,0 +1,61 @@
+package android.util;
+
+/**
+ * Stands in for the Android logger so the app's classes can run on a
+ * plain JVM, where log messages are printed to System.err.
+ */
+public final class Log {
+    /**
+     * This class only has static methods, so it's never instantiated.
+     */
+    private Log() {
+    }
+
+    /**
+     * Send a debug log @a message tagged with @a tag.
+     */
+    public static int d(String tag, String message) {
+        return println("D", tag, message);
+    }
+
+    /**
+     * Send an informational log @a message tagged with @a tag.
+     */
+    public static int i(String tag, String message) {
+        return println("I", tag, message);
+    }
+
+    /**
+     * Send a warning log @a message tagged with @a tag.
+     */
+    public static int w(String tag, String message) {
+        return println("W", tag, message);
+    }
+
+    /**
+     * Send a warning log @a message tagged with @a tag, followed by
+     * the stack trace of @a throwable.
+     */
+    public static int w(String tag, String message, Throwable throwable) {
+        int length = println("W", tag, message);
+        throwable.printStackTrace();
+        return length;
+    }
+
+    /**
+     * Send an error log @a message tagged with @a tag.
+     */
+    public static int e(String tag, String message) {
+        return println("E", tag, message);
+    }
+
+    /**
+     * Print @a message at @a level, returning the number of
+     * characters printed like the Android logger does.
+     */
+    private static int println(String level, String tag, String message) {
+        String line = level + "/" + tag + ": " + message;
+        System.err.println(line);
+        return line.length();
+    }
+}
@@ -0,0 +1,723 @@
+package vandy.mooc.prime.runner;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import vandy.mooc.prime.activities.BigPrimeCallable;
+import vandy.mooc.prime.activities.PrimeCallable;
+import vandy.mooc.prime.activities.PrimeChunkCallable;
+import vandy.mooc.prime.activities.PrimePublisher;
+import vandy.mooc.prime.activities.PrimeStrategy;
+import vandy.mooc.prime.utils.Flow;
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.PrimeCounter;
+import vandy.mooc.prime.utils.RandomCandidates;
+import vandy.mooc.prime.utils.ShortestJobFirstExecutor;
+
+/**
+ * Runs the prime computations of the PrimeExecutorCompletionService
+ * app from the command line, without Android, and prints a summary of
+ * their throughput and latency.  It accepts these options, all of
+ * which are optional:
+ *
+ *   --count=N         number of random candidates (default 100000)
+ *   --min=N           smallest candidate (default MAX_VALUE - count)
+ *   --max=N           largest candidate (default Integer.MAX_VALUE)
+ *   --threads=N       size of the thread pool (default is the number
+ *                     of cores)
+ *   --strategy=NAME   a PrimeStrategy (default SEGMENTED_SIEVE)
+ *   --seed=N          seed for the random candidates
+ *   --window=N        deliver the results in the order of the
+ *                     candidates, with at most N candidates checked
+ *                     ahead of the last result delivered (default 0,
+ *                     which delivers them in completion order)
+ *   --bits=N          check random N-bit BigInteger candidates with
+ *                     the Baillie-PSW test instead, which ignores
+ *                     --min, --max, --strategy, and --window
+ *   --scheduler=NAME  a Scheduler (default CHUNKED)
+ *   --aging=N         nanoseconds an SJF task must wait to make up
+ *                     for one more estimated division (default 1000)
+ *   --deadline=N      give up checking a candidate with TRIAL_DIVISION
+ *                     after N microseconds, report that it's unknown,
+ *                     and requeue it with POLLARD_RHO (FIFO and SJF
+ *                     with --strategy=TRIAL_DIVISION only, default
+ *                     0, which means no deadline)
+ *   --workers=N       check the candidates in N worker processes
+ *                     connected over loopback TCP, each with --threads
+ *                     threads (CHUNKED without --window only, default
+ *                     0, which checks them in this process)
+ *   --pi=N            count the primes up to N with a PrimeCounter on
+ *                     --threads threads instead, which ignores the
+ *                     other options
+ *
+ * For example, "gradle run --args='--threads=16 --strategy=POLLARD_RHO'".
+ */
+public class PrimeRunner {
+    /**
+     * Number of candidates to check if the user doesn't specify
+     * otherwise.
+     */
+    private final static int sDEFAULT_COUNT = 100_000;
+
+    /**
+     * Number of nanoseconds a task waiting in a
+     * ShortestJobFirstExecutor must wait to make up for one more
+     * estimated division if the user doesn't specify otherwise.
+     */
+    private final static long sDEFAULT_AGING_NANOS = 1000;
+
+    /**
+     * How the candidates are divided into tasks and scheduled.
+     */
+    enum Scheduler {
+        /**
+         * Check ranges of candidates in chunks, delivered by a
+         * PrimePublisher from a fixed thread pool.
+         */
+        CHUNKED,
+
+        /**
+         * Check each candidate in its own PrimeCallable on a fixed
+         * thread pool, which runs them in the order they were
+         * submitted.
+         */
+        FIFO,
+
+        /**
+         * Check each candidate in its own PrimeCallable on a
+         * ShortestJobFirstExecutor, which runs the ones it estimates
+         * are cheapest first.
+         */
+        SJF
+    }
+
+    /**
+     * Main entry point, which parses @a args, runs the computations,
+     * and prints the summary.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int count = sDEFAULT_COUNT;
+        Long min = null;
+        long max = Integer.MAX_VALUE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        PrimeStrategy strategy = PrimeStrategy.SEGMENTED_SIEVE;
+        long seed = System.nanoTime();
+        int window = 0;
+        int bits = 0;
+        Scheduler scheduler = Scheduler.CHUNKED;
+        long agingNanos = sDEFAULT_AGING_NANOS;
+        long deadlineMicros = 0;
+        int workers = 0;
+        long pi = 0;
+
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2)
+                usage(arg);
+
+            switch (option[0]) {
+            case "--count":
+                count = Integer.parseInt(option[1]);
+                break;
+            case "--min":
+                min = Long.parseLong(option[1]);
+                break;
+            case "--max":
+                max = Long.parseLong(option[1]);
+                break;
+            case "--threads":
+                threads = Integer.parseInt(option[1]);
+                break;
+            case "--strategy":
+                strategy = PrimeStrategy.valueOf(option[1].toUpperCase(Locale.ROOT));
+                break;
+            case "--seed":
+                seed = Long.parseLong(option[1]);
+                break;
+            case "--window":
+                window = Integer.parseInt(option[1]);
+                break;
+            case "--bits":
+                bits = Integer.parseInt(option[1]);
+                break;
+            case "--scheduler":
+                scheduler = Scheduler.valueOf(option[1].toUpperCase(Locale.ROOT));
+                break;
+            case "--aging":
+                agingNanos = Long.parseLong(option[1]);
+                break;
+            case "--deadline":
+                deadlineMicros = Long.parseLong(option[1]);
+                break;
+            case "--workers":
+                workers = Integer.parseInt(option[1]);
+                break;
+            case "--pi":
+                pi = Long.parseLong(option[1]);
+                break;
+            default:
+                usage(arg);
+            }
+        }
+
+        if (min == null)
+            min = max - count;
+        if (count <= 0 || threads <= 0 || window < 0 || bits < 0
+            || agingNanos <= 0 || deadlineMicros < 0
+            || deadlineMicros > 0 && (scheduler == Scheduler.CHUNKED
+                                      || !strategy.supportsDeadline())
+            || workers < 0 || pi < 0 || pi > PrimeCounter.sMAX_X
+            || workers > 0 && (scheduler != Scheduler.CHUNKED || window > 0)
+            || min < 2 || min >= max)
+            usage(String.join(" ", args));
+
+        if (pi > 0) {
+            runPi(pi, threads);
+            return;
+        }
+
+        if (bits > 0) {
+            System.out.println("Checking " + count
+                               + " " + bits + "-bit candidates"
+                               + " with Baillie-PSW"
+                               + " on " + threads + " threads");
+
+            runBig(count, bits, seed, threads);
+            return;
+        }
+
+        // Describe "count" random numbers in [min, max), which each
+        // chunk generates for itself when it runs.
+        RandomCandidates candidates =
+            new RandomCandidates(seed, count, min, max);
+
+        System.out.println("Checking " + count
+                           + " candidates in [" + min + ", " + max + ")"
+                           + " with " + strategy
+                           + " on " + threads + " threads"
+                           + (workers > 0 ? " in each of " + workers + " workers" : "")
+                           + (scheduler != Scheduler.CHUNKED
+                              ? " one at a time, " + scheduler
+                              : window > 0 ? " in order" : ""));
+
+        if (workers > 0)
+            runSharded(candidates, strategy, workers, threads).print();
+        else if (scheduler == Scheduler.CHUNKED) {
+            run(candidates, strategy.createFactory(candidates), threads, window).print();
+
+            // Print how long the chunks waited in the pool's queue
+            // and then ran.
+            System.out.println(PrimeChunkCallable.latencies());
+        } else if (strategy == PrimeStrategy.MEMOIZED)
+            runEachAsync(candidates, threads, scheduler, agingNanos).print();
+        else {
+            long timeoutNanos = TimeUnit.MICROSECONDS.toNanos(deadlineMicros);
+            PrimeStrategy firstStrategy = strategy;
+            runEach(candidates,
+                    values -> firstStrategy.create(values, timeoutNanos),
+                    PrimeStrategy.POLLARD_RHO.create(null),
+                    threads,
+                    scheduler,
+                    agingNanos).print();
+        }
+
+        // Print how well the cache worked if the strategy used it.
+        if (strategy == PrimeStrategy.MEMOIZED)
+            System.out.println(PrimeCallable.cacheStats());
+    }
+
+    /**
+     * Print how to use this program, complaining about @a arg, and
+     * exit.
+     */
+    private static void usage(String arg) {
+        System.err.println("invalid argument: " + arg);
+        System.err.println("usage: PrimeRunner [--count=N] [--min=N] [--max=N]"
+                           + " [--threads=N] [--strategy="
+                           + Arrays.toString(PrimeStrategy.values())
+                           + "] [--seed=N] [--window=N] [--bits=N]"
+                           + " [--scheduler="
+                           + Arrays.toString(Scheduler.values())
+                           + "] [--aging=N] [--deadline=N] [--workers=N]"
+                           + " [--pi=N]");
+        System.exit(1);
+    }
+
+    /**
+     * Check @a candidates on a pool of @a threads, using the strategy
+     * @a checkerFactory creates for each chunk of them, and returns a
+     * summary of the run.  The results are delivered in the order of
+     * the candidates if @a window is greater than 0.
+     */
+    static Summary<PrimeCallable.PrimeResult> run
+        (RandomCandidates candidates,
+         Function<long[], PrimeChecker> checkerFactory,
+         int threads,
+         int window) throws InterruptedException {
+        ExecutorService executorService =
+            Executors.newFixedThreadPool(threads);
+        try {
+            Summary<PrimeCallable.PrimeResult> summary =
+                new Summary<>(candidates.size());
+            new PrimePublisher(executorService,
+                               threads,
+                               candidates,
+                               checkerFactory,
+                               window).subscribe(summary);
+            summary.await();
+            return summary;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Check @a candidates with @a strategy in @a workers worker
+     * processes with @a threads threads each, and returns a summary of
+     * the run, noting any workers that were lost.
+     */
+    static Summary<PrimeCallable.PrimeResult> runSharded
+        (RandomCandidates candidates,
+         PrimeStrategy strategy,
+         int workers,
+         int threads) throws InterruptedException {
+        ShardCoordinator coordinator =
+            new ShardCoordinator(candidates, strategy, workers, threads);
+        Summary<PrimeCallable.PrimeResult> summary =
+            new Summary<>(candidates.size());
+        coordinator.subscribe(summary);
+        summary.await();
+
+        if (coordinator.getLostWorkers() > 0)
+            summary.addNote("lost " + coordinator.getLostWorkers()
+                            + " workers, reassigned "
+                            + coordinator.getReassignedShards() + " shards");
+        return summary;
+    }
+
+    /**
+     * Check each of @a candidates in its own PrimeCallable on a pool
+     * of @a threads scheduled by @a scheduler, using the strategy @a
+     * checkerFactory creates for all of them, and returns a summary
+     * of the run.  Candidates whose checks run out of time are
+     * requeued to be checked by @a fallback, and the summary only
+     * counts their first, unknown, results, which is what an
+     * interactive user would see first.  The tasks of an SJF pool age
+     * by one estimated division every @a agingNanos nanoseconds.
+     */
+    static Summary<PrimeCallable.PrimeResult> runEach
+        (RandomCandidates candidates,
+         Function<long[], PrimeChecker> checkerFactory,
+         PrimeChecker fallback,
+         int threads,
+         Scheduler scheduler,
+         long agingNanos) throws InterruptedException {
+        long[] values = candidates.toArray();
+        PrimeChecker primeChecker = checkerFactory.apply(values);
+
+        ExecutorService executorService =
+            newExecutorService(threads, scheduler, agingNanos);
+        try {
+            BlockingQueue<CandidateTask> completed =
+                new LinkedBlockingQueue<>();
+            Summary<PrimeCallable.PrimeResult> summary =
+                new Summary<>(values.length);
+
+            for (long value : values)
+                executorService.execute
+                    (new CandidateTask(new PrimeCallable(value, primeChecker),
+                                       completed,
+                                       false));
+
+            int requeued = 0;
+            long lastRequeuedFinish = 0;
+            try {
+                for (int remaining = values.length; remaining > 0; --remaining) {
+                    CandidateTask task = completed.take();
+                    PrimeCallable.PrimeResult result = task.get();
+
+                    if (task.mRequeued)
+                        lastRequeuedFinish = System.nanoTime();
+                    else {
+                        summary.onNext(result);
+
+                        if (result.isUnknown()) {
+                            // Check the candidate again with the
+                            // fallback, which has no deadline.
+                            executorService.execute
+                                (new CandidateTask(new PrimeCallable(result.getPrimeCandidate(),
+                                                                     fallback),
+                                                   completed,
+                                                   true));
+                            ++requeued;
+                            ++remaining;
+                        }
+                    }
+                }
+                summary.onComplete();
+            } catch (ExecutionException e) {
+                summary.onError(e.getCause());
+            }
+
+            if (requeued > 0)
+                summary.addNote(requeued
+                                + " unknown results requeued, last resolved after "
+                                + Summary.format(lastRequeuedFinish - summary.mStart));
+            return summary;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Check each of @a candidates with PrimeCallable's cache on a
+     * pool of @a threads scheduled by @a scheduler, and returns a
+     * summary of the run.  Cached candidates are done as soon as
+     * they're looked up, and each of the others is checked by a task
+     * that Memoizer.getAsync() runs on the pool, so no pool thread
+     * waits for a candidate that another thread is checking.  The
+     * tasks of an SJF pool age by one estimated division every @a
+     * agingNanos nanoseconds.
+     */
+    static Summary<PrimeCallable.PrimeResult> runEachAsync
+        (RandomCandidates candidates,
+         int threads,
+         Scheduler scheduler,
+         long agingNanos) throws InterruptedException {
+        long[] values = candidates.toArray();
+
+        ExecutorService executorService =
+            newExecutorService(threads, scheduler, agingNanos);
+        try {
+            BlockingQueue<CompletableFuture<PrimeCallable.PrimeResult>> completed =
+                new LinkedBlockingQueue<>();
+            Summary<PrimeCallable.PrimeResult> summary =
+                new Summary<>(values.length);
+
+            int remaining = values.length;
+            try {
+                for (long value : values) {
+                    CompletableFuture<PrimeCallable.PrimeResult> future =
+                        PrimeCallable.checkAsync(value, executorService);
+                    future.whenComplete((result, throwable) -> completed.add(future));
+
+                    // Deliver the results that are already done, such
+                    // as cache hits, without waiting for the rest to
+                    // be submitted.
+                    for (CompletableFuture<PrimeCallable.PrimeResult> done;
+                         (done = completed.poll()) != null;
+                         --remaining)
+                        summary.onNext(done.get());
+                }
+
+                for (; remaining > 0; --remaining)
+                    summary.onNext(completed.take().get());
+                summary.onComplete();
+            } catch (ExecutionException e) {
+                summary.onError(e.getCause());
+            }
+            return summary;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns a pool of @a threads scheduled by @a scheduler, whose
+     * tasks age by one estimated division every @a agingNanos
+     * nanoseconds if it's SJF.
+     */
+    private static ExecutorService newExecutorService(int threads,
+                                                      Scheduler scheduler,
+                                                      long agingNanos) {
+        return scheduler == Scheduler.SJF
+            ? new ShortestJobFirstExecutor(threads, agingNanos)
+            : Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Checks one candidate and queues itself when it's done, much
+     * like the tasks of an ExecutorCompletionService.  Those tasks
+     * hide the PrimeCallable they wrap from the executor, whereas this
+     * one passes on its estimated cost to a ShortestJobFirstExecutor.
+     */
+    private static class CandidateTask
+            extends FutureTask<PrimeCallable.PrimeResult>
+            implements ShortestJobFirstExecutor.Job {
+        /**
+         * Checks the candidate.
+         */
+        private final PrimeCallable mPrimeCallable;
+
+        /**
+         * Queue of the tasks that are done.
+         */
+        private final BlockingQueue<CandidateTask> mCompleted;
+
+        /**
+         * True if the candidate is being checked again after its
+         * first check ran out of time.
+         */
+        final boolean mRequeued;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        CandidateTask(PrimeCallable primeCallable,
+                      BlockingQueue<CandidateTask> completed,
+                      boolean requeued) {
+            super(primeCallable);
+            mPrimeCallable = primeCallable;
+            mCompleted = completed;
+            mRequeued = requeued;
+        }
+
+        /**
+         * Returns the estimated cost of checking the candidate.
+         */
+        @Override
+        public long estimatedCost() {
+            return mPrimeCallable.estimatedCost();
+        }
+
+        /**
+         * Hook method called when the task is done, which queues it.
+         */
+        @Override
+        protected void done() {
+            mCompleted.add(this);
+        }
+    }
+
+    /**
+     * Count the primes up to @a x on a pool of @a threads and print
+     * the count and how long it took.
+     */
+    static void runPi(long x,
+                      int threads) {
+        ExecutorService executorService =
+            Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            long count = new PrimeCounter(executorService, threads).count(x);
+            System.out.printf(Locale.ROOT,
+                              "pi(%d) = %d in %.3f s on %d threads%n",
+                              x,
+                              count,
+                              (System.nanoTime() - start) / 1e9,
+                              threads);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Check @a count random odd @a bits-bit candidates generated from
+     * @a seed with the Baillie-PSW test on a pool of @a threads, and
+     * print a summary of the run, which includes how many of them
+     * are probably prime.
+     */
+    static void runBig(int count,
+                       int bits,
+                       long seed,
+                       int threads) throws InterruptedException {
+        Random random = new Random(seed);
+        ExecutorService executorService =
+            Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<BigPrimeCallable.BigPrimeResult> completionService =
+                new ExecutorCompletionService<>(executorService);
+            Summary<BigPrimeCallable.BigPrimeResult> summary =
+                new Summary<>(count);
+
+            for (int i = 0; i < count; ++i)
+                completionService.submit
+                    (new BigPrimeCallable(new BigInteger(bits, random)
+                                          .setBit(bits - 1)
+                                          .setBit(0)));
+
+            int primes = 0;
+            try {
+                for (int i = 0; i < count; ++i) {
+                    BigPrimeCallable.BigPrimeResult result =
+                        completionService.take().get();
+                    if (result.isProbablePrime())
+                        ++primes;
+                    summary.onNext(result);
+                }
+                summary.onComplete();
+            } catch (ExecutionException e) {
+                summary.onError(e.getCause());
+            }
+
+            summary.print();
+            System.out.println(primes + " probable primes");
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Receives the results of a run, recording when each one arrived,
+     * and prints a summary of them.
+     */
+    static class Summary<T>
+           implements Flow.Subscriber<T> {
+        /**
+         * Time the run started, in nanoseconds.
+         */
+        private final long mStart = System.nanoTime();
+
+        /**
+         * Time the run finished, in nanoseconds.
+         */
+        private long mFinish;
+
+        /**
+         * Time from the start until each result arrived, in
+         * nanoseconds.
+         */
+        private final long[] mLatencies;
+
+        /**
+         * Number of results that have arrived.
+         */
+        private int mCount;
+
+        /**
+         * The failure that ended the run, if any.
+         */
+        private Throwable mFailure;
+
+        /**
+         * Extra lines printed after the summary.
+         */
+        private final StringBuilder mNotes = new StringBuilder();
+
+        /**
+         * Released when the run finishes.
+         */
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+
+        /**
+         * Constructor initializes the fields for a run of @a count
+         * candidates.
+         */
+        Summary(int count) {
+            mLatencies = new long[count];
+        }
+
+        /**
+         * Add @a note to the lines printed after the summary.
+         */
+        void addNote(String note) {
+            mNotes.append(note).append('\n');
+        }
+
+        /**
+         * Wait for the run to finish.
+         */
+        void await() throws InterruptedException {
+            mFinished.await();
+        }
+
+        /**
+         * Hook method that requests all the results, since there's
+         * no UI to fall behind.
+         */
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        /**
+         * Hook method that records when @a result arrived.
+         */
+        @Override
+        public void onNext(T result) {
+            mLatencies[mCount++] = System.nanoTime() - mStart;
+        }
+
+        /**
+         * Hook method that records the @a throwable that ended the run.
+         */
+        @Override
+        public void onError(Throwable throwable) {
+            mFailure = throwable;
+            onComplete();
+        }
+
+        /**
+         * Hook method that records when the run finished.
+         */
+        @Override
+        public void onComplete() {
+            mFinish = System.nanoTime();
+            mFinished.countDown();
+        }
+
+        /**
+         * Print the throughput and the distribution of the time taken
+         * for the results to arrive.
+         */
+        void print() {
+            if (mFailure != null) {
+                System.out.println("Failed after " + mCount + " results");
+                mFailure.printStackTrace(System.out);
+            }
+
+            double seconds = (mFinish - mStart) / 1e9;
+            System.out.printf(Locale.ROOT,
+                              "%d results in %.3f s (%.0f candidates/s)%n",
+                              mCount,
+                              seconds,
+                              mCount / seconds);
+
+            long[] latencies = Arrays.copyOf(mLatencies, mCount);
+            Arrays.sort(latencies);
+            System.out.printf(Locale.ROOT,
+                              "time to result: mean %s, p50 %s, p90 %s, p99 %s, max %s%n",
+                              format((long) Arrays.stream(latencies)
+                                     .average()
+                                     .orElse(0)),
+                              format(percentile(latencies, 50)),
+                              format(percentile(latencies, 90)),
+                              format(percentile(latencies, 99)),
+                              format(percentile(latencies, 100)));
+            System.out.print(mNotes);
+        }
+
+        /**
+         * Returns the @a percent percentile of the @a sorted values.
+         */
+        private static long percentile(long[] sorted, int percent) {
+            if (sorted.length == 0)
+                return 0;
+            int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+            return sorted[Math.max(0, index)];
+        }
+
+        /**
+         * Returns @a nanos formatted in milliseconds.
+         */
+        private static String format(long nanos) {
+            return String.format(Locale.ROOT,
+                                 "%.3f ms",
+                                 nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+}
@@ -0,0 +1,649 @@
+package vandy.mooc.prime.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import vandy.mooc.prime.activities.PrimeCallable;
+import vandy.mooc.prime.activities.PrimeStrategy;
+import vandy.mooc.prime.utils.Flow;
+import vandy.mooc.prime.utils.RandomCandidates;
+
+/**
+ * Publishes the results of checking a sequence of random candidates
+ * for primality in several worker processes on the same host, so the
+ * computations can use more cores and memory than one JVM handles
+ * comfortably.  The coordinator launches the ShardWorker processes,
+ * which connect back to it over loopback TCP, divides the candidates
+ * into shards (ranges of indices), and assigns each worker a few
+ * shards at a time, so it always has work queued.  The results of
+ * each shard are merged into one stream of PrimeResults in the order
+ * the shards complete.  If a worker's connection is lost, the shards
+ * it hadn't finished are reassigned to the other workers, and any
+ * results it sent for them later are ignored, so every candidate's
+ * result is delivered exactly once.  Like PrimePublisher, shards are
+ * only assigned while the results in flight are fewer than the
+ * Subscriber has requested.
+ */
+public class ShardCoordinator
+       implements Flow.Publisher<PrimeCallable.PrimeResult> {
+    /**
+     * Number of shards the candidates are divided into per worker,
+     * which lets the faster workers take on more of them.
+     */
+    private static final int sSHARDS_PER_WORKER = 16;
+
+    /**
+     * Number of milliseconds to wait for the workers to connect.
+     */
+    private static final int sCONNECT_TIMEOUT_MS = 30_000;
+
+    /**
+     * Numbers to evaluate for "primality".
+     */
+    private final RandomCandidates mCandidates;
+
+    /**
+     * Strategy the workers use to check their shards.
+     */
+    private final PrimeStrategy mStrategy;
+
+    /**
+     * Number of worker processes.
+     */
+    private final int mWorkers;
+
+    /**
+     * Number of threads each worker uses.
+     */
+    private final int mThreads;
+
+    /**
+     * Number of workers whose connections were lost.
+     */
+    private final AtomicInteger mLostWorkers = new AtomicInteger();
+
+    /**
+     * Number of shards that were reassigned after their workers were
+     * lost.
+     */
+    private final AtomicInteger mReassignedShards = new AtomicInteger();
+
+    /**
+     * Constructor initializes the fields so @a candidates are checked
+     * with @a strategy by @a workers worker processes with @a threads
+     * threads each.
+     */
+    public ShardCoordinator(RandomCandidates candidates,
+                            PrimeStrategy strategy,
+                            int workers,
+                            int threads) {
+        mCandidates = candidates;
+        mStrategy = strategy;
+        mWorkers = workers;
+        mThreads = threads;
+    }
+
+    /**
+     * Check all the candidates on behalf of @a subscriber in a new
+     * set of worker processes.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super PrimeCallable.PrimeResult> subscriber) {
+        Session session = new Session(subscriber);
+        subscriber.onSubscribe(session);
+
+        // Launching and connecting to the workers blocks, so do it
+        // in the background.
+        new Thread(session::start, "ShardCoordinator").start();
+    }
+
+    /**
+     * Hook method that returns a new worker process that connects to
+     * @a port.  It's package-private so tests can launch workers that
+     * fail.
+     */
+    Process launch(int port) throws IOException {
+        String java = System.getProperty("java.home")
+            + File.separator + "bin" + File.separator + "java";
+
+        return new ProcessBuilder(java,
+                                  "-cp",
+                                  System.getProperty("java.class.path"),
+                                  ShardWorker.class.getName(),
+                                  String.valueOf(port))
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    }
+
+    /**
+     * A range of candidates that's checked by one worker.
+     */
+    private static class Shard {
+        /**
+         * Identifies the shard in the messages to and from workers.
+         */
+        final int mId;
+
+        /**
+         * Index of the first candidate in the shard.
+         */
+        final int mFrom;
+
+        /**
+         * Index after the last candidate in the shard.
+         */
+        final int mTo;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        Shard(int id, int from, int to) {
+            mId = id;
+            mFrom = from;
+            mTo = to;
+        }
+
+        /**
+         * Returns the number of candidates in the shard.
+         */
+        int size() {
+            return mTo - mFrom;
+        }
+    }
+
+    /**
+     * Keeps track of the workers and shards of one Subscriber.
+     */
+    private class Session
+            implements Flow.Subscription {
+        /**
+         * The Subscriber that receives the results.
+         */
+        private final Flow.Subscriber<? super PrimeCallable.PrimeResult> mSubscriber;
+
+        /**
+         * Shards that aren't assigned to a worker, with any reassigned
+         * ones first, which is guarded by "this".
+         */
+        private final Deque<Shard> mPending = new ArrayDeque<>();
+
+        /**
+         * Number of shards whose results haven't arrived, which is
+         * guarded by "this".
+         */
+        private int mRemainingShards;
+
+        /**
+         * Workers whose connections are still open, which is guarded
+         * by "this".
+         */
+        private final List<Connection> mConnections = new ArrayList<>();
+
+        /**
+         * Number of launched workers that haven't connected yet,
+         * which is guarded by "this".
+         */
+        private int mConnecting = mWorkers;
+
+        /**
+         * Worker processes that were launched, which is guarded by
+         * itself.
+         */
+        private final List<Process> mProcesses = new ArrayList<>();
+
+        /**
+         * Listens for the workers to connect.
+         */
+        private ServerSocket mServerSocket;
+
+        /**
+         * Results that have arrived but haven't been delivered, which
+         * is guarded by "this".
+         */
+        private final Queue<PrimeCallable.PrimeResult> mResults =
+            new ArrayDeque<>();
+
+        /**
+         * Number of results requested by the Subscriber that haven't
+         * been delivered, or Long.MAX_VALUE if the demand is
+         * unbounded, which is guarded by "this".
+         */
+        private long mRequested;
+
+        /**
+         * Number of candidates in assigned shards whose results
+         * haven't been delivered, which is guarded by "this".
+         */
+        private long mInFlight;
+
+        /**
+         * Keeps track of whether results are being delivered, so
+         * requests made by the Subscriber while it receives them
+         * don't deliver them out of turn, which is guarded by "this".
+         */
+        private boolean mDelivering;
+
+        /**
+         * Becomes true once the Subscriber has cancelled or been sent
+         * onComplete() or onError(), which is guarded by "this".
+         */
+        private boolean mDone;
+
+        /**
+         * Constructor divides the candidates into shards for @a
+         * subscriber.
+         */
+        Session(Flow.Subscriber<? super PrimeCallable.PrimeResult> subscriber) {
+            mSubscriber = subscriber;
+
+            int count = mCandidates.size();
+            int shardSize = Math.max(1,
+                                     (count + mWorkers * sSHARDS_PER_WORKER - 1)
+                                     / (mWorkers * sSHARDS_PER_WORKER));
+            for (int from = 0; from < count; from += shardSize)
+                mPending.add(new Shard(mPending.size(),
+                                       from,
+                                       Math.min(from + shardSize, count)));
+            mRemainingShards = mPending.size();
+        }
+
+        /**
+         * Add @a n to the number of results the Subscriber is willing
+         * to receive.
+         */
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException
+                         ("request of " + n + " results must be positive"));
+                    return;
+                }
+
+                // Add n without overflowing, which effectively makes
+                // the demand unbounded.
+                mRequested = mRequested + n < 0
+                    ? Long.MAX_VALUE
+                    : mRequested + n;
+                deliver();
+            }
+            assignAll();
+        }
+
+        /**
+         * Stop checking candidates and sending results.
+         */
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (mDone)
+                    return;
+                mDone = true;
+            }
+            shutdown();
+        }
+
+        /**
+         * Launch the workers and assign shards to each one as it
+         * connects.
+         */
+        void start() {
+            try {
+                mServerSocket =
+                    new ServerSocket(0, mWorkers, InetAddress.getLoopbackAddress());
+                mServerSocket.setSoTimeout(sCONNECT_TIMEOUT_MS);
+
+                for (int i = 0; i < mWorkers; ++i) {
+                    Process process = launch(mServerSocket.getLocalPort());
+                    synchronized (mProcesses) {
+                        mProcesses.add(process);
+                    }
+                }
+
+                for (int i = 0; i < mWorkers; ++i) {
+                    Socket socket;
+                    try {
+                        socket = mServerSocket.accept();
+                    } catch (SocketTimeoutException e) {
+                        // Carry on with the workers that did connect.
+                        synchronized (this) {
+                            if (!mConnections.isEmpty()) {
+                                mConnecting = 0;
+                                break;
+                            }
+                        }
+                        throw e;
+                    }
+
+                    Connection connection = new Connection(socket);
+                    synchronized (this) {
+                        --mConnecting;
+                        if (mDone) {
+                            connection.close();
+                            return;
+                        }
+                        mConnections.add(connection);
+                    }
+                    connection.start();
+                    assign(connection);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    fail(e);
+                }
+                shutdown();
+            }
+        }
+
+        /**
+         * Assign shards to every worker that has room for them.
+         */
+        private void assignAll() {
+            List<Connection> connections;
+            synchronized (this) {
+                connections = new ArrayList<>(mConnections);
+            }
+            for (Connection connection : connections)
+                assign(connection);
+        }
+
+        /**
+         * Assign pending shards to @a connection's worker until it has
+         * two per thread or the Subscriber's demand is met.
+         */
+        private void assign(Connection connection) {
+            List<Shard> shards = new ArrayList<>();
+            synchronized (this) {
+                while (!mDone
+                       && mConnections.contains(connection)
+                       && connection.mAssigned.size() < 2 * mThreads
+                       && mInFlight < mRequested
+                       && !mPending.isEmpty()) {
+                    Shard shard = mPending.poll();
+                    connection.mAssigned.put(shard.mId, shard);
+                    mInFlight += shard.size();
+                    shards.add(shard);
+                }
+            }
+
+            try {
+                connection.send(shards);
+            } catch (IOException e) {
+                lost(connection);
+            }
+        }
+
+        /**
+         * Hook method called when @a connection's worker sends the
+         * @a results of the shard identified by @a id.
+         */
+        private void completed(Connection connection,
+                               int id,
+                               List<PrimeCallable.PrimeResult> results) {
+            synchronized (this) {
+                // Ignore the results of a shard that was reassigned.
+                Shard shard = connection.mAssigned.remove(id);
+                if (shard == null || mDone)
+                    return;
+
+                --mRemainingShards;
+                mInFlight -= shard.size() - results.size();
+                mResults.addAll(results);
+                deliver();
+            }
+            assign(connection);
+        }
+
+        /**
+         * Hook method called when @a connection's worker is lost,
+         * which reassigns its shards to the other workers.
+         */
+        private void lost(Connection connection) {
+            synchronized (this) {
+                if (!mConnections.remove(connection) || mDone)
+                    return;
+
+                mLostWorkers.incrementAndGet();
+                for (Shard shard : connection.mAssigned.values()) {
+                    mPending.addFirst(shard);
+                    mInFlight -= shard.size();
+                    mReassignedShards.incrementAndGet();
+                }
+                connection.mAssigned.clear();
+
+                // The shards wait for the workers that haven't
+                // connected yet, if there are any.
+                if (mConnections.isEmpty() && mConnecting == 0)
+                    fail(new IOException("lost all the workers"));
+            }
+            connection.close();
+
+            if (isDone())
+                shutdown();
+            else
+                assignAll();
+        }
+
+        /**
+         * Deliver as many results as the Subscriber has requested,
+         * followed by onComplete() once they've all been delivered.
+         * Must be called while holding the lock on "this".
+         */
+        private void deliver() {
+            if (mDelivering)
+                return;
+
+            mDelivering = true;
+            try {
+                while (!mDone && mRequested > 0 && !mResults.isEmpty()) {
+                    if (mRequested != Long.MAX_VALUE)
+                        --mRequested;
+                    --mInFlight;
+                    mSubscriber.onNext(mResults.poll());
+                }
+
+                if (!mDone && mRemainingShards == 0 && mResults.isEmpty()) {
+                    mDone = true;
+                    mSubscriber.onComplete();
+
+                    // The workers block reading their connections,
+                    // so closing them can't block this thread.
+                    shutdown();
+                }
+            } finally {
+                mDelivering = false;
+            }
+        }
+
+        /**
+         * Send @a throwable to the Subscriber unless it's already
+         * done.  Must be called while holding the lock on "this".
+         */
+        private void fail(Throwable throwable) {
+            if (mDone)
+                return;
+
+            mDone = true;
+            mSubscriber.onError(throwable);
+        }
+
+        /**
+         * Returns true if the Subscriber has cancelled or been sent
+         * onComplete() or onError().
+         */
+        private synchronized boolean isDone() {
+            return mDone;
+        }
+
+        /**
+         * Close the connections and end the worker processes.
+         */
+        private void shutdown() {
+            List<Connection> connections;
+            synchronized (this) {
+                connections = new ArrayList<>(mConnections);
+                mConnections.clear();
+            }
+            for (Connection connection : connections)
+                connection.close();
+
+            try {
+                if (mServerSocket != null)
+                    mServerSocket.close();
+            } catch (IOException e) {
+                // Nothing else can be done.
+            }
+
+            synchronized (mProcesses) {
+                for (Process process : mProcesses)
+                    process.destroy();
+            }
+        }
+
+        /**
+         * The connection to one worker, whose thread reads the
+         * results the worker sends.
+         */
+        private class Connection
+                extends Thread {
+            /**
+             * The socket connected to the worker.
+             */
+            private final Socket mSocket;
+
+            /**
+             * Reads the worker's results.
+             */
+            private final DataInputStream mInput;
+
+            /**
+             * Sends the worker its shards.
+             */
+            private final DataOutputStream mOutput;
+
+            /**
+             * The shards assigned to the worker whose results haven't
+             * arrived, keyed by their ids, which is guarded by the
+             * Session.
+             */
+            final Map<Integer, Shard> mAssigned = new HashMap<>();
+
+            /**
+             * Constructor initializes the fields and sends the
+             * header describing the candidates to the worker.
+             */
+            Connection(Socket socket) throws IOException {
+                super("ShardCoordinator-" + socket.getPort());
+                setDaemon(true);
+
+                mSocket = socket;
+                mSocket.setTcpNoDelay(true);
+                mInput = new DataInputStream
+                    (new BufferedInputStream(socket.getInputStream()));
+                mOutput = new DataOutputStream
+                    (new BufferedOutputStream(socket.getOutputStream()));
+
+                mOutput.writeLong(mCandidates.getSeed());
+                mOutput.writeInt(mCandidates.getOffset());
+                mOutput.writeInt(mCandidates.size());
+                mOutput.writeLong(mCandidates.getOrigin());
+                mOutput.writeLong(mCandidates.getBound());
+                mOutput.writeUTF(mStrategy.name());
+                mOutput.writeInt(mThreads);
+                mOutput.flush();
+            }
+
+            /**
+             * Send @a shards to the worker.
+             */
+            synchronized void send(List<Shard> shards) throws IOException {
+                if (shards.isEmpty())
+                    return;
+
+                for (Shard shard : shards) {
+                    mOutput.writeInt(shard.mId);
+                    mOutput.writeInt(shard.mFrom);
+                    mOutput.writeInt(shard.mTo);
+                }
+                mOutput.flush();
+            }
+
+            /**
+             * Read the results of each shard until the connection is
+             * closed or lost.
+             */
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        int id = mInput.readInt();
+                        int count = mInput.readInt();
+                        if (count < 0) {
+                            // The worker couldn't check the shard,
+                            // which no other worker could either.
+                            IOException failure = new IOException
+                                ("worker failed: " + mInput.readUTF());
+                            synchronized (Session.this) {
+                                fail(failure);
+                            }
+                            shutdown();
+                            return;
+                        }
+
+                        List<PrimeCallable.PrimeResult> results =
+                            new ArrayList<>(count);
+                        for (int i = 0; i < count; ++i)
+                            results.add(new PrimeCallable.PrimeResult(mInput.readLong(),
+                                                                      mInput.readLong()));
+                        completed(this, id, results);
+                    }
+                } catch (IOException e) {
+                    lost(this);
+                }
+            }
+
+            /**
+             * Close the connection, which tells the worker to exit.
+             */
+            void close() {
+                try {
+                    mSocket.close();
+                } catch (IOException e) {
+                    // Nothing else can be done.
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of workers whose connections were lost.
+     */
+    public int getLostWorkers() {
+        return mLostWorkers.get();
+    }
+
+    /**
+     * Returns the number of shards that were reassigned after their
+     * workers were lost.
+     */
+    public int getReassignedShards() {
+        return mReassignedShards.get();
+    }
+}
@@ -0,0 +1,129 @@
+package vandy.mooc.prime.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import vandy.mooc.prime.activities.PrimeCallable;
+import vandy.mooc.prime.activities.PrimeChunkCallable;
+import vandy.mooc.prime.activities.PrimeStrategy;
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.RandomCandidates;
+
+/**
+ * A worker process launched by a ShardCoordinator, which connects
+ * back to it over loopback TCP and checks the shards of candidates it
+ * assigns.  The coordinator first sends a header that describes the
+ * candidates (seed, offset, count, origin, and bound), the name of
+ * the PrimeStrategy, and the number of threads to use.  Then it sends
+ * each shard as its id and the range of indices of its candidates.
+ * Each shard is checked by a PrimeChunkCallable on the worker's own
+ * thread pool, and its results are sent back as the shard's id, the
+ * number of results, and a (candidate, smallest factor) pair for each
+ * one, or a negative number followed by an error message if it
+ * failed.  The worker exits when the coordinator closes the
+ * connection.
+ */
+public class ShardWorker {
+    /**
+     * Main entry point, which connects to the coordinator listening
+     * on the loopback port given by @a args[0].
+     */
+    public static void main(String[] args) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        Integer.parseInt(args[0]))) {
+            socket.setTcpNoDelay(true);
+            DataInputStream input =
+                new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            long seed = input.readLong();
+            int offset = input.readInt();
+            int count = input.readInt();
+            long origin = input.readLong();
+            long bound = input.readLong();
+            RandomCandidates candidates =
+                new RandomCandidates(seed, offset + count, origin, bound)
+                .skip(offset);
+            Function<long[], PrimeChecker> checkerFactory =
+                PrimeStrategy.valueOf(input.readUTF()).createFactory(candidates);
+            ExecutorService executorService =
+                Executors.newFixedThreadPool(input.readInt());
+
+            try {
+                while (true) {
+                    int id;
+                    try {
+                        id = input.readInt();
+                    } catch (EOFException e) {
+                        // The coordinator is done with this worker.
+                        break;
+                    }
+                    int from = input.readInt();
+                    int to = input.readInt();
+
+                    // Each shard gets its own PrimeChecker for its own
+                    // candidates, so no worker holds them all.
+                    executorService.execute
+                        (() -> send(output,
+                                    id,
+                                    new PrimeChunkCallable(candidates,
+                                                           from,
+                                                           to,
+                                                           checkerFactory)));
+                }
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+
+        // Don't wait for any shards that are still running.
+        System.exit(0);
+    }
+
+    /**
+     * Check the candidates of @a chunk and send its results to the
+     * coordinator via @a output as the results of shard @a id.
+     */
+    private static void send(DataOutputStream output,
+                             int id,
+                             PrimeChunkCallable chunk) {
+        List<PrimeCallable.PrimeResult> results = null;
+        Exception failure = null;
+        try {
+            results = chunk.call();
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        try {
+            synchronized (output) {
+                output.writeInt(id);
+                if (failure != null) {
+                    output.writeInt(-1);
+                    output.writeUTF(String.valueOf(failure));
+                } else {
+                    output.writeInt(results.size());
+                    for (PrimeCallable.PrimeResult result : results) {
+                        output.writeLong(result.getPrimeCandidate());
+                        output.writeLong(result.getSmallestFactor());
+                    }
+                }
+                output.flush();
+            }
+        } catch (IOException e) {
+            // The coordinator is gone, so there's no one to work for.
+            System.exit(1);
+        }
+    }
+}
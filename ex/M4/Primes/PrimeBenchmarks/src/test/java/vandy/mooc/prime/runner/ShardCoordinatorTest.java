@@ -0,0 +1,196 @@
+package vandy.mooc.prime.runner;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import vandy.mooc.prime.activities.PrimeCallable;
+import vandy.mooc.prime.activities.PrimeStrategy;
+import vandy.mooc.prime.utils.Flow;
+import vandy.mooc.prime.utils.RandomCandidates;
+import vandy.mooc.prime.utils.TrialDivisionPrimeChecker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a ShardCoordinator delivers every result exactly once,
+ * even when workers are lost after they've been assigned shards.
+ */
+public class ShardCoordinatorTest {
+    /**
+     * The candidates checked by each test.
+     */
+    private final RandomCandidates mCandidates =
+        new RandomCandidates(42, 2_000, 1_000_000, 1_000_000_000);
+
+    /**
+     * A worker that reads its first shard and then exits without
+     * sending its results, as if it had crashed.
+     */
+    public static class CrashingWorker {
+        /**
+         * Main entry point, which connects to the coordinator
+         * listening on the loopback port given by @a args[0].
+         */
+        public static void main(String[] args) throws IOException {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                            Integer.parseInt(args[0]))) {
+                DataInputStream input =
+                    new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+                // Skip the header.
+                input.readLong();
+                input.readInt();
+                input.readInt();
+                input.readLong();
+                input.readLong();
+                input.readUTF();
+                input.readInt();
+
+                // Read the first shard's id and range.
+                input.readInt();
+                input.readInt();
+                input.readInt();
+            }
+        }
+    }
+
+    /**
+     * A coordinator whose first @a crashing workers crash.
+     */
+    private static class FaultyCoordinator
+            extends ShardCoordinator {
+        /**
+         * Number of workers left to launch that crash.
+         */
+        private final AtomicInteger mCrashing;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        FaultyCoordinator(RandomCandidates candidates,
+                          int workers,
+                          int crashing) {
+            super(candidates, PrimeStrategy.TRIAL_DIVISION, workers, 1);
+            mCrashing = new AtomicInteger(crashing);
+        }
+
+        @Override
+        Process launch(int port) throws IOException {
+            if (mCrashing.getAndDecrement() <= 0)
+                return super.launch(port);
+
+            String java = System.getProperty("java.home")
+                + File.separator + "bin" + File.separator + "java";
+            return new ProcessBuilder(java,
+                                      "-cp",
+                                      System.getProperty("java.class.path"),
+                                      CrashingWorker.class.getName(),
+                                      String.valueOf(port))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        }
+    }
+
+    /**
+     * A Subscriber that requests every result and records them.
+     */
+    private static class RecordingSubscriber
+            implements Flow.Subscriber<PrimeCallable.PrimeResult> {
+        /**
+         * The results received.
+         */
+        final List<PrimeCallable.PrimeResult> mResults = new ArrayList<>();
+
+        /**
+         * The error received, if any.
+         */
+        volatile Throwable mError;
+
+        /**
+         * Released by onComplete() or onError().
+         */
+        final CountDownLatch mDone = new CountDownLatch(1);
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public synchronized void onNext(PrimeCallable.PrimeResult result) {
+            mResults.add(result);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            mError = throwable;
+            mDone.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            mDone.countDown();
+        }
+    }
+
+    /**
+     * The shards of a lost worker are reassigned, so every candidate
+     * is still checked correctly exactly once.
+     */
+    @Test(timeout = 120_000)
+    public void reassignsShardsOfLostWorker() throws InterruptedException {
+        FaultyCoordinator coordinator =
+            new FaultyCoordinator(mCandidates, 3, 1);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        coordinator.subscribe(subscriber);
+        subscriber.mDone.await();
+
+        assertNull(String.valueOf(subscriber.mError), subscriber.mError);
+        assertEquals(1, coordinator.getLostWorkers());
+        assertTrue(coordinator.getReassignedShards() >= 1);
+
+        TrialDivisionPrimeChecker checker = new TrialDivisionPrimeChecker();
+        long[] candidates = new long[subscriber.mResults.size()];
+        for (int i = 0; i < candidates.length; ++i) {
+            PrimeCallable.PrimeResult result = subscriber.mResults.get(i);
+            candidates[i] = result.getPrimeCandidate();
+            assertEquals(checker.smallestFactor(candidates[i]),
+                         result.getSmallestFactor());
+        }
+
+        long[] expected = mCandidates.toArray();
+        Arrays.sort(expected);
+        Arrays.sort(candidates);
+        assertArrayEquals(expected, candidates);
+    }
+
+    /**
+     * Losing every worker is reported to onError().
+     */
+    @Test(timeout = 120_000)
+    public void reportsLossOfAllWorkers() throws InterruptedException {
+        FaultyCoordinator coordinator =
+            new FaultyCoordinator(mCandidates, 2, 2);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        coordinator.subscribe(subscriber);
+        subscriber.mDone.await();
+
+        assertTrue(subscriber.mError instanceof IOException);
+        assertEquals(2, coordinator.getLostWorkers());
+    }
+}
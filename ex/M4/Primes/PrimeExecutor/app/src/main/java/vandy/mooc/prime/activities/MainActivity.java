@@ -13,17 +13,18 @@ import android.widget.ScrollView;
 import android.widget.TextView;
 
 import java.util.Random;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import vandy.mooc.prime.R;
+import vandy.mooc.prime.utils.AdaptiveThreadPool;
+import vandy.mooc.prime.utils.PollardRhoPrimeChecker;
+import vandy.mooc.prime.utils.PrimeChecker;
 import vandy.mooc.prime.utils.UiUtils;
 
 /**
  * Main activity for an app that shows how to use the Java Executor
- * interface and a fixed-size thread pool to determine if n random
+ * interface and an adaptively sized thread pool to determine if n random
  * numbers are prime or not.  In addition, runtime configuration
  * changes are handled relatively gracefully.
  */
@@ -68,11 +69,21 @@ public class MainActivity
 
     /**
      * Reference to the Executor that runs the primality computations.
-     * Only allocate as many threads as their are processor cores
-     * since determining primaility is a CPU-bound computation.
+     * Start with as many threads as their are processor cores since
+     * determining primaility is a CPU-bound computation, and then
+     * adapt the size to the throughput the device actually delivers.
      */
-    private Executor mExecutor =
-        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private AdaptiveThreadPool mExecutor =
+        new AdaptiveThreadPool(1,
+                               Runtime.getRuntime().availableProcessors(),
+                               2 * Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Strategy used to determine if each random number is prime or
+     * not, which uses Pollard's rho to factor composites.
+     */
+    private final PrimeChecker mPrimeChecker =
+        new PollardRhoPrimeChecker();
 
     /**
      * Keeps track of whether the orientation of the phone has been
@@ -231,12 +242,16 @@ public class MainActivity
             // Set the number of running tasks to the count.
             mRunningTasks.set(count);
 
+            // Only report the latencies of this run's tasks.
+            PrimeRunnable.latencies().reset();
+
             // Create and execute a new PrimeRunnable for each of the
             // "count" random numbers between 0 and MAX_VALUE.
             new Random().longs(count, 0, Integer.MAX_VALUE)
                         .forEach(randomNumber ->
                                  mExecutor.execute(new PrimeRunnable(this,
-                                                                     randomNumber)));
+                                                                     randomNumber,
+                                                                     mPrimeChecker)));
 
             // Only print this message the first time the activity
             // runs.
@@ -257,8 +272,13 @@ public class MainActivity
             // Create a command to reset the UI.
             Runnable command = () -> {
                 // Append the stringToPrint and terminate it with a
-                // newline.
-                mTextViewLog.append("Finished primality computations\n");
+                // newline, followed by how long the tasks waited to
+                // run and then ran, which shows whether the pool
+                // needs more threads or the tasks need a faster
+                // algorithm, and how many threads the pool chose.
+                mTextViewLog.append("Finished primality computations\n"
+                                    + PrimeRunnable.latencies() + "\n"
+                                    + mExecutor.getSizeSummary() + "\n");
                 mScrollView.fullScroll(ScrollView.FOCUS_DOWN);
 
                 // Reshow the "start" FAB.
@@ -1,8 +1,13 @@
 package vandy.mooc.prime.activities;
 
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.TaskLatencies;
+import vandy.mooc.prime.utils.TrialDivisionPrimeChecker;
+
 /**
- * Uses a brute-force algorithm to determine if a given number is
- * prime or not.
+ * Uses a PrimeChecker strategy to determine if a given number is
+ * prime or not, which defaults to trial division by the primes up to
+ * its square root.
  */
 public class PrimeRunnable
        implements Runnable {
@@ -12,6 +17,11 @@ public class PrimeRunnable
     private final String TAG =
         getClass().getSimpleName();
 
+    /**
+     * Records how long each PrimeRunnable waits to run and then runs.
+     */
+    private static final TaskLatencies sLatencies = new TaskLatencies();
+
     /**
      * A reference to the MainActivity. 
      */
@@ -22,6 +32,16 @@ public class PrimeRunnable
      */
     private final long mPrimeCandidate;
 
+    /**
+     * Strategy used to determine if mPrimeCandidate is prime or not.
+     */
+    private final PrimeChecker mPrimeChecker;
+
+    /**
+     * Time this runnable was created, which is when it's executed.
+     */
+    private final long mSubmitted = System.nanoTime();
+
     /**
      * Constructor initializes the fields.
      */
@@ -29,30 +49,38 @@ public class PrimeRunnable
                          long primeCandidate) {
         mActivity = activity;
         mPrimeCandidate = primeCandidate;
+        mPrimeChecker = new TrialDivisionPrimeChecker();
+    }
+
+    /**
+     * Constructor initializes the fields so that @a primeCandidate is
+     * checked by the given @a primeChecker strategy.
+     */
+    public PrimeRunnable(MainActivity activity,
+                         long primeCandidate,
+                         PrimeChecker primeChecker) {
+        mActivity = activity;
+        mPrimeCandidate = primeCandidate;
+        mPrimeChecker = primeChecker;
     }
     
     /**
-     * This method provides a brute-force determination of whether
-     * number @a n is prime.  Returns 0 if it is prime, or the
-     * smallest factor if it is not prime.
+     * Returns the queue wait and execution times of the runnables
+     * that have run.
      */
-    private long isPrime(long n) {
-        if (n > 3)
-            for (long factor = 2;
-                 factor <= n / 2;
-                 ++factor) 
-                if (n / factor * factor == n)
-                    return factor;
-
-        return 0;
+    public static TaskLatencies latencies() {
+        return sLatencies;
     }
 
     /**
      * Hook method that determines if a given number is prime.
      */
     public void run() {
+        long start = System.nanoTime();
+
         // Determine if mPrimeCandidate is prime or not.
-        long smallestFactor = isPrime(mPrimeCandidate); 
+        long smallestFactor =
+            mPrimeChecker.smallestFactor(mPrimeCandidate);
 
         if (smallestFactor != 0)
             mActivity.println(""
@@ -64,6 +92,9 @@ public class PrimeRunnable
                               + mPrimeCandidate
                               + " is prime");
 
+        // Record the latencies before the activity reports them.
+        sLatencies.record(mSubmitted, start, System.nanoTime());
+
         // Tell the activity we're done.
         mActivity.done();
     }
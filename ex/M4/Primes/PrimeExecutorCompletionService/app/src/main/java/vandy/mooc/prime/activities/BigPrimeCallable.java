@@ -0,0 +1,79 @@
+package vandy.mooc.prime.activities;
+
+import java.math.BigInteger;
+import java.util.concurrent.Callable;
+
+import vandy.mooc.prime.utils.BailliePSW;
+
+/**
+ * Uses the Baillie-PSW test to determine if a given BigInteger is
+ * prime or not, which is the counterpart of PrimeCallable for
+ * candidates too large to fit in a long.
+ */
+public class BigPrimeCallable
+       implements Callable<BigPrimeCallable.BigPrimeResult> {
+    /**
+     * Number to evaluate for "primality".
+     */
+    private final BigInteger mPrimeCandidate;
+
+    /**
+     * The result returned via the future.
+     */
+    public static class BigPrimeResult {
+        /**
+         * Value that was evaluated for primality.
+         */
+        BigInteger mPrimeCandidate;
+
+        /**
+         * True if the candidate passed the Baillie-PSW test.
+         */
+        boolean mProbablePrime;
+
+        /**
+         * Smallest factor of the candidate if it's a composite with a
+         * factor below 1000, else 0.  Larger factors aren't searched
+         * for, since factoring numbers this size is infeasible.
+         */
+        long mSmallFactor;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        BigPrimeResult(BigInteger primeCandidate,
+                       boolean probablePrime,
+                       long smallFactor) {
+            mPrimeCandidate = primeCandidate;
+            mProbablePrime = probablePrime;
+            mSmallFactor = smallFactor;
+        }
+
+        /**
+         * Returns true if the candidate passed the Baillie-PSW test.
+         */
+        public boolean isProbablePrime() {
+            return mProbablePrime;
+        }
+    }
+
+    /**
+     * Constructor initializes the fields.
+     */
+    public BigPrimeCallable(BigInteger primeCandidate) {
+        mPrimeCandidate = primeCandidate;
+    }
+
+    /**
+     * Hook method that determines if the candidate is prime.
+     */
+    public BigPrimeResult call() {
+        boolean probablePrime = BailliePSW.isProbablePrime(mPrimeCandidate);
+
+        return new BigPrimeResult(mPrimeCandidate,
+                                  probablePrime,
+                                  probablePrime
+                                  ? 0
+                                  : BailliePSW.smallFactor(mPrimeCandidate));
+    }
+}
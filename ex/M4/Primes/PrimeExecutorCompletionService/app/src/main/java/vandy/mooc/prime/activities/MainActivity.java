@@ -12,23 +12,40 @@ import android.widget.EditText;
 import android.widget.ScrollView;
 import android.widget.TextView;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import vandy.mooc.prime.R;
+import vandy.mooc.prime.utils.AdaptiveThreadPool;
+import vandy.mooc.prime.utils.Flow;
+import vandy.mooc.prime.utils.JobCheckpoint;
+import vandy.mooc.prime.utils.RandomCandidates;
 import vandy.mooc.prime.utils.UiUtils;
 
 /**
  * Main activity for an app that shows how to use the Java
- * ExecutorCompletionService interface and a fixed-size thread pool to
- * determine if n random numbers are prime or not.  The user can
+ * ExecutorCompletionService interface and an adaptive thread pool to
+ * determine if n random numbers are prime or not.  Alternatively, if
+ * the app is launched with the sUSE_PUBLISHER_EXTRA extra set, it
+ * shows how to use a Flow.Publisher that completes chunks of work on
+ * the pool and whose results are requested in batches, so the
+ * computations never get too far ahead of the UI.  The user can
  * interrupt the thread performing this computation at any point and
  * the thread will also be interrupted when the activity is destroyed.
- * In addition, runtime configuration changes are handled gracefully.
+ * In addition, runtime configuration changes are handled gracefully,
+ * and the results are checkpointed so a job that's lost when the
+ * process is killed resumes the next time the app is launched.
  */
 public class MainActivity 
        extends LifecycleLoggingActivity {
@@ -38,6 +55,40 @@ public class MainActivity
      */
     private final static int sDEFAULT_COUNT = 50;
 
+    /**
+     * Number of results requested from the PrimePublisher at a time,
+     * which are printed together.
+     */
+    private final static int sBATCH_SIZE = 64;
+
+    /**
+     * Maximum number of candidates checked beyond the last result
+     * delivered, which keeps the results in the order of the
+     * candidates so the checkpoint's cursor marks where to resume.
+     */
+    private final static int sWINDOW = 4 * sBATCH_SIZE;
+
+    /**
+     * Name of the file that persists prime checking results across
+     * runs of the app.
+     */
+    private final static String sSNAPSHOT_FILE_NAME = "primes.snapshot";
+
+    /**
+     * Name of the file that checkpoints the results of the current
+     * job, so it can be resumed if the process is killed.
+     */
+    private final static String sCHECKPOINT_FILE_NAME = "primes.checkpoint";
+
+    /**
+     * Name of the boolean Intent extra that runs the computations
+     * with a PrimePublisher instead of an ExecutorCompletionService,
+     * e.g., "adb shell am start -n
+     * vandy.mooc.primeexecutor/vandy.mooc.prime.activities.MainActivity
+     * --ez usePublisher true".
+     */
+    private final static String sUSE_PUBLISHER_EXTRA = "usePublisher";
+
     /**
      * An EditText field uesd to enter the desired number of iterations.
      */
@@ -74,21 +125,28 @@ public class MainActivity
      * changes.
      */
     static class RetainedState {
-        /**
-         * This object runs the prime computations.
-         */
-        ExecutorCompletionService<PrimeCallable.PrimeResult> mExecutorCompletionService;
-
         /**
          * This object manages a thread pool.
          */
-        ExecutorService mExecutorService;
+        AdaptiveThreadPool mExecutorService;
 
         /**
          * This runnable executes in a background thread to get the
-         * results of the futures.
+         * results of the ExecutorCompletionService, or null if a
+         * PrimePublisher is used.
          */
         CompletionRunnable mCompletionRunnable;
+
+        /**
+         * This object receives the results of the PrimePublisher, or
+         * null if an ExecutorCompletionService is used.
+         */
+        PrimeSubscriber mPrimeSubscriber;
+
+        /**
+         * Records the results so the job can be resumed.
+         */
+        JobCheckpoint mCheckpoint;
     }
 
     /**
@@ -110,20 +168,41 @@ public class MainActivity
         // Initialize the views.
         initializeViews();
 
+        // Persist prime checking results across runs in the app's
+        // private storage.  The file isn't read until it's needed.
+        PrimeCallable.setSnapshotFile(new File(getFilesDir(),
+                                               sSNAPSHOT_FILE_NAME));
+
         // Set mRetainedState to the object that was stored by
         // onRetainNonConfigurationInstance().
         mRetainedState =
             (RetainedState) getLastNonConfigurationInstance();
 
         if (mRetainedState != null) {
-            mRetainedState.mCompletionRunnable.setActivity(this);
+            if (mRetainedState.mPrimeSubscriber != null)
+                mRetainedState.mPrimeSubscriber.setActivity(this);
+            else
+                mRetainedState.mCompletionRunnable.setActivity(this);
 
             // Update the start/stop FAB to display a stop icon.
             mStartOrStopFab.setImageResource(R.drawable.ic_media_stop);
 
             // Show the "startOrStop" FAB.
             UiUtils.showFab(mStartOrStopFab);
-        } 
+        } else {
+            // Resume the job that was running when the process was
+            // last killed, if there was one.  Only the header of the
+            // checkpoint is read, so this is cheap.
+            JobCheckpoint checkpoint =
+                JobCheckpoint.resume(new File(getFilesDir(),
+                                              sCHECKPOINT_FILE_NAME));
+            if (checkpoint != null) {
+                startComputations(checkpoint);
+
+                // Show the "startOrStop" FAB.
+                UiUtils.showFab(mStartOrStopFab);
+            }
+        }
     }
 
     /**
@@ -242,77 +321,188 @@ public class MainActivity
             UiUtils.showToast(this,
                               "Please specify a count value that's > 0");
         else {
-            // Allocate the state that's retained across runtime
-            // configuration changes.
-            mRetainedState = new RetainedState();
-
-            // Allocate a thread pool with an extra thread for the
-            // "future waiter" task.
-            mRetainedState.mExecutorService =
-                Executors.newFixedThreadPool(Runtime.getRuntime()
-                                             .availableProcessors() + 1);
-
-            // Associate the ExecutorCompletionService with the
-            // ExecutorService.
-            mRetainedState.mExecutorCompletionService = 
-                new ExecutorCompletionService<>
-                    (mRetainedState.mExecutorService);
-
-            // Submit "count" PrimeCallable objects that concurrently check
-            // the primality of "count" random numbers.
-            new Random()
-                // Generate "count" random between (MAX_VALUE - count)
-                // and MAX_VALUE.
-                .longs(count, Integer.MAX_VALUE - count, Integer.MAX_VALUE)
-                // .longs(count, 0, Integer.MAX_VALUE)
-
-                // Convert each random number into a PrimeCallable.
-                .mapToObj(PrimeCallable::new)
-
-                // Submit each PrimeCallable to the ExecutorService.
-                .forEach(mRetainedState.mExecutorCompletionService::submit);
-
-            // Store the CompletionRunnable in a field so it can be
-            // updated during a runtime configuration change.
-            mRetainedState.mCompletionRunnable = new CompletionRunnable(this,
-                                                                        count);
-
-            // Execute a runnable that waits for all the results in
-            // the background so it doesn't block the UI thread.
-            mRetainedState.mExecutorCompletionService.submit
-                (mRetainedState.mCompletionRunnable,
-                 null);
+            // Describe "count" random numbers between (MAX_VALUE -
+            // count) and MAX_VALUE, which each chunk generates for
+            // itself when it runs, so the UI thread doesn't spend
+            // longer starting the computations as count grows.
+            RandomCandidates candidates =
+                new RandomCandidates(new Random().nextLong(),
+                                     count,
+                                     Integer.MAX_VALUE - count,
+                                     Integer.MAX_VALUE);
+
+            // Checkpoint a new job that checks the candidates, which
+            // replaces the checkpoint of any earlier job.
+            startComputations(new JobCheckpoint(new File(getFilesDir(),
+                                                         sCHECKPOINT_FILE_NAME),
+                                                candidates));
         }
+    }
 
-        println("Starting primality computations");
+    /**
+     * Start or resume the prime computations of the job recorded by
+     * @a checkpoint.
+     */
+    private void startComputations(JobCheckpoint checkpoint) {
+        // Allocate the state that's retained across runtime
+        // configuration changes.
+        mRetainedState = new RetainedState();
+        mRetainedState.mCheckpoint = checkpoint;
+
+        // Only report the latencies of this run's tasks.
+        PrimeChunkCallable.latencies().reset();
+
+        if (getIntent().getBooleanExtra(sUSE_PUBLISHER_EXTRA, false))
+            publishComputations(checkpoint);
+        else
+            completeComputations(checkpoint);
+
+        if (checkpoint.getCursor() > 0)
+            println("Resuming primality computations after "
+                    + checkpoint.getCursor()
+                    + " of "
+                    + checkpoint.getCandidates().size()
+                    + " candidates");
+        else
+            println("Starting primality computations");
 
         // Update the start/stop FAB to display a stop icon.
         mStartOrStopFab.setImageResource(R.drawable.ic_media_stop);
     }
 
+    /**
+     * Check the candidates of @a checkpoint's job in chunks submitted
+     * to an ExecutorCompletionService, whose results are printed in
+     * the order the chunks complete.
+     */
+    private void completeComputations(JobCheckpoint checkpoint) {
+        // Allocate a thread pool that starts with an extra thread
+        // for the CompletionRunnable and then adapts its size to
+        // the throughput of the prime computations.  It never drops
+        // below 2 threads, since the CompletionRunnable blocks one.
+        int processors = Runtime.getRuntime().availableProcessors();
+        mRetainedState.mExecutorService =
+            new AdaptiveThreadPool(2, processors + 1, 2 * processors + 1);
+
+        // Associate the ExecutorCompletionService with the
+        // ExecutorService.
+        CompletionService<List<PrimeCallable.PrimeResult>> completionService =
+            new ExecutorCompletionService<>(mRetainedState.mExecutorService);
+
+        // Only check the candidates that the job hasn't already
+        // checked.
+        RandomCandidates candidates = checkpoint.getRemaining();
+
+        // Submit chunks that each generate and check a range of the
+        // candidates when they run, remembering the position of each
+        // chunk so its results can be checkpointed in order.
+        Map<Future<List<PrimeCallable.PrimeResult>>, Integer> chunkIndices =
+            new HashMap<>();
+        for (PrimeChunkCallable chunk :
+                 PrimeChunkCallable.makeChunks(candidates,
+                                               PrimeStrategy.SEGMENTED_SIEVE.createFactory(candidates),
+                                               processors))
+            chunkIndices.put(completionService.submit(chunk),
+                             chunkIndices.size());
+
+        // Store the CompletionRunnable in a field so it can be
+        // updated during a runtime configuration change.
+        mRetainedState.mCompletionRunnable =
+            new CompletionRunnable(this,
+                                   completionService,
+                                   chunkIndices,
+                                   checkpoint);
+
+        // Execute a runnable that waits for all the results in the
+        // background so it doesn't block the UI thread.
+        mRetainedState.mExecutorService.execute(mRetainedState.mCompletionRunnable);
+    }
+
+    /**
+     * Check the candidates of @a checkpoint's job with a
+     * PrimePublisher, whose results are requested in batches and
+     * delivered in the order of the candidates.
+     */
+    private void publishComputations(JobCheckpoint checkpoint) {
+        // Allocate a thread pool that starts with a thread per
+        // core and then adapts its size to the throughput of the
+        // prime computations.  No extra thread is needed to wait
+        // for the results since they're pushed to the
+        // PrimeSubscriber as they complete.
+        int processors = Runtime.getRuntime().availableProcessors();
+        mRetainedState.mExecutorService =
+            new AdaptiveThreadPool(1, processors, 2 * processors);
+
+        // Only check the candidates that the job hasn't already
+        // checked.
+        RandomCandidates candidates = checkpoint.getRemaining();
+
+        // Create a publisher that checks the candidates in chunks,
+        // so each task checks a range of candidates, which
+        // amortizes the cost of submitting and completing a task.
+        // Each chunk checks its candidates with a sieve that checks
+        // them in batches of cache-sized windows rather than one at
+        // a time.  The results are delivered in the order of the
+        // candidates so they can be checkpointed in that order.
+        PrimePublisher publisher =
+            new PrimePublisher(mRetainedState.mExecutorService,
+                               processors,
+                               candidates,
+                               PrimeStrategy.SEGMENTED_SIEVE.createFactory(candidates),
+                               sWINDOW);
+
+        // Store the PrimeSubscriber in a field so it can be
+        // updated during a runtime configuration change.
+        mRetainedState.mPrimeSubscriber =
+            new PrimeSubscriber(this,
+                                mRetainedState.mExecutorService,
+                                checkpoint);
+
+        // Start the computations, which run as fast as the
+        // PrimeSubscriber requests their results.
+        publisher.subscribe(mRetainedState.mPrimeSubscriber);
+    }
+
     /**
      * The class runs in a background thread in the ExecutorService
-     * and gets the results of all the completed futures.
+     * and gets the results of all the chunks as they complete.
      */
     static private class CompletionRunnable 
                    implements Runnable {
         /**
-         * Count of the number of prime checker computations.
+         * Returns the futures of the chunks in the order they
+         * complete.
+         */
+        final CompletionService<List<PrimeCallable.PrimeResult>> mCompletionService;
+
+        /**
+         * The position of each chunk's future in the order the
+         * chunks were submitted, which is the order of the
+         * candidates.
          */
-        int mCount;
+        final Map<Future<List<PrimeCallable.PrimeResult>>, Integer> mChunkIndices;
 
         /**
          * Reference back to the enclosing activity.
          */
-        MainActivity mActivity;
+        volatile MainActivity mActivity;
+
+        /**
+         * Records the results so the job can be resumed.
+         */
+        final JobCheckpoint mCheckpoint;
 
         /**
-         * Constructor initializes the field.
+         * Constructor initializes the fields.
          */
         public CompletionRunnable(MainActivity activity,
-                                  int count) {
+                                  CompletionService<List<PrimeCallable.PrimeResult>> completionService,
+                                  Map<Future<List<PrimeCallable.PrimeResult>>, Integer> chunkIndices,
+                                  JobCheckpoint checkpoint) {
             mActivity = activity;
-            mCount = count;
+            mCompletionService = completionService;
+            mChunkIndices = chunkIndices;
+            mCheckpoint = checkpoint;
         }
 
         /**
@@ -324,50 +514,260 @@ public class MainActivity
 
         /**
          * Run in a background thread to get the results of all the
-         * completed futures.
+         * chunks in the order they complete.
          */
         @Override
         public void run() {
-            // Iterate through all the futures to get the results.
-            for (int i = 0; i < mCount; ++i) {
+            int count = mChunkIndices.size();
+
+            // Results of chunks that completed before an earlier
+            // chunk, which are held back until they can be recorded
+            // in the order of the candidates.
+            List<List<PrimeCallable.PrimeResult>> unrecorded =
+                new ArrayList<>(Collections.nCopies(count, null));
+            int nextToRecord = 0;
+
+            for (int i = 0; i < count; ++i) {
                 try {
-                    // This call will block until the future is triggered.
-                    Future<PrimeCallable.PrimeResult> resultFuture = 
-                        mActivity.mRetainedState.mExecutorCompletionService.take();
+                    // This call will block until a chunk completes.
+                    Future<List<PrimeCallable.PrimeResult>> resultFuture =
+                        mCompletionService.take();
 
                     // The get() call will not block since the results
                     // should be ready before they are added to the
                     // completion queue.
-                    PrimeCallable.PrimeResult result = resultFuture.get();
-
-                    if (result.mSmallestFactor != 0)
-                        mActivity.println(""
-                                          + result.mPrimeCandidate
-                                          + " is not prime with smallest factor "
-                                          + result.mSmallestFactor);
-                    else
-                        mActivity.println(""
-                                          + result.mPrimeCandidate
-                                          + " is prime");
+                    List<PrimeCallable.PrimeResult> results = resultFuture.get();
+
+                    // Print the whole chunk at once so the UI thread
+                    // is only posted to once per chunk.
+                    StringBuilder output = new StringBuilder();
+                    for (PrimeCallable.PrimeResult result : results) {
+                        if (output.length() > 0)
+                            output.append('\n');
+                        output.append(result);
+                    }
+                    if (output.length() > 0)
+                        mActivity.println(output.toString());
+
+                    // Record this chunk and any later ones that were
+                    // waiting for it.
+                    unrecorded.set(mChunkIndices.get(resultFuture), results);
+                    for (; nextToRecord < count
+                             && unrecorded.get(nextToRecord) != null;
+                         ++nextToRecord) {
+                        for (PrimeCallable.PrimeResult result :
+                                 unrecorded.get(nextToRecord))
+                            mCheckpoint.record(result.mPrimeCandidate,
+                                               result.mSmallestFactor);
+                        unrecorded.set(nextToRecord, null);
+                    }
                 } catch (InterruptedException e) {
                     return;
                 } catch (Exception e) {
                     e.printStackTrace();
+
+                    // The failed chunk leaves a gap that the later
+                    // chunks' results can't be recorded past, so keep
+                    // the checkpoint and the job can be retried from
+                    // here.
+                    mCheckpoint.close();
                 }
             }
 
+            // The job is finished, so there's nothing to resume.
+            // This has no effect if the checkpoint was closed above.
+            mCheckpoint.discard();
+
+            // This runs in a background thread, so the new results
+            // can be saved here.
+            try {
+                PrimeCallable.saveSnapshot();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
             // Finish up and reset the UI.
             mActivity.done();
         }
     }
 
+    /**
+     * The class receives the results of the prime computations and
+     * prints them in batches, only requesting the next batch once the
+     * UI thread has printed the previous one.
+     */
+    static private class PrimeSubscriber 
+                   implements Flow.Subscriber<PrimeCallable.PrimeResult> {
+        /**
+         * Reference back to the enclosing activity.
+         */
+        volatile MainActivity mActivity;
+
+        /**
+         * Runs blocking work after the computations complete, so it
+         * doesn't run on the UI thread.
+         */
+        final Executor mExecutor;
+
+        /**
+         * Records the results so the job can be resumed.
+         */
+        final JobCheckpoint mCheckpoint;
+
+        /**
+         * Used to request results, or cancel the computations.
+         */
+        volatile Flow.Subscription mSubscription;
+
+        /**
+         * The batch of results received since the last one was
+         * printed.
+         */
+        final StringBuilder mOutput = new StringBuilder();
+
+        /**
+         * Number of results in mOutput.
+         */
+        int mReceived;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        public PrimeSubscriber(MainActivity activity,
+                               Executor executor,
+                               JobCheckpoint checkpoint) {
+            mActivity = activity;
+            mExecutor = executor;
+            mCheckpoint = checkpoint;
+        }
+
+        /**
+         * Reset the activity after a runtime configuration change.
+         */
+        public void setActivity(MainActivity activity) {
+            mActivity = activity;
+        }
+
+        /**
+         * Cancel the computations.
+         */
+        public void cancel() {
+            if (mSubscription != null)
+                mSubscription.cancel();
+        }
+
+        /**
+         * Hook method called with the @a subscription used to request
+         * results.
+         */
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            mSubscription = subscription;
+
+            // Request two batches, so the next batch is being
+            // computed while the first one is printed.
+            subscription.request(2 * sBATCH_SIZE);
+        }
+
+        /**
+         * Hook method called with the next @a result.
+         */
+        @Override
+        public void onNext(PrimeCallable.PrimeResult result) {
+            // The results arrive in order, so they're recorded in
+            // order.  An unknown result has no smallest factor, so
+            // recording stops there rather than saving it as prime.
+            if (result.isUnknown())
+                mCheckpoint.recordUnknown();
+            else
+                mCheckpoint.record(result.mPrimeCandidate,
+                                   result.mSmallestFactor);
+
+            if (mOutput.length() > 0)
+                mOutput.append('\n');
+            mOutput.append(result);
+
+            if (++mReceived == sBATCH_SIZE) {
+                flush();
+
+                // Request another batch after the UI thread has
+                // printed this one, since commands posted to it run
+                // in order.
+                mActivity.runOnUiThread(() -> mSubscription.request(sBATCH_SIZE));
+            }
+        }
+
+        /**
+         * Hook method called if the computations fail with @a
+         * throwable.
+         */
+        @Override
+        public void onError(Throwable throwable) {
+            flush();
+            throwable.printStackTrace();
+
+            // Keep the checkpoint so the job can be retried.
+            mCheckpoint.close();
+
+            // Finish up and reset the UI.
+            mActivity.done();
+        }
+
+        /**
+         * Hook method called after all the results have been
+         * received.
+         */
+        @Override
+        public void onComplete() {
+            flush();
+
+            // The job is finished, so there's nothing to resume.
+            mCheckpoint.discard();
+
+            // This method may be called on the UI thread, so save the
+            // new results in a background thread.
+            try {
+                mExecutor.execute(() -> {
+                        try {
+                            PrimeCallable.saveSnapshot();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+
+                        // Finish up and reset the UI.
+                        mActivity.done();
+                    });
+            } catch (RejectedExecutionException e) {
+                // The computations were interrupted just as they
+                // completed, which already reset the UI.
+            }
+        }
+
+        /**
+         * Print the results received since the last batch was
+         * printed.
+         */
+        private void flush() {
+            if (mOutput.length() > 0) {
+                mActivity.println(mOutput.toString());
+                mOutput.setLength(0);
+            }
+            mReceived = 0;
+        }
+    }
+
     /**
      * Stop the prime computations.
      */
     private void interruptComputations() {
-        // Interrupt the prime thread.
+        // Stop sending results and interrupt the prime threads.
+        if (mRetainedState.mPrimeSubscriber != null)
+            mRetainedState.mPrimeSubscriber.cancel();
         mRetainedState.mExecutorService.shutdownNow();
 
+        // The user abandoned the job, so don't resume it.
+        mRetainedState.mCheckpoint.discard();
+
         UiUtils.showToast(this,
                           "Interrupting ExecutorService");
 
@@ -381,12 +781,26 @@ public class MainActivity
     public void done() {
         // Create a command to reset the UI.
         Runnable command = () -> {
+            // Both an interrupt and the end of the computations call
+            // done(), so the UI may already have been reset.
+            if (mRetainedState == null)
+                return;
+
+            // Get the size the thread pool chose before nulling out
+            // the reference to it.
+            String poolSize =
+                mRetainedState.mExecutorService.getSizeSummary();
+
             // Null out the reference to avoid later problems.
             mRetainedState = null;
 
             // Append the stringToPrint and terminate it with a
-            // newline.
-            mTextViewLog.append("Finished primality computations\n");
+            // newline, followed by how long the tasks waited to run
+            // and then ran, which shows whether the pool needs more
+            // threads or the tasks need a faster algorithm.
+            mTextViewLog.append("Finished primality computations\n"
+                                + PrimeChunkCallable.latencies() + "\n"
+                                + poolSize + "\n");
             mScrollView.fullScroll(ScrollView.FOCUS_DOWN);
 
             // Reset the start/stop FAB to the play icon.
@@ -442,7 +856,13 @@ public class MainActivity
         if (mRetainedState != null
             && !isChangingConfigurations()) {
             // Interrupt the ExecutorService since the activity is
-            // being destroyed.
+            // being destroyed.  Close the checkpoint first, so the
+            // partial results of interrupted chunks aren't recorded
+            // and the job resumes from the last result delivered the
+            // next time the app is launched.
+            mRetainedState.mCheckpoint.close();
+            if (mRetainedState.mPrimeSubscriber != null)
+                mRetainedState.mPrimeSubscriber.cancel();
             mRetainedState.mExecutorService.shutdownNow();
 
             Log.d(TAG,
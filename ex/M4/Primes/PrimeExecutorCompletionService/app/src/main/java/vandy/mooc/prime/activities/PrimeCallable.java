@@ -2,17 +2,37 @@ package vandy.mooc.prime.activities;
 
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
 
+import vandy.mooc.prime.utils.BoundedMemoizer;
+import vandy.mooc.prime.utils.DeadlineExceededException;
+import vandy.mooc.prime.utils.MappedSnapshot;
 import vandy.mooc.prime.utils.Memoizer;
+import vandy.mooc.prime.utils.MemoizerStats;
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.SegmentedSieve;
+import vandy.mooc.prime.utils.ShortestJobFirstExecutor;
+import vandy.mooc.prime.utils.TrialDivisionPrimeChecker;
+
+import static java.util.stream.Collectors.toList;
 
 /**
- * Uses a brute-force algorithm to determine if a given number is
- * prime or not.
+ * Uses a PrimeChecker strategy to determine if a given number is
+ * prime or not, which defaults to memoized trial division by the
+ * primes up to its square root.
  */
 public class PrimeCallable
-       implements Callable<PrimeCallable.PrimeResult> {
+       implements Callable<PrimeCallable.PrimeResult>,
+                  ShortestJobFirstExecutor.Job {
     /**
      * Debugging tag used by the Android logger.
      */
@@ -24,6 +44,11 @@ public class PrimeCallable
      */
     private final long mPrimeCandidate;
 
+    /**
+     * Strategy used to determine if mPrimeCandidate is prime or not.
+     */
+    private final PrimeChecker mPrimeChecker;
+
     /**
      * The result returned via the future.
      */
@@ -37,13 +62,69 @@ public class PrimeCallable
          * Result of the isPrime() method.
          */
         long mSmallestFactor;
+
+        /**
+         * If the check ran out of time, the bound below which the
+         * candidate has no factor, else 0.
+         */
+        long mNoFactorBelow;
         
         /**
-         * Constructor initializes the fields.
+         * Constructor initializes the fields.  It's public so results
+         * computed in other processes can be merged into the same
+         * stream.
+         */
+        public PrimeResult(long primeCandidate, long smallestFactor) {
+            this(primeCandidate, smallestFactor, 0);
+        }
+
+        /**
+         * Constructor initializes all the fields.
          */
-        PrimeResult(long primeCandidate, long smallestFactor) {
+        PrimeResult(long primeCandidate,
+                    long smallestFactor,
+                    long noFactorBelow) {
             mPrimeCandidate = primeCandidate;
             mSmallestFactor = smallestFactor;
+            mNoFactorBelow = noFactorBelow;
+        }
+
+        /**
+         * Returns the value that was evaluated for primality.
+         */
+        public long getPrimeCandidate() {
+            return mPrimeCandidate;
+        }
+
+        /**
+         * Returns 0 if the candidate is prime (or unknown), or else
+         * its smallest factor.
+         */
+        public long getSmallestFactor() {
+            return mSmallestFactor;
+        }
+
+        /**
+         * Returns true if the check ran out of time before it could
+         * decide whether the candidate is prime.
+         */
+        public boolean isUnknown() {
+            return mNoFactorBelow != 0;
+        }
+
+        /**
+         * Returns a description of the result.
+         */
+        @Override
+        public String toString() {
+            if (isUnknown())
+                return mPrimeCandidate + " is unknown, no factor below "
+                    + mNoFactorBelow;
+            else if (mSmallestFactor != 0)
+                return mPrimeCandidate + " is not prime with smallest factor "
+                    + mSmallestFactor;
+            else
+                return mPrimeCandidate + " is prime";
         }
     }
 
@@ -51,22 +132,39 @@ public class PrimeCallable
      * Constructor initializes the fields.
      */
     public PrimeCallable(long primeCandidate) {
+        this(primeCandidate, mCache::get);
+    }
+
+    /**
+     * Constructor initializes the fields so that @a primeCandidate is
+     * checked by the given @a primeChecker strategy.
+     */
+    public PrimeCallable(long primeCandidate,
+                         PrimeChecker primeChecker) {
         mPrimeCandidate = primeCandidate;
+        mPrimeChecker = primeChecker;
     }
     
     /**
      * This method provides a brute-force determination of whether
      * number @a n is prime.  Returns 0 if it is prime, or the
-     * smallest factor if it is not prime.
+     * smallest factor if it is not prime.  It's package-private so
+     * the PrimeBenchmarks project can measure it directly.
      */
-    private static final Function<Long, Long> sPrimeChecker =
+    static final LongUnaryOperator sPrimeChecker =
             n -> {
+                // Check for interruption every n / 10 factors, but at
+                // least every factor so n < 10 doesn't divide by 0.
+                // The interrupt status is left set, so callers such
+                // as MappedSnapshot know the result is incomplete.
+                long interruptInterval = Math.max(1, n / 10);
+
                 if (n > 3)
                     for (long factor = 2;
                          factor <= n / 2;
                          ++factor)
-                        if ((factor % (n / 10)) == 0
-                            && Thread.interrupted()) {
+                        if ((factor % interruptInterval) == 0
+                            && Thread.currentThread().isInterrupted()) {
                             Log.d(TAG,
                                   "Thread interrupted "
                                   + Thread.currentThread());
@@ -74,15 +172,161 @@ public class PrimeCallable
                         } else if (n / factor * factor == n)
                             return factor;
 
-                return 0L;
+                return 0;
             };
 
+    /**
+     * Maximum number of prime checking results kept in the cache.
+     */
+    private static final int sMAX_CACHED_RESULTS = 100_000;
+
+    /**
+     * Persistent snapshot of the results computed by earlier runs,
+     * which is consulted before trial division is used.
+     */
+    private static final MappedSnapshot sSnapshot =
+            new MappedSnapshot(new TrialDivisionPrimeChecker()::smallestFactor);
+
     /**
      * Cache used to generate and store the results of prime
-     * checking computations.
+     * checking computations, which evicts rarely checked candidates
+     * once it holds sMAX_CACHED_RESULTS of them.
+     */
+    private static final Memoizer<Long, Long> mCache =
+            new BoundedMemoizer<>(sSnapshot::applyAsLong,
+                                  sMAX_CACHED_RESULTS);
+
+    /**
+     * Returns a map from each of the @a candidates to 0 if it is
+     * prime or its smallest factor if it is not prime.  Candidates
+     * that have been checked before come from the cache, and all the
+     * others are checked together by a SegmentedSieve, so repeated
+     * candidates cost a single map lookup and new ones share the
+     * sieve's work.
+     */
+    public static Map<Long, Long> smallestFactors(long[] candidates) {
+        return mCache.getAll(LongStream.of(candidates)
+                                       .boxed()
+                                       .collect(toList()),
+                             PrimeCallable::sieve);
+    }
+
+    /**
+     * Returns a map from each of the @a candidates to its smallest
+     * factor, which comes from the snapshot if an earlier run saved
+     * it, or else is computed by a SegmentedSieve and recorded in the
+     * snapshot.
+     */
+    private static Map<Long, Long> sieve(Set<Long> candidates) {
+        SegmentedSieve sieve =
+            new SegmentedSieve(candidates.stream()
+                                         .mapToLong(Long::longValue)
+                                         .toArray());
+
+        Map<Long, Long> factors = new HashMap<>(candidates.size() * 4 / 3 + 1);
+        for (Long candidate : candidates)
+            factors.put(candidate,
+                        sSnapshot.applyAsLong(candidate,
+                                              sieve::smallestFactor));
+        return factors;
+    }
+
+    /**
+     * Returns a future that's completed with the result of checking
+     * @a primeCandidate with the cache.  It's completed right away if
+     * the candidate is cached, and otherwise by a task run on @a
+     * executor, so no thread blocks waiting for a result that another
+     * thread is computing.  The task reports the candidate's
+     * estimated cost, so a ShortestJobFirstExecutor still runs the
+     * cheapest candidates first.
+     */
+    public static CompletableFuture<PrimeResult> checkAsync(long primeCandidate,
+                                                            Executor executor) {
+        return mCache
+            .getAsync(primeCandidate,
+                      task -> executor.execute(new CheckTask(task,
+                                                             primeCandidate)))
+            .thenApply(smallestFactor -> new PrimeResult(primeCandidate,
+                                                         smallestFactor));
+    }
+
+    /**
+     * A task that checks a candidate and reports the estimated cost
+     * of checking it to a ShortestJobFirstExecutor.
+     */
+    private static class CheckTask
+            implements Runnable,
+                       ShortestJobFirstExecutor.Job {
+        /**
+         * The task to run.
+         */
+        private final Runnable mTask;
+
+        /**
+         * The candidate mTask checks.
+         */
+        private final long mPrimeCandidate;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        CheckTask(Runnable task, long primeCandidate) {
+            mTask = task;
+            mPrimeCandidate = primeCandidate;
+        }
+
+        /**
+         * Hook method that runs the task.
+         */
+        @Override
+        public void run() {
+            mTask.run();
+        }
+
+        /**
+         * Returns the estimated number of divisions needed to check
+         * the candidate by trial division.
+         */
+        @Override
+        public long estimatedCost() {
+            return TrialDivisionPrimeChecker.estimateDivisions(mPrimeCandidate);
+        }
+    }
+
+    /**
+     * Returns a snapshot of how the cache of prime checking results
+     * has been used.
+     */
+    public static MemoizerStats cacheStats() {
+        return mCache.getStats();
+    }
+
+    /**
+     * Persist the results of prime checking computations in @a file,
+     * which is only read when a result is first needed.
+     */
+    public static void setSnapshotFile(File file) {
+        sSnapshot.setFile(file);
+    }
+
+    /**
+     * Save the results computed since the last call into the
+     * snapshot file.  This method does blocking I/O, so it must not
+     * be called on the UI thread.
+     */
+    public static void saveSnapshot() throws IOException {
+        sSnapshot.save();
+    }
+
+    /**
+     * Returns the estimated number of divisions needed to check the
+     * candidate by trial division, so a ShortestJobFirstExecutor can
+     * run the cheapest candidates first.
      */
-    private static final Function<Long, Long> mCache =
-            new Memoizer<>(sPrimeChecker);
+    @Override
+    public long estimatedCost() {
+        return TrialDivisionPrimeChecker.estimateDivisions(mPrimeCandidate);
+    }
 
     /**
      * Hook method that determines if a given number is prime.
@@ -92,9 +336,22 @@ public class PrimeCallable
     public PrimeResult call() {
         // Return a PrimeResult containing the prime candidate and the
         // result of checking this number for primality.
-        return new PrimeResult(mPrimeCandidate,
-                               // Determine if mPrimeCandidate is
-                               // prime or not.
-                               mCache.get(mPrimeCandidate));
+        return check(mPrimeCandidate, mPrimeChecker);
+    }
+
+    /**
+     * Returns the result of checking @a primeCandidate with @a
+     * primeChecker, which is unknown if the check runs out of time.
+     */
+    static PrimeResult check(long primeCandidate,
+                             PrimeChecker primeChecker) {
+        try {
+            return new PrimeResult(primeCandidate,
+                                   primeChecker.smallestFactor(primeCandidate));
+        } catch (DeadlineExceededException e) {
+            return new PrimeResult(primeCandidate,
+                                   0,
+                                   e.getNoFactorBelow());
+        }
     }
 }
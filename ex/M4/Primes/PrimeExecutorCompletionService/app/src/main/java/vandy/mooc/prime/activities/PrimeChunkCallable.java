@@ -0,0 +1,214 @@
+package vandy.mooc.prime.activities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import vandy.mooc.prime.utils.ChunkSizer;
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.RandomCandidates;
+import vandy.mooc.prime.utils.TaskLatencies;
+
+/**
+ * Uses a PrimeChecker strategy to determine if each number in a
+ * contiguous range of candidates is prime or not, returning all the
+ * results at once.  Checking a chunk of candidates in one task
+ * avoids paying for a FutureTask, a queue node, and a round trip
+ * through the executor for every candidate.  The candidates can
+ * either be passed in or generated by the chunk when it runs, which
+ * keeps the thread that submits the chunks from generating them all
+ * before any of them are checked.
+ */
+public class PrimeChunkCallable
+       implements Callable<List<PrimeCallable.PrimeResult>> {
+    /**
+     * Sizes chunks so each one takes about 10 milliseconds to run,
+     * learning the cost per candidate from the chunks that finish.
+     */
+    private static final ChunkSizer sChunkSizer =
+        new ChunkSizer(TimeUnit.MILLISECONDS.toNanos(10), 10_000);
+
+    /**
+     * Records how long each chunk waits to run and then runs.
+     */
+    private static final TaskLatencies sLatencies = new TaskLatencies();
+
+    /**
+     * Numbers to evaluate for "primality", or null if they're
+     * generated by mRandomCandidates when the chunk runs.
+     */
+    private final long[] mCandidates;
+
+    /**
+     * Generates the numbers to evaluate for "primality", or null if
+     * they were passed in.
+     */
+    private final RandomCandidates mRandomCandidates;
+
+    /**
+     * Creates the strategy that checks the generated candidates, or
+     * null if they were passed in.
+     */
+    private final Function<long[], PrimeChecker> mCheckerFactory;
+
+    /**
+     * Index of the first candidate in this chunk.
+     */
+    private final int mFrom;
+
+    /**
+     * Index just past the last candidate in this chunk.
+     */
+    private final int mTo;
+
+    /**
+     * Strategy used to determine if each candidate is prime or not,
+     * or null if it's created by mCheckerFactory.
+     */
+    private final PrimeChecker mPrimeChecker;
+
+    /**
+     * Time this chunk was created, which is when it's submitted.
+     */
+    private final long mSubmitted = System.nanoTime();
+
+    /**
+     * Constructor initializes the fields.
+     */
+    public PrimeChunkCallable(long[] candidates,
+                              int from,
+                              int to,
+                              PrimeChecker primeChecker) {
+        mCandidates = candidates;
+        mRandomCandidates = null;
+        mCheckerFactory = null;
+        mFrom = from;
+        mTo = to;
+        mPrimeChecker = primeChecker;
+    }
+
+    /**
+     * Constructor initializes the fields so the chunk generates the
+     * candidates from @a from (inclusive) to @a to (exclusive) of @a
+     * candidates when it runs, and checks them with the strategy
+     * @a checkerFactory creates for them.
+     */
+    public PrimeChunkCallable(RandomCandidates candidates,
+                              int from,
+                              int to,
+                              Function<long[], PrimeChecker> checkerFactory) {
+        mCandidates = null;
+        mRandomCandidates = candidates;
+        mCheckerFactory = checkerFactory;
+        mFrom = from;
+        mTo = to;
+        mPrimeChecker = null;
+    }
+
+    /**
+     * Factory method that splits @a candidates into chunks sized for
+     * @a parallelism threads, each of which is checked by @a
+     * primeChecker.
+     */
+    public static List<PrimeChunkCallable> makeChunks(long[] candidates,
+                                                      PrimeChecker primeChecker,
+                                                      int parallelism) {
+        int chunkSize = chunkSize(candidates.length, parallelism);
+
+        List<PrimeChunkCallable> chunks =
+            new ArrayList<>(candidates.length / chunkSize + 1);
+        for (int from = 0; from < candidates.length; from += chunkSize)
+            chunks.add(new PrimeChunkCallable(candidates,
+                                              from,
+                                              Math.min(from + chunkSize,
+                                                       candidates.length),
+                                              primeChecker));
+        return chunks;
+    }
+
+    /**
+     * Factory method that splits @a candidates into chunks sized for
+     * @a parallelism threads, each of which generates its own
+     * candidates when it runs and checks them with the strategy @a
+     * checkerFactory creates.
+     */
+    public static List<PrimeChunkCallable> makeChunks(RandomCandidates candidates,
+                                                      Function<long[], PrimeChecker> checkerFactory,
+                                                      int parallelism) {
+        int count = candidates.size();
+        int chunkSize = chunkSize(count, parallelism);
+
+        List<PrimeChunkCallable> chunks =
+            new ArrayList<>(count / chunkSize + 1);
+        for (int from = 0; from < count; from += chunkSize)
+            chunks.add(new PrimeChunkCallable(candidates,
+                                              from,
+                                              Math.min(from + chunkSize,
+                                                       count),
+                                              checkerFactory));
+        return chunks;
+    }
+
+    /**
+     * Returns the number of candidates to put in each chunk when @a
+     * count candidates are checked by @a parallelism threads.
+     */
+    public static int chunkSize(int count, int parallelism) {
+        return sChunkSizer.chunkSize(count, parallelism);
+    }
+
+    /**
+     * Returns the queue wait and execution times of the chunks that
+     * have run.
+     */
+    public static TaskLatencies latencies() {
+        return sLatencies;
+    }
+
+    /**
+     * Returns the number of candidates in this chunk.
+     */
+    public int size() {
+        return mTo - mFrom;
+    }
+
+    /**
+     * Hook method that determines if each candidate in the chunk is
+     * prime and returns the results in the order of the candidates.
+     * It stops early if the thread is interrupted, and a candidate
+     * whose check runs out of time gets an unknown result.
+     */
+    public List<PrimeCallable.PrimeResult> call() {
+        long start = System.nanoTime();
+
+        long[] candidates = mCandidates;
+        int from = mFrom;
+        int to = mTo;
+        PrimeChecker primeChecker = mPrimeChecker;
+
+        // Generate the candidates in this thread if they weren't
+        // passed in.
+        if (candidates == null) {
+            candidates = mRandomCandidates.generate(mFrom, mTo);
+            from = 0;
+            to = candidates.length;
+            primeChecker = mCheckerFactory.apply(candidates);
+        }
+
+        List<PrimeCallable.PrimeResult> results =
+            new ArrayList<>(to - from);
+
+        for (int i = from;
+             i < to && !Thread.currentThread().isInterrupted();
+             ++i)
+            results.add(PrimeCallable.check(candidates[i], primeChecker));
+
+        // Let the sizer learn how long each candidate took.
+        long finish = System.nanoTime();
+        sChunkSizer.record(results.size(), finish - start);
+        sLatencies.record(mSubmitted, start, finish);
+        return results;
+    }
+}
@@ -0,0 +1,472 @@
+package vandy.mooc.prime.activities;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import vandy.mooc.prime.utils.Flow;
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.RandomCandidates;
+
+/**
+ * Publishes the results of checking an array of candidates for
+ * primality to each Subscriber, which requests results as it's
+ * able to handle them.  The candidates are checked in chunks by an
+ * Executor, and chunks are only submitted while the number of results
+ * in flight or waiting to be delivered is less than the number the
+ * Subscriber has requested, so producers throttle themselves when the
+ * Subscriber falls behind rather than flooding it.  Like
+ * ExecutorCompletionService, each chunk's FutureTask hands off its
+ * results when it's done, but they're delivered directly to the
+ * Subscriber rather than queued for a thread blocked in take().
+ *
+ * By default results are delivered in the order the chunks complete.
+ * In ordered mode they're delivered in the order of the candidates
+ * instead, via a reorder buffer that holds each completed chunk until
+ * all the chunks before it have completed.  Each contiguous prefix is
+ * released as soon as it's complete, so one slow candidate only holds
+ * back the results after it, and no more chunks are submitted once
+ * the candidates that haven't been released span a given window, so
+ * the buffer's memory stays bounded.
+ */
+public class PrimePublisher
+       implements Flow.Publisher<PrimeCallable.PrimeResult> {
+    /**
+     * Runs the chunks of prime computations.
+     */
+    private final Executor mExecutor;
+
+    /**
+     * Numbers to evaluate for "primality", or null if each chunk
+     * generates its own from mRandomCandidates.
+     */
+    private final long[] mCandidates;
+
+    /**
+     * Strategy used to determine if each candidate is prime or not,
+     * or null if mCandidates is null.
+     */
+    private final PrimeChecker mPrimeChecker;
+
+    /**
+     * Generates the numbers to evaluate for "primality" in the
+     * chunks, or null if they were passed in.
+     */
+    private final RandomCandidates mRandomCandidates;
+
+    /**
+     * Creates the strategy that checks each chunk's generated
+     * candidates, or null if they were passed in.
+     */
+    private final Function<long[], PrimeChecker> mCheckerFactory;
+
+    /**
+     * Number of candidates.
+     */
+    private final int mCount;
+
+    /**
+     * Number of threads used by mExecutor, which is used to size the
+     * chunks.
+     */
+    private final int mParallelism;
+
+    /**
+     * Maximum number of candidates that may be submitted beyond the
+     * last result released in order, or 0 if results are delivered
+     * in completion order.
+     */
+    private final int mWindow;
+
+    /**
+     * Constructor initializes the fields so the results are delivered
+     * in the order they complete.
+     */
+    public PrimePublisher(Executor executor,
+                          int parallelism,
+                          long[] candidates,
+                          PrimeChecker primeChecker) {
+        this(executor, parallelism, candidates, primeChecker, 0);
+    }
+
+    /**
+     * Constructor initializes the fields so the results are delivered
+     * in the order of the candidates, with at most @a window
+     * candidates submitted beyond the last result delivered.  A
+     * window of 0 delivers the results in the order they complete.
+     */
+    public PrimePublisher(Executor executor,
+                          int parallelism,
+                          long[] candidates,
+                          PrimeChecker primeChecker,
+                          int window) {
+        this(executor, parallelism, candidates, primeChecker,
+             null, null, candidates.length, window);
+    }
+
+    /**
+     * Constructor initializes the fields so each chunk generates its
+     * own candidates from @a candidates when it runs and checks them
+     * with the strategy @a checkerFactory creates for them.  The
+     * results are delivered as described for the other constructors.
+     */
+    public PrimePublisher(Executor executor,
+                          int parallelism,
+                          RandomCandidates candidates,
+                          Function<long[], PrimeChecker> checkerFactory,
+                          int window) {
+        this(executor, parallelism, null, null,
+             candidates, checkerFactory, candidates.size(), window);
+    }
+
+    /**
+     * Constructor initializes all the fields.
+     */
+    private PrimePublisher(Executor executor,
+                           int parallelism,
+                           long[] candidates,
+                           PrimeChecker primeChecker,
+                           RandomCandidates randomCandidates,
+                           Function<long[], PrimeChecker> checkerFactory,
+                           int count,
+                           int window) {
+        if (window < 0)
+            throw new IllegalArgumentException
+                ("window of " + window + " candidates must not be negative");
+
+        mExecutor = executor;
+        mParallelism = parallelism;
+        mCandidates = candidates;
+        mPrimeChecker = primeChecker;
+        mRandomCandidates = randomCandidates;
+        mCheckerFactory = checkerFactory;
+        mCount = count;
+        mWindow = window;
+    }
+
+    /**
+     * Check all the candidates on behalf of @a subscriber, which
+     * starts once it requests results.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super PrimeCallable.PrimeResult> subscriber) {
+        int chunkSize = PrimeChunkCallable.chunkSize(mCount,
+                                                     mParallelism);
+
+        // In ordered mode a chunk must fit in the window.
+        if (mWindow > 0)
+            chunkSize = Math.min(chunkSize, mWindow);
+
+        subscriber.onSubscribe(new PrimeSubscription(subscriber, chunkSize));
+    }
+
+    /**
+     * Keeps track of the demand of one Subscriber and the chunks
+     * checked on its behalf.
+     */
+    private class PrimeSubscription
+            implements Flow.Subscription {
+        /**
+         * The Subscriber that receives the results.
+         */
+        private final Flow.Subscriber<? super PrimeCallable.PrimeResult> mSubscriber;
+
+        /**
+         * Number of candidates in each chunk.
+         */
+        private final int mChunkSize;
+
+        /**
+         * Index of the first candidate of the next chunk to submit,
+         * which is guarded by "this".  Chunks are only created when
+         * they're submitted, so they know when they started waiting.
+         */
+        private int mNextCandidate;
+
+        /**
+         * In ordered mode, the index of the first candidate whose
+         * results haven't been released to mResults yet, which is
+         * guarded by "this".
+         */
+        private int mNextReleased;
+
+        /**
+         * In ordered mode, the results of completed chunks that are
+         * waiting for an earlier chunk to complete, keyed by the index
+         * of their first candidate, which is guarded by "this".
+         */
+        private final Map<Integer, ChunkTask> mReorderBuffer =
+            new HashMap<>();
+
+        /**
+         * Number of results requested by the Subscriber that haven't
+         * been delivered yet.
+         */
+        private final AtomicLong mRequested = new AtomicLong();
+
+        /**
+         * Number of results that are either being computed or are
+         * waiting in mResults to be delivered.
+         */
+        private final AtomicInteger mPending = new AtomicInteger();
+
+        /**
+         * Results waiting to be delivered to the Subscriber.
+         */
+        private final Queue<PrimeCallable.PrimeResult> mResults =
+            new ConcurrentLinkedQueue<>();
+
+        /**
+         * Chunks that have been submitted but haven't completed yet,
+         * so they can be cancelled.
+         */
+        private final Set<Future<?>> mFutures =
+            ConcurrentHashMap.newKeySet();
+
+        /**
+         * Counts the threads that have asked to deliver results, so
+         * only one of them calls the Subscriber at a time and none of
+         * the requests are missed.
+         */
+        private final AtomicInteger mDrainRequests = new AtomicInteger();
+
+        /**
+         * The first failure of a chunk, which is reported to the
+         * Subscriber.
+         */
+        private volatile Throwable mFailure;
+
+        /**
+         * Becomes true once the Subscriber has cancelled or been sent
+         * onComplete() or onError().
+         */
+        private volatile boolean mCancelled;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        PrimeSubscription(Flow.Subscriber<? super PrimeCallable.PrimeResult> subscriber,
+                          int chunkSize) {
+            mSubscriber = subscriber;
+            mChunkSize = chunkSize;
+        }
+
+        /**
+         * Add @a n to the number of results the Subscriber is willing
+         * to receive.
+         */
+        @Override
+        public void request(long n) {
+            if (n <= 0)
+                mFailure = new IllegalArgumentException
+                    ("request of " + n + " results must be positive");
+            else
+                // Add n without overflowing, which effectively makes
+                // the demand unbounded.
+                mRequested.accumulateAndGet(n, (requested, added) ->
+                                            requested + added < 0
+                                            ? Long.MAX_VALUE
+                                            : requested + added);
+
+            submitChunks();
+            drain();
+        }
+
+        /**
+         * Stop checking candidates and sending results.
+         */
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            for (Future<?> future : mFutures)
+                future.cancel(true);
+        }
+
+        /**
+         * Submit chunks to the Executor until there are as many
+         * results pending as the Subscriber has requested.
+         */
+        private synchronized void submitChunks() {
+            while (!mCancelled
+                   && mFailure == null
+                   && mNextCandidate < mCount
+                   && mPending.get() < mRequested.get()
+                   && (mWindow == 0
+                       || mNextCandidate - mNextReleased < mWindow)) {
+                int from = mNextCandidate;
+                mNextCandidate = Math.min(from + mChunkSize, mCount);
+                ChunkTask task =
+                    new ChunkTask(makeChunk(from, mNextCandidate), from);
+                mPending.addAndGet(task.mSize);
+                mFutures.add(task);
+
+                try {
+                    mExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    mFutures.remove(task);
+                    mFailure = e;
+                }
+            }
+        }
+
+        /**
+         * Add the results of @a task to the reorder buffer and
+         * release every chunk whose results are now in order.
+         */
+        private synchronized void release(ChunkTask task) {
+            mReorderBuffer.put(task.mFrom, task);
+
+            for (ChunkTask next;
+                 (next = mReorderBuffer.remove(mNextReleased)) != null;
+                 mNextReleased += next.mSize)
+                mResults.addAll(next.mChunkResults);
+        }
+
+        /**
+         * Returns true if every chunk has been submitted.
+         */
+        private synchronized boolean allSubmitted() {
+            return mNextCandidate == mCount;
+        }
+
+        /**
+         * Returns a chunk that checks the candidates from @a from
+         * (inclusive) to @a to (exclusive).
+         */
+        private PrimeChunkCallable makeChunk(int from, int to) {
+            return mCandidates != null
+                ? new PrimeChunkCallable(mCandidates, from, to, mPrimeChecker)
+                : new PrimeChunkCallable(mRandomCandidates, from, to, mCheckerFactory);
+        }
+
+        /**
+         * Deliver as many waiting results as the Subscriber has
+         * requested, followed by onComplete() or onError() if the
+         * computations have finished or failed.
+         */
+        private void drain() {
+            // Only one thread at a time delivers results, and the
+            // thread that's delivering them keeps going until no
+            // other thread has asked it to.
+            if (mDrainRequests.getAndIncrement() != 0)
+                return;
+
+            int drainRequests = 1;
+            do {
+                if (mCancelled)
+                    return;
+                else if (mFailure != null) {
+                    cancel();
+                    mSubscriber.onError(mFailure);
+                    return;
+                }
+
+                long delivered = 0;
+                for (long requested = mRequested.get();
+                     delivered < requested && !mCancelled;
+                     ++delivered) {
+                    PrimeCallable.PrimeResult result = mResults.poll();
+                    if (result == null)
+                        break;
+                    mPending.decrementAndGet();
+                    mSubscriber.onNext(result);
+                }
+
+                if (delivered > 0) {
+                    mRequested.addAndGet(-delivered);
+
+                    // Delivering results made room for more chunks.
+                    submitChunks();
+                }
+
+                if (!mCancelled
+                    && mPending.get() == 0
+                    && allSubmitted()) {
+                    mCancelled = true;
+                    mSubscriber.onComplete();
+                    return;
+                }
+            } while ((drainRequests =
+                      mDrainRequests.addAndGet(-drainRequests)) != 0);
+        }
+
+        /**
+         * Checks a chunk of candidates and hands off its results to
+         * be delivered when it's done.
+         */
+        private class ChunkTask
+                extends FutureTask<List<PrimeCallable.PrimeResult>> {
+            /**
+             * Number of candidates in the chunk.
+             */
+            final int mSize;
+
+            /**
+             * Index of the first candidate in the chunk.
+             */
+            final int mFrom;
+
+            /**
+             * Results of the chunk, which are kept until they're
+             * released in ordered mode.
+             */
+            List<PrimeCallable.PrimeResult> mChunkResults;
+
+            /**
+             * Constructor initializes the fields.
+             */
+            ChunkTask(PrimeChunkCallable chunk,
+                      int from) {
+                super(chunk);
+                mSize = chunk.size();
+                mFrom = from;
+            }
+
+            /**
+             * Hook method called when the chunk completes, fails, or
+             * is cancelled.
+             */
+            @Override
+            protected void done() {
+                mFutures.remove(this);
+                if (isCancelled())
+                    return;
+
+                try {
+                    List<PrimeCallable.PrimeResult> results = get();
+                    if (mWindow == 0)
+                        mResults.addAll(results);
+                    else {
+                        mChunkResults = results;
+                        release(this);
+                    }
+
+                    // The chunk stops early if it's interrupted, so
+                    // it may not have checked all its candidates.
+                    mPending.addAndGet(results.size() - mSize);
+                } catch (ExecutionException e) {
+                    if (mFailure == null)
+                        mFailure = e.getCause();
+                } catch (InterruptedException e) {
+                    // Can't happen since the task is done.
+                    Thread.currentThread().interrupt();
+                }
+
+                submitChunks();
+                drain();
+            }
+        }
+    }
+}
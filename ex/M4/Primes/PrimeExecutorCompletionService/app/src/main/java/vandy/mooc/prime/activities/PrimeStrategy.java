@@ -0,0 +1,144 @@
+package vandy.mooc.prime.activities;
+
+import java.util.function.Function;
+
+import vandy.mooc.prime.utils.MillerRabinPrimeChecker;
+import vandy.mooc.prime.utils.PollardRhoPrimeChecker;
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.RandomCandidates;
+import vandy.mooc.prime.utils.SegmentedSieve;
+import vandy.mooc.prime.utils.TrialDivisionPrimeChecker;
+
+/**
+ * The strategies that can be used to check candidates for primality,
+ * which are chosen by name so the same set is available to the app
+ * and to programs that drive the prime computations without a UI.
+ */
+public enum PrimeStrategy {
+    /**
+     * The brute-force algorithm, without memoizing its results.
+     */
+    BRUTE_FORCE {
+        @Override
+        public PrimeChecker create(long[] candidates) {
+            return PrimeCallable.sPrimeChecker::applyAsLong;
+        }
+    },
+
+    /**
+     * Trial division by the primes up to each candidate's square
+     * root.
+     */
+    TRIAL_DIVISION {
+        @Override
+        public PrimeChecker create(long[] candidates) {
+            return new TrialDivisionPrimeChecker();
+        }
+
+        @Override
+        public PrimeChecker create(long[] candidates,
+                                   long timeoutNanos) {
+            return new TrialDivisionPrimeChecker(timeoutNanos);
+        }
+
+        @Override
+        public boolean supportsDeadline() {
+            return true;
+        }
+    },
+
+    /**
+     * Trial division, memoized by PrimeCallable's cache and
+     * snapshot.
+     */
+    MEMOIZED {
+        @Override
+        public PrimeChecker create(long[] candidates) {
+            return n -> new PrimeCallable(n).call().mSmallestFactor;
+        }
+
+        /**
+         * Each chunk looks up all its candidates in the cache at
+         * once, and the ones that aren't cached are checked together
+         * by a SegmentedSieve rather than one at a time by trial
+         * division.
+         */
+        @Override
+        public Function<long[], PrimeChecker> createFactory(RandomCandidates candidates) {
+            return values -> PrimeCallable.smallestFactors(values)::get;
+        }
+    },
+
+    /**
+     * Deterministic Miller-Rabin, backed by trial division for
+     * composites.
+     */
+    MILLER_RABIN {
+        @Override
+        public PrimeChecker create(long[] candidates) {
+            return new MillerRabinPrimeChecker();
+        }
+    },
+
+    /**
+     * Deterministic Miller-Rabin, backed by Pollard's rho for
+     * composites.
+     */
+    POLLARD_RHO {
+        @Override
+        public PrimeChecker create(long[] candidates) {
+            return new PollardRhoPrimeChecker();
+        }
+    },
+
+    /**
+     * A sieve that checks the candidates in batches of cache-sized
+     * windows.  Each chunk builds its own sieve over just its
+     * candidates, so no chunk waits for a sieve over all of them.
+     */
+    SEGMENTED_SIEVE {
+        @Override
+        public PrimeChecker create(long[] candidates) {
+            return new SegmentedSieve(candidates);
+        }
+    };
+
+    /**
+     * Returns a new PrimeChecker that checks @a candidates.
+     */
+    public abstract PrimeChecker create(long[] candidates);
+
+    /**
+     * Returns a new PrimeChecker that checks @a candidates and gives
+     * up on any candidate that takes longer than @a timeoutNanos
+     * nanoseconds, whose result is then unknown.  A @a timeoutNanos
+     * of 0 means no deadline, and strategies that don't
+     * supportsDeadline() throw UnsupportedOperationException for any
+     * other value rather than silently ignoring it.
+     */
+    public PrimeChecker create(long[] candidates,
+                               long timeoutNanos) {
+        if (timeoutNanos != 0)
+            throw new UnsupportedOperationException
+                (this + " doesn't support a deadline");
+        return create(candidates);
+    }
+
+    /**
+     * Returns true if create(long[], long) honors a deadline, which
+     * only TRIAL_DIVISION does.
+     */
+    public boolean supportsDeadline() {
+        return false;
+    }
+
+    /**
+     * Returns a function that creates the PrimeChecker for each chunk
+     * of @a candidates, given the candidates the chunk generated.  By
+     * default each chunk gets a new PrimeChecker for its own
+     * candidates.
+     */
+    public Function<long[], PrimeChecker> createFactory(RandomCandidates candidates) {
+        return this::create;
+    }
+}
@@ -0,0 +1,182 @@
+package vandy.mooc.prime.utils;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool that adjusts its number of threads while it runs,
+ * using hill climbing to find the size that completes the most tasks
+ * per second.  Every sampling interval it compares the throughput of
+ * the last interval with the one before, keeps adding (or removing)
+ * a thread while that helps, and turns around when it stops helping.
+ * Since extra threads that don't raise throughput only waste memory
+ * and contend for the cores, the pool also shrinks whenever the
+ * throughput is flat.  The pool never grows while its queue is empty,
+ * and always stays within the bounds it was created with.  This
+ * copes with devices whose cores differ in speed or are throttled,
+ * where the number of available processors isn't the best size.
+ */
+public class AdaptiveThreadPool
+       extends ThreadPoolExecutor {
+    /**
+     * How often the throughput is sampled, in nanoseconds.
+     */
+    private static final long sSAMPLE_INTERVAL =
+        TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * Throughput changes smaller than this fraction are treated as
+     * noise.
+     */
+    private static final double sTOLERANCE = 0.05;
+
+    /**
+     * Fewest threads the pool may have.
+     */
+    private final int mLowerBound;
+
+    /**
+     * Most threads the pool may have.
+     */
+    private final int mUpperBound;
+
+    /**
+     * Number of tasks that have completed.
+     */
+    private final AtomicLong mCompleted = new AtomicLong();
+
+    /**
+     * Time the current sampling interval started, which is also used
+     * to elect the thread that adjusts the size.
+     */
+    private final AtomicLong mSampleStart = new AtomicLong(System.nanoTime());
+
+    /**
+     * Value of mCompleted when the current sampling interval started,
+     * which is guarded by "this".
+     */
+    private long mCompletedAtSampleStart;
+
+    /**
+     * Throughput of the previous sampling interval in tasks per
+     * second, which is guarded by "this".
+     */
+    private double mLastThroughput;
+
+    /**
+     * Either +1 or -1, depending on whether the pool is growing or
+     * shrinking, which is guarded by "this".
+     */
+    private int mDirection = 1;
+
+    /**
+     * Constructor creates a pool that starts with @a initialSize
+     * threads and stays between @a lowerBound and @a upperBound
+     * threads.
+     */
+    public AdaptiveThreadPool(int lowerBound,
+                              int initialSize,
+                              int upperBound) {
+        super(initialSize,
+              initialSize,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>());
+
+        if (lowerBound < 1
+            || initialSize < lowerBound
+            || upperBound < initialSize)
+            throw new IllegalArgumentException
+                ("bounds must satisfy 1 <= " + lowerBound
+                 + " <= " + initialSize
+                 + " <= " + upperBound);
+
+        mLowerBound = lowerBound;
+        mUpperBound = upperBound;
+    }
+
+    /**
+     * Returns the fewest threads the pool may have.
+     */
+    public int getLowerBound() {
+        return mLowerBound;
+    }
+
+    /**
+     * Returns the most threads the pool may have.
+     */
+    public int getUpperBound() {
+        return mUpperBound;
+    }
+
+    /**
+     * Returns a summary of the number of threads the pool has chosen.
+     */
+    public String getSizeSummary() {
+        return "thread pool size: " + getCorePoolSize()
+            + " (between " + mLowerBound + " and " + mUpperBound + ")";
+    }
+
+    /**
+     * Hook method called after each task runs, which counts the task
+     * and adjusts the size at the end of each sampling interval.
+     */
+    @Override
+    protected void afterExecute(Runnable runnable,
+                                Throwable throwable) {
+        super.afterExecute(runnable, throwable);
+        mCompleted.incrementAndGet();
+
+        long now = System.nanoTime();
+        long sampleStart = mSampleStart.get();
+
+        // Only the thread that ends the interval adjusts the size.
+        if (now - sampleStart >= sSAMPLE_INTERVAL
+            && mSampleStart.compareAndSet(sampleStart, now))
+            adjustSize(now - sampleStart);
+    }
+
+    /**
+     * Move the size one thread toward higher throughput, based on the
+     * tasks completed during the @a elapsed nanoseconds since the
+     * last adjustment.
+     */
+    private synchronized void adjustSize(long elapsed) {
+        long completed = mCompleted.get();
+        double throughput =
+            (completed - mCompletedAtSampleStart) * 1e9 / elapsed;
+        mCompletedAtSampleStart = completed;
+
+        if (throughput < mLastThroughput * (1 - sTOLERANCE))
+            // The last step made things worse, so turn around.
+            mDirection = -mDirection;
+        else if (throughput <= mLastThroughput * (1 + sTOLERANCE))
+            // The last step made no difference, so give back a
+            // thread.
+            mDirection = -1;
+        mLastThroughput = throughput;
+
+        // Adding threads can't help if they'd have nothing to do.
+        if (mDirection > 0 && getQueue().isEmpty())
+            return;
+
+        int size = getCorePoolSize() + mDirection;
+        if (size < mLowerBound || size > mUpperBound) {
+            // Bounce off the bounds.
+            mDirection = -mDirection;
+            return;
+        }
+
+        // The maximum size can never be less than the core size, so
+        // change them in the right order.
+        if (mDirection > 0) {
+            setMaximumPoolSize(size);
+            setCorePoolSize(size);
+        } else {
+            setCorePoolSize(size);
+            setMaximumPoolSize(size);
+        }
+    }
+}
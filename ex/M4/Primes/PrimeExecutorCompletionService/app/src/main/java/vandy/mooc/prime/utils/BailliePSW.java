@@ -0,0 +1,280 @@
+package vandy.mooc.prime.utils;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uses the Baillie-PSW test to determine if a BigInteger is prime or
+ * not.  The test is a strong Miller-Rabin test to base 2 followed by
+ * a strong Lucas test with parameters chosen by Selfridge's method,
+ * and no composite that passes both is known.  Numbers that fit in a
+ * long are checked by the deterministic MillerRabinPrimeChecker
+ * instead.  Since BigIntegers are immutable, every arithmetic step
+ * allocates, so the test keeps steps to a minimum: small factors are
+ * found with one division per group of small primes whose product
+ * fits in a long, and the Lucas sequences are computed with as few
+ * multiplications as possible.  More information on the test is
+ * available at https://en.wikipedia.org/wiki/Baillie%E2%80%93PSW_primality_test.
+ */
+public class BailliePSW {
+    /**
+     * Bound on the primes used for trial division.
+     */
+    private static final int sSMALL_PRIME_LIMIT = 1000;
+
+    /**
+     * Each group of small primes, in ascending order, whose product
+     * fits in a long.
+     */
+    private static final int[][] sPRIME_GROUPS;
+
+    /**
+     * The product of the primes in each group of sPRIME_GROUPS.
+     */
+    private static final BigInteger[] sGROUP_PRODUCTS;
+
+    static {
+        List<int[]> groups = new ArrayList<>();
+        List<BigInteger> products = new ArrayList<>();
+
+        List<Integer> group = new ArrayList<>();
+        long product = 1;
+        for (int candidate = 2; candidate < sSMALL_PRIME_LIMIT; ++candidate) {
+            if (!MillerRabinPrimeChecker.isPrime(candidate))
+                continue;
+
+            if (product > Long.MAX_VALUE / candidate) {
+                groups.add(toArray(group));
+                products.add(BigInteger.valueOf(product));
+                group.clear();
+                product = 1;
+            }
+            group.add(candidate);
+            product *= candidate;
+        }
+        groups.add(toArray(group));
+        products.add(BigInteger.valueOf(product));
+
+        sPRIME_GROUPS = groups.toArray(new int[0][]);
+        sGROUP_PRODUCTS = products.toArray(new BigInteger[0]);
+    }
+
+    /**
+     * The BigInteger 2.
+     */
+    private static final BigInteger sTWO = BigInteger.valueOf(2);
+
+    /**
+     * Returns true if @a n is prime, or is one of the (so far
+     * unknown) composites that pass the Baillie-PSW test, else false.
+     */
+    public static boolean isProbablePrime(BigInteger n) {
+        if (n.signum() <= 0)
+            return false;
+        else if (n.bitLength() < Long.SIZE)
+            return MillerRabinPrimeChecker.isPrime(n.longValue());
+
+        return smallFactor(n) == 0
+            && isStrongProbablePrimeBase2(n)
+            && isStrongLucasProbablePrime(n);
+    }
+
+    /**
+     * Returns the smallest prime below 1000 that divides @a n but
+     * isn't @a n itself, or 0 if there isn't one.
+     */
+    public static long smallFactor(BigInteger n) {
+        for (int i = 0; i < sPRIME_GROUPS.length; ++i) {
+            // One division finds the remainder modulo every prime in
+            // the group.
+            long remainder = n.mod(sGROUP_PRODUCTS[i]).longValue();
+
+            for (int prime : sPRIME_GROUPS[i])
+                if (remainder % prime == 0
+                    && n.compareTo(BigInteger.valueOf(prime)) != 0)
+                    return prime;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns true if odd @a n > 2 is a strong probable prime to
+     * base 2, else false.
+     */
+    private static boolean isStrongProbablePrimeBase2(BigInteger n) {
+        // Write n - 1 as d * 2^s with d odd.
+        BigInteger nMinusOne = n.subtract(BigInteger.ONE);
+        int s = nMinusOne.getLowestSetBit();
+        BigInteger d = nMinusOne.shiftRight(s);
+
+        BigInteger x = sTWO.modPow(d, n);
+        if (x.equals(BigInteger.ONE) || x.equals(nMinusOne))
+            return true;
+
+        for (int r = 1; r < s; ++r) {
+            x = x.multiply(x).mod(n);
+            if (x.equals(nMinusOne))
+                return true;
+            else if (x.equals(BigInteger.ONE))
+                return false;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if odd @a n, which has no small factors, is a
+     * strong Lucas probable prime with the parameters chosen by
+     * Selfridge's method A, else false.
+     */
+    private static boolean isStrongLucasProbablePrime(BigInteger n) {
+        // Find the first D in 5, -7, 9, -11, ... whose Jacobi symbol
+        // is -1.  There's none if n is a perfect square, so check
+        // for that after a few tries.
+        long d = 5;
+        for (int tries = 0; ; ++tries) {
+            int jacobi = jacobi(d, n);
+            if (jacobi == -1)
+                break;
+            else if (jacobi == 0)
+                // Only possible if |D| shares a factor with n.
+                return n.compareTo(BigInteger.valueOf(Math.abs(d))) == 0;
+
+            if (tries == 4 && isSquare(n))
+                return false;
+            d = d > 0 ? -(d + 2) : -(d - 2);
+        }
+
+        // P = 1 and Q = (1 - D) / 4.
+        BigInteger bigD = BigInteger.valueOf(d).mod(n);
+        BigInteger q = BigInteger.valueOf((1 - d) / 4).mod(n);
+
+        // Write n + 1 as k * 2^s with k odd.
+        BigInteger nPlusOne = n.add(BigInteger.ONE);
+        int s = nPlusOne.getLowestSetBit();
+        BigInteger k = nPlusOne.shiftRight(s);
+
+        // Compute U_k, V_k, and Q^k from the top bit of k down,
+        // starting with U_1 = 1, V_1 = P = 1, and Q^1.
+        BigInteger u = BigInteger.ONE;
+        BigInteger v = BigInteger.ONE;
+        BigInteger qk = q;
+
+        for (int bit = k.bitLength() - 2; bit >= 0; --bit) {
+            // Double the index: U_2j = U_j V_j, V_2j = V_j^2 - 2 Q^j.
+            u = u.multiply(v).mod(n);
+            v = v.multiply(v).subtract(qk.shiftLeft(1)).mod(n);
+            qk = qk.multiply(qk).mod(n);
+
+            if (k.testBit(bit)) {
+                // Add 1 to the index: U_2j+1 = (P U_2j + V_2j) / 2,
+                // V_2j+1 = (D U_2j + P V_2j) / 2.
+                BigInteger nextU = half(u.add(v), n);
+                v = half(bigD.multiply(u).add(v), n);
+                u = nextU;
+                qk = qk.multiply(q).mod(n);
+            }
+        }
+
+        if (u.signum() == 0 || v.signum() == 0)
+            return true;
+
+        // Check V_k 2^r for r = 1 .. s - 1.
+        for (int r = 1; r < s; ++r) {
+            v = v.multiply(v).subtract(qk.shiftLeft(1)).mod(n);
+            if (v.signum() == 0)
+                return true;
+            qk = qk.multiply(qk).mod(n);
+        }
+        return false;
+    }
+
+    /**
+     * Returns @a x / 2 modulo odd @a n.
+     */
+    private static BigInteger half(BigInteger x, BigInteger n) {
+        if (x.testBit(0))
+            x = x.add(n);
+        return x.shiftRight(1).mod(n);
+    }
+
+    /**
+     * Returns the Jacobi symbol (@a a / @a n) for odd positive @a n.
+     */
+    private static int jacobi(long a, BigInteger n) {
+        int result = 1;
+
+        // (-1 / n) = -1 if n = 3 mod 4.
+        int nMod8 = n.intValue() & 7;
+        if (a < 0) {
+            a = -a;
+            if ((nMod8 & 3) == 3)
+                result = -result;
+        }
+
+        // (2 / n) = -1 if n = 3 or 5 mod 8.
+        while ((a & 1) == 0 && a != 0) {
+            a >>= 1;
+            if (nMod8 == 3 || nMod8 == 5)
+                result = -result;
+        }
+
+        if (a == 1)
+            return result;
+
+        // Quadratic reciprocity flips the sign if both a and n are 3
+        // mod 4, and then n can be reduced modulo the small a.
+        if ((a & 3) == 3 && (nMod8 & 3) == 3)
+            result = -result;
+        return result * jacobi(n.mod(BigInteger.valueOf(a)).longValue(), a);
+    }
+
+    /**
+     * Returns the Jacobi symbol (@a a / @a n) for odd positive @a n
+     * and 0 <= @a a < @a n.
+     */
+    private static int jacobi(long a, long n) {
+        int result = 1;
+        while (a != 0) {
+            while ((a & 1) == 0) {
+                a >>= 1;
+                long nMod8 = n & 7;
+                if (nMod8 == 3 || nMod8 == 5)
+                    result = -result;
+            }
+
+            long t = a;
+            a = n;
+            n = t;
+            if ((a & 3) == 3 && (n & 3) == 3)
+                result = -result;
+            a %= n;
+        }
+        return n == 1 ? result : 0;
+    }
+
+    /**
+     * Returns true if @a n is a perfect square, else false.
+     */
+    private static boolean isSquare(BigInteger n) {
+        // Newton's method converges down to the square root from
+        // any starting point above it.
+        BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength() + 1) / 2);
+        while (true) {
+            BigInteger y = x.add(n.divide(x)).shiftRight(1);
+            if (y.compareTo(x) >= 0)
+                return x.multiply(x).equals(n);
+            x = y;
+        }
+    }
+
+    /**
+     * Returns the ints in @a list as an array.
+     */
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; ++i)
+            array[i] = list.get(i);
+        return array;
+    }
+}
@@ -0,0 +1,261 @@
+package vandy.mooc.prime.utils;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * This class extends Memoizer so it holds at most a fixed number of
+ * keys, using a simplified Window TinyLFU policy to choose which keys
+ * to evict.  New keys enter a small LRU "window".  When the window
+ * overflows its oldest key must compete with the oldest key of the
+ * main region, and whichever has been requested more often recently
+ * (according to a FrequencySketch) stays in the cache.  The main
+ * region is a segmented LRU, so keys requested again after admission
+ * are promoted to a protected segment that one-off keys can't flush.
+ * More information on this policy is available at
+ * https://arxiv.org/abs/1512.00727.
+ */
+public class BoundedMemoizer<K, V>
+       extends Memoizer<K, V> {
+    /**
+     * Percentage of the maximum size devoted to the window.
+     */
+    private static final int sWINDOW_PERCENT = 1;
+
+    /**
+     * Percentage of the main region devoted to the protected segment.
+     */
+    private static final int sPROTECTED_PERCENT = 80;
+
+    /**
+     * Number of buffered requests for cached keys at which a thread
+     * waits for the lock to apply them, rather than leaving them to
+     * whichever thread holds the lock next.
+     */
+    private static final int sMAX_BUFFERED_ACCESSES = 1024;
+
+    /**
+     * Estimates how often each key has been requested recently.
+     */
+    private final FrequencySketch mSketch;
+
+    /**
+     * Keys most recently added to the cache, in LRU order, each with
+     * the future that holds its value.
+     */
+    private final LinkedHashMap<K, Future<V>> mWindow =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Keys admitted to the main region but not requested since, in
+     * LRU order.
+     */
+    private final LinkedHashMap<K, Future<V>> mProbation =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Keys requested again after being admitted to the main region,
+     * in LRU order.
+     */
+    private final LinkedHashMap<K, Future<V>> mProtected =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Maximum number of keys in the window.
+     */
+    private final int mMaxWindow;
+
+    /**
+     * Maximum number of keys in the main region.
+     */
+    private final int mMaxMain;
+
+    /**
+     * Maximum number of keys in the protected segment.
+     */
+    private final int mMaxProtected;
+
+    /**
+     * Guards the policy's state.
+     */
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    /**
+     * Keys found in the cache whose requests haven't been applied to
+     * the policy yet, so cache hits don't wait for the lock.
+     */
+    private final Queue<K> mAccesses = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of keys in mAccesses.
+     */
+    private final AtomicInteger mAccessCount = new AtomicInteger();
+
+    /**
+     * Constructor initializes the fields so the cache holds at most
+     * @a maximumSize keys.
+     */
+    public BoundedMemoizer(Function<K, V> function,
+                           int maximumSize) {
+        super(function);
+
+        if (maximumSize < 2)
+            throw new IllegalArgumentException
+                ("maximumSize must be at least 2");
+
+        mSketch = new FrequencySketch(maximumSize);
+        mMaxWindow = Math.max(1, maximumSize * sWINDOW_PERCENT / 100);
+        mMaxMain = maximumSize - mMaxWindow;
+        mMaxProtected = mMaxMain * sPROTECTED_PERCENT / 100;
+    }
+
+    /**
+     * Hook method that adds @a key, whose value is held by @a future,
+     * to the window and evicts a key if the cache is now over its
+     * maximum size.
+     */
+    @Override
+    protected void onInsert(K key,
+                            Future<V> future) {
+        mLock.lock();
+        try {
+            drainAccesses();
+            mSketch.increment(key);
+
+            // A key that was removed after its computation was
+            // cancelled may still be tracked by the policy, in which
+            // case it's now held by the new future.
+            LinkedHashMap<K, Future<V>> segment = segmentOf(key);
+            if (segment != null)
+                segment.put(key, future);
+            else {
+                mWindow.put(key, future);
+                if (mWindow.size() > mMaxWindow)
+                    admit(removeEldest(mWindow));
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Hook method that records a request for cached @a key.  The
+     * request is buffered and applied by whichever thread holds the
+     * lock next, so no request is lost, but a thread only waits for
+     * the lock if the buffer is full.
+     */
+    @Override
+    protected void onAccess(K key) {
+        mAccesses.add(key);
+
+        if (mAccessCount.incrementAndGet() >= sMAX_BUFFERED_ACCESSES)
+            mLock.lock();
+        else if (!mLock.tryLock())
+            return;
+
+        try {
+            drainAccesses();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Apply the buffered requests to the policy.  Must be called
+     * while holding mLock.
+     */
+    private void drainAccesses() {
+        for (K key; (key = mAccesses.poll()) != null; ) {
+            mAccessCount.decrementAndGet();
+            mSketch.increment(key);
+            touch(key);
+        }
+    }
+
+    /**
+     * Returns the segment that tracks @a key, or null if it isn't
+     * tracked by the policy.
+     */
+    private LinkedHashMap<K, Future<V>> segmentOf(K key) {
+        if (mWindow.containsKey(key))
+            return mWindow;
+        else if (mProbation.containsKey(key))
+            return mProbation;
+        else if (mProtected.containsKey(key))
+            return mProtected;
+        else
+            return null;
+    }
+
+    /**
+     * Move @a key to the most recently used position of its segment,
+     * promoting it from probation to protected.
+     */
+    private void touch(K key) {
+        if (mWindow.get(key) != null || mProtected.get(key) != null)
+            return;
+
+        Future<V> future = mProbation.remove(key);
+        if (future == null)
+            return;
+
+        mProtected.put(key, future);
+
+        // Demote the least recently used protected key back to
+        // probation if the protected segment is full.
+        if (mProtected.size() > mMaxProtected) {
+            Map.Entry<K, Future<V>> demoted = removeEldest(mProtected);
+            mProbation.put(demoted.getKey(), demoted.getValue());
+        }
+    }
+
+    /**
+     * Decide whether @a candidate, which has just left the window, is
+     * admitted to the main region, and evict from the cache whichever
+     * key loses.  Keys are only evicted while they're still held by
+     * the futures the policy knows about, so a future added for the
+     * key since then is never dropped.
+     */
+    private void admit(Map.Entry<K, Future<V>> candidate) {
+        if (mProbation.size() + mProtected.size() < mMaxMain) {
+            mProbation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        // The victim is the least recently used key in probation, or
+        // in the protected segment if probation is empty.
+        LinkedHashMap<K, Future<V>> segment =
+            mProbation.isEmpty() ? mProtected : mProbation;
+        Map.Entry<K, Future<V>> victim =
+            segment.entrySet().iterator().next();
+
+        if (mSketch.frequency(candidate.getKey())
+            > mSketch.frequency(victim.getKey())) {
+            K key = victim.getKey();
+            remove(key, segment.remove(key));
+            mProbation.put(candidate.getKey(), candidate.getValue());
+        } else
+            remove(candidate.getKey(), candidate.getValue());
+    }
+
+    /**
+     * Remove and return the least recently used key in @a segment,
+     * along with its future.
+     */
+    private Map.Entry<K, Future<V>> removeEldest(LinkedHashMap<K, Future<V>> segment) {
+        Iterator<Map.Entry<K, Future<V>>> iterator =
+            segment.entrySet().iterator();
+        Map.Entry<K, Future<V>> eldest =
+            new AbstractMap.SimpleImmutableEntry<>(iterator.next());
+        iterator.remove();
+        return eldest;
+    }
+}
@@ -0,0 +1,49 @@
+package vandy.mooc.prime.utils;
+
+/**
+ * Thrown by a PrimeChecker that runs out of time before it can decide
+ * whether a candidate is prime, which reports how far it got so the
+ * partial result is still useful.
+ */
+public class DeadlineExceededException
+       extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The candidate that was being checked.
+     */
+    private final long mCandidate;
+
+    /**
+     * Bound below which the candidate is known to have no factor
+     * other than 1.
+     */
+    private final long mNoFactorBelow;
+
+    /**
+     * Constructor initializes the fields for @a candidate, which has
+     * no factor below @a noFactorBelow.
+     */
+    public DeadlineExceededException(long candidate,
+                                     long noFactorBelow) {
+        super("deadline exceeded, no factor of " + candidate
+              + " below " + noFactorBelow);
+        mCandidate = candidate;
+        mNoFactorBelow = noFactorBelow;
+    }
+
+    /**
+     * Returns the candidate that was being checked.
+     */
+    public long getCandidate() {
+        return mCandidate;
+    }
+
+    /**
+     * Returns the bound below which the candidate is known to have no
+     * factor other than 1.
+     */
+    public long getNoFactorBelow() {
+        return mNoFactorBelow;
+    }
+}
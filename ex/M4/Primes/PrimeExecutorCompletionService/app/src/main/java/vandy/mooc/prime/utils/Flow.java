@@ -0,0 +1,76 @@
+package vandy.mooc.prime.utils;
+
+/**
+ * The interfaces of java.util.concurrent.Flow, which isn't available
+ * until Android API level 30, declared here with the same names and
+ * semantics so code written against them only needs its imports
+ * changed to use the platform version instead.  A Publisher produces
+ * items for a Subscriber, which requests them via its Subscription so
+ * it's never sent more items than it can handle.  More information
+ * on these interfaces is available at http://www.reactive-streams.org.
+ */
+public final class Flow {
+    /**
+     * This class only holds interfaces, so it's never instantiated.
+     */
+    private Flow() {
+    }
+
+    /**
+     * A producer of items that are received by Subscribers.
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+        /**
+         * Adds @a subscriber, whose onSubscribe() method is called
+         * with a new Subscription.
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items, whose methods are called in order and
+     * never concurrently for each Subscription.
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called before any other method with the @a subscription
+         * used to request items.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with the next @a item, which was requested via the
+         * Subscription.
+         */
+        void onNext(T item);
+
+        /**
+         * Called when the Publisher fails with @a throwable, after
+         * which no other methods are called.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called when the Publisher has no more items, after which no
+         * other methods are called.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Links a Publisher and a Subscriber.
+     */
+    public interface Subscription {
+        /**
+         * Adds @a n items to the number the Subscriber is willing to
+         * receive.
+         */
+        void request(long n);
+
+        /**
+         * Stops sending items to the Subscriber.
+         */
+        void cancel();
+    }
+}
@@ -0,0 +1,139 @@
+package vandy.mooc.prime.utils;
+
+/**
+ * A count-min sketch that estimates how often each key has been
+ * seen recently, using four rows of 4-bit counters packed sixteen to
+ * a long.  All counters are halved once the number of increments
+ * reaches ten times the sample size, so old popularity fades away.
+ * This class isn't thread-safe, so callers must synchronize access.
+ * More information on count-min sketches is available at
+ * https://en.wikipedia.org/wiki/Count%E2%80%93min_sketch.
+ */
+class FrequencySketch {
+    /**
+     * Number of rows, each indexed by a different hash of the key.
+     */
+    private static final int sDEPTH = 4;
+
+    /**
+     * Largest value a 4-bit counter can hold.
+     */
+    private static final int sMAX_COUNT = 15;
+
+    /**
+     * Seeds used to derive a different hash for each row.
+     */
+    private static final long[] sSEEDS = {
+        0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L,
+        0x9AE16A3B2F90404FL, 0xCBF29CE484222325L
+    };
+
+    /**
+     * Mask that clears the bit shifted into each 4-bit counter from
+     * its neighbor when a long is halved.
+     */
+    private static final long sHALF_MASK = 0x7777777777777777L;
+
+    /**
+     * The packed counters, with each row occupying a contiguous
+     * quarter of the array.
+     */
+    private final long[] mTable;
+
+    /**
+     * Mask for the index of a long within a row.
+     */
+    private final int mRowMask;
+
+    /**
+     * Number of increments after which all counters are halved.
+     */
+    private final int mSampleSize;
+
+    /**
+     * Number of increments since the counters were last halved.
+     */
+    private int mSize;
+
+    /**
+     * Constructor sizes the sketch for a cache of @a maximumSize
+     * entries.
+     */
+    FrequencySketch(int maximumSize) {
+        int rowLength =
+            Integer.highestOneBit(Math.max(16, maximumSize / 16) - 1) << 1;
+        mTable = new long[rowLength * sDEPTH];
+        mRowMask = rowLength - 1;
+        mSampleSize = 10 * Math.max(1, maximumSize);
+    }
+
+    /**
+     * Returns the estimated number of times @a key has been seen.
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = sMAX_COUNT;
+        for (int row = 0; row < sDEPTH; ++row) {
+            long word = mTable[indexOf(hash, row)];
+            int shift = shiftOf(hash, row);
+            frequency = Math.min(frequency, (int) ((word >>> shift) & 0xF));
+        }
+        return frequency;
+    }
+
+    /**
+     * Record another occurrence of @a key.
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < sDEPTH; ++row) {
+            int index = indexOf(hash, row);
+            int shift = shiftOf(hash, row);
+            if (((mTable[index] >>> shift) & 0xF) < sMAX_COUNT) {
+                mTable[index] += 1L << shift;
+                added = true;
+            }
+        }
+
+        if (added && ++mSize == mSampleSize)
+            reset();
+    }
+
+    /**
+     * Halve every counter, which ages out keys that were popular long
+     * ago.
+     */
+    private void reset() {
+        for (int i = 0; i < mTable.length; ++i)
+            mTable[i] = (mTable[i] >>> 1) & sHALF_MASK;
+        mSize /= 2;
+    }
+
+    /**
+     * Returns the index of the long holding @a hash's counter in @a
+     * row.
+     */
+    private int indexOf(int hash, int row) {
+        long h = (hash + sSEEDS[row]) * sSEEDS[row];
+        h += h >>> 32;
+        return row * (mRowMask + 1) + ((int) h & mRowMask);
+    }
+
+    /**
+     * Returns the bit offset of @a hash's counter within its long in
+     * @a row.
+     */
+    private int shiftOf(int hash, int row) {
+        return ((hash >>> (row << 3)) & 0xF) << 2;
+    }
+
+    /**
+     * Returns @a hashCode with its bits mixed, so that poor hash
+     * codes still spread across the table.
+     */
+    private static int spread(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
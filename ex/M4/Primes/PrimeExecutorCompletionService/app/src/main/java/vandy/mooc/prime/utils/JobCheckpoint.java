@@ -0,0 +1,378 @@
+package vandy.mooc.prime.utils;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class checkpoints a job that checks a sequence of random
+ * candidates for primality, so a job that's lost when its process is
+ * killed can resume where it left off.  The checkpoint is an
+ * append-only file whose header describes the candidates, followed by
+ * a fixed-size (candidate, smallest factor) record for each result.
+ * The results must be recorded in the order of the candidates, so the
+ * number of records is the cursor of the job, and a record torn by a
+ * crash is just dropped.  Recording a result only appends it to a
+ * buffer in memory, so the threads computing the results never wait
+ * for the disk.  A background thread periodically appends the
+ * buffered records to the file and syncs it once for the whole batch.
+ */
+public class JobCheckpoint {
+    /**
+     * Debugging tag used by the Android logger.
+     */
+    private static final String TAG =
+        JobCheckpoint.class.getSimpleName();
+
+    /**
+     * Identifies a checkpoint file, and also its format version.
+     */
+    private static final long sMAGIC = 0x5052494D45430001L;
+
+    /**
+     * Number of bytes in the file header (magic, seed, offset, count,
+     * origin, and bound).
+     */
+    private static final int sHEADER_BYTES = 6 * Long.BYTES;
+
+    /**
+     * Number of bytes in each record (candidate and smallest factor).
+     */
+    private static final int sRECORD_BYTES = 2 * Long.BYTES;
+
+    /**
+     * Number of milliseconds between flushes of the buffered records.
+     */
+    private static final long sFLUSH_INTERVAL_MS = 1000;
+
+    /**
+     * The checkpoint file.
+     */
+    private final File mFile;
+
+    /**
+     * All the candidates checked by the job.
+     */
+    private final RandomCandidates mCandidates;
+
+    /**
+     * Number of results that were in the file when it was opened.
+     */
+    private final int mCursor;
+
+    /**
+     * Runs the flushes of all the checkpoints in the background, one
+     * at a time.  A flush only appends a batch of records and syncs
+     * the file once, so a single daemon thread keeps up with every
+     * job, and a job doesn't start a thread of its own.
+     */
+    private static final ScheduledExecutorService sFlusher =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "JobCheckpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The periodic flushes of this checkpoint, which are cancelled
+     * when it's stopped.
+     */
+    private final ScheduledFuture<?> mPeriodicFlush;
+
+    /**
+     * Becomes true once close() or discard() is called, so the file
+     * is only closed once.
+     */
+    private final AtomicBoolean mStopped = new AtomicBoolean();
+
+    /**
+     * The open checkpoint file, or null if it hasn't been opened
+     * yet, which is only used by the flusher thread.
+     */
+    private FileChannel mChannel;
+
+    /**
+     * Becomes true if a flush fails, after which the file is left as
+     * it is, which is only used by the flusher thread.
+     */
+    private boolean mFailed;
+
+    /**
+     * Candidates and smallest factors of the results recorded since
+     * the last flush, which are guarded by "this".
+     */
+    private long[] mPending = new long[128];
+
+    /**
+     * Number of longs in mPending, which is guarded by "this".
+     */
+    private int mPendingCount;
+
+    /**
+     * Becomes true once the checkpoint is closed or discarded, fails,
+     * or is given an unknown result, after which results are no
+     * longer recorded.
+     */
+    private volatile boolean mClosed;
+
+    /**
+     * Constructor starts checkpointing a new job that checks @a
+     * candidates to @a file, which replaces any checkpoint that's
+     * already there.  The file isn't written until the first flush,
+     * so this constructor can be called on the UI thread.
+     */
+    public JobCheckpoint(File file,
+                         RandomCandidates candidates) {
+        this(file, candidates, -1);
+    }
+
+    /**
+     * Constructor initializes the fields and schedules the periodic
+     * flushes.  A negative @a cursor means the job is new.
+     */
+    private JobCheckpoint(File file,
+                          RandomCandidates candidates,
+                          int cursor) {
+        mFile = file;
+        mCandidates = candidates;
+        mCursor = cursor;
+
+        mPeriodicFlush =
+            sFlusher.scheduleWithFixedDelay(this::flush,
+                                            sFLUSH_INTERVAL_MS,
+                                            sFLUSH_INTERVAL_MS,
+                                            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the checkpoint of the job in @a file so it can continue
+     * recording its results, or null if there's no unfinished job in
+     * the file.  Only the header is read, so this is cheap however
+     * many results have been recorded.
+     */
+    public static JobCheckpoint resume(File file) {
+        if (!file.exists())
+            return null;
+
+        try (DataInputStream input =
+             new DataInputStream(new FileInputStream(file))) {
+            if (input.readLong() != sMAGIC)
+                throw new IOException(file + " isn't a valid checkpoint");
+
+            long seed = input.readLong();
+            int offset = (int) input.readLong();
+            int count = (int) input.readLong();
+            long origin = input.readLong();
+            long bound = input.readLong();
+
+            RandomCandidates candidates =
+                new RandomCandidates(seed, offset + count, origin, bound)
+                .skip(offset);
+
+            // Any partial record at the end of the file was torn by a
+            // crash, so it's dropped.
+            int cursor = (int) Math.min((file.length() - sHEADER_BYTES)
+                                        / sRECORD_BYTES,
+                                        count);
+            return cursor < count
+                ? new JobCheckpoint(file, candidates, cursor)
+                : null;
+        } catch (EOFException
+                 | IllegalArgumentException
+                 | IndexOutOfBoundsException e) {
+            // The header was torn by a crash before any results were
+            // recorded, or it's corrupt, so there's no job to resume.
+            return null;
+        } catch (IOException e) {
+            // Treat an unreadable checkpoint as no job at all.
+            Log.w(TAG, "unable to read " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns all the candidates checked by the job.
+     */
+    public RandomCandidates getCandidates() {
+        return mCandidates;
+    }
+
+    /**
+     * Returns the number of results that were in the checkpoint when
+     * it was opened, which is 0 for a new job.
+     */
+    public int getCursor() {
+        return Math.max(mCursor, 0);
+    }
+
+    /**
+     * Returns the candidates that haven't been checked yet.
+     */
+    public RandomCandidates getRemaining() {
+        return mCandidates.skip(getCursor());
+    }
+
+    /**
+     * Record that @a candidate has @a smallestFactor, which is 0 if
+     * it's prime.  Results must be recorded in the order of the
+     * candidates, and they're written to the file by the next flush.
+     */
+    public void record(long candidate,
+                       long smallestFactor) {
+        if (mClosed)
+            return;
+
+        synchronized (this) {
+            if (mPendingCount == mPending.length)
+                mPending = Arrays.copyOf(mPending, 2 * mPendingCount);
+            mPending[mPendingCount++] = candidate;
+            mPending[mPendingCount++] = smallestFactor;
+        }
+    }
+
+    /**
+     * Record that the next candidate's result is unknown, e.g.,
+     * because its check ran out of time.  There's no smallest factor
+     * to record for it, and recording 0 would mean it's prime, so no
+     * more results are recorded.  The ones recorded so far are still
+     * flushed, and a resumed job checks this candidate again.
+     */
+    public void recordUnknown() {
+        mClosed = true;
+    }
+
+    /**
+     * Flush the recorded results and stop checkpointing, but keep the
+     * file so the job can be resumed later.  The flush happens in the
+     * background, so this method doesn't block.
+     */
+    public void close() {
+        stop(false);
+    }
+
+    /**
+     * Stop checkpointing and delete the file, since the job has
+     * finished or been abandoned.  The file is deleted in the
+     * background, so this method doesn't block.
+     */
+    public void discard() {
+        stop(true);
+    }
+
+    /**
+     * Stop recording results, and then either flush them or @a
+     * delete the file after any flush that's in progress.
+     */
+    private void stop(boolean delete) {
+        mClosed = true;
+
+        // Only the first call stops the checkpoint.
+        if (!mStopped.compareAndSet(false, true))
+            return;
+
+        // Cancel the periodic flushes without interrupting one that's
+        // in progress, which the task below runs after.
+        mPeriodicFlush.cancel(false);
+
+        sFlusher.execute(() -> {
+                if (!delete)
+                    flush();
+
+                try {
+                    if (mChannel != null)
+                        mChannel.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "unable to close " + mFile, e);
+                }
+
+                if (delete && !mFile.delete() && mFile.exists())
+                    Log.w(TAG, "unable to delete " + mFile);
+            });
+    }
+
+    /**
+     * Append the results recorded since the last flush to the file
+     * and sync it.  This method is only called by the flusher
+     * thread.
+     */
+    private void flush() {
+        if (mFailed)
+            return;
+
+        long[] records;
+        int count;
+        synchronized (this) {
+            if (mPendingCount == 0 && mChannel != null)
+                return;
+
+            // Swap in an empty buffer so recording results doesn't
+            // wait for the disk.
+            records = mPending;
+            count = mPendingCount;
+            mPending = new long[records.length];
+            mPendingCount = 0;
+        }
+
+        try {
+            if (mChannel == null)
+                mChannel = open();
+
+            ByteBuffer buffer = ByteBuffer.allocate(count * Long.BYTES);
+            buffer.asLongBuffer().put(records, 0, count);
+            while (buffer.hasRemaining())
+                mChannel.write(buffer);
+
+            // One sync covers every record in the batch.
+            mChannel.force(false);
+        } catch (IOException e) {
+            // Stop checkpointing, since the file no longer matches
+            // the results, but let the job keep running.
+            Log.w(TAG, "unable to write " + mFile, e);
+            mFailed = true;
+            mClosed = true;
+            mPeriodicFlush.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the checkpoint file opened for appending records,
+     * writing the header first if the job is new.
+     */
+    private FileChannel open() throws IOException {
+        FileChannel channel = new RandomAccessFile(mFile, "rw").getChannel();
+
+        if (mCursor >= 0)
+            // Drop any torn record at the end of the file.
+            channel.truncate(sHEADER_BYTES + (long) mCursor * sRECORD_BYTES);
+        else {
+            channel.truncate(0);
+
+            ByteBuffer header = ByteBuffer.allocate(sHEADER_BYTES);
+            header.putLong(sMAGIC)
+                .putLong(mCandidates.getSeed())
+                .putLong(mCandidates.getOffset())
+                .putLong(mCandidates.size())
+                .putLong(mCandidates.getOrigin())
+                .putLong(mCandidates.getBound())
+                .flip();
+            while (header.hasRemaining())
+                channel.write(header);
+        }
+
+        channel.position(channel.size());
+        return channel;
+    }
+}
@@ -0,0 +1,312 @@
+package vandy.mooc.prime.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * This class decorates a function from a non-negative long key to a
+ * long value with a persistent snapshot of results computed by
+ * earlier runs.  The snapshot is an open-addressing hash table of
+ * (key, value) pairs stored in a file that's memory-mapped the first
+ * time a lookup needs it, so opening it costs nothing up front and
+ * each lookup only touches the pages it probes.  Keys that aren't in
+ * the snapshot are computed by the function and recorded, and
+ * save() merges them into a new snapshot file.
+ */
+public class MappedSnapshot
+       implements LongUnaryOperator {
+    /**
+     * Identifies a snapshot file, and also its format version.
+     */
+    private static final long sMAGIC = 0x5052494D45530001L;
+
+    /**
+     * Number of longs in the file header (magic and capacity).
+     */
+    private static final int sHEADER_LONGS = 2;
+
+    /**
+     * Key marking an empty slot in the table.
+     */
+    private static final long sEMPTY = -1;
+
+    /**
+     * This function produces a value based on the key.
+     */
+    private final LongUnaryOperator mFunction;
+
+    /**
+     * The snapshot file, or null if results aren't persisted.
+     */
+    private volatile File mFile;
+
+    /**
+     * The mapped table of the snapshot file, or null if it hasn't
+     * been mapped yet (or doesn't exist).
+     */
+    private volatile LongBuffer mEntries;
+
+    /**
+     * Keeps track of whether mFile has been mapped yet.
+     */
+    private volatile boolean mMapped;
+
+    /**
+     * Ensures only one thread at a time saves the snapshot.
+     */
+    private final Object mSaveLock = new Object();
+
+    /**
+     * Keys computed since the snapshot was last saved, which are
+     * guarded by "this".
+     */
+    private long[] mPendingKeys = new long[64];
+
+    /**
+     * Values of the keys in mPendingKeys, which are guarded by
+     * "this".
+     */
+    private long[] mPendingValues = new long[64];
+
+    /**
+     * Number of entries in mPendingKeys, which is guarded by "this".
+     */
+    private int mPendingCount;
+
+    /**
+     * Constructor initializes the function field.
+     */
+    public MappedSnapshot(LongUnaryOperator function) {
+        mFunction = function;
+    }
+
+    /**
+     * Use @a file to persist results.  The file isn't read until the
+     * first lookup needs it.
+     */
+    public synchronized void setFile(File file) {
+        mFile = file;
+        mEntries = null;
+        mMapped = false;
+    }
+
+    /**
+     * Returns the value for @a key from the snapshot if it's there,
+     * or else computes it by calling the function and records it to
+     * be saved, unless the calling thread was interrupted.
+     */
+    @Override
+    public long applyAsLong(long key) {
+        return applyAsLong(key, mFunction);
+    }
+
+    /**
+     * Returns the value for @a key from the snapshot if it's there,
+     * or else computes it by calling @a function, which must agree
+     * with the snapshot's function, and records it to be saved unless
+     * the calling thread was interrupted.  This lets a caller that
+     * computes many keys at once share the snapshot.
+     */
+    public long applyAsLong(long key, LongUnaryOperator function) {
+        LongBuffer entries = entries();
+        if (entries != null && key >= 0) {
+            // Probe each slot at most once, so a corrupt table with no
+            // empty slot can't loop forever.
+            int mask = (entries.limit() - sHEADER_LONGS) / 2 - 1;
+            for (int probes = 0, slot = hash(key) & mask;
+                 probes <= mask;
+                 ++probes, slot = (slot + 1) & mask) {
+                long k = entries.get(sHEADER_LONGS + 2 * slot);
+                if (k == key)
+                    return entries.get(sHEADER_LONGS + 2 * slot + 1);
+                else if (k == sEMPTY)
+                    break;
+            }
+        }
+
+        long value = function.applyAsLong(key);
+
+        // A function interrupted part way through may return a wrong
+        // value (e.g., the brute-force checker reports a candidate is
+        // prime), so only values computed without interruption are
+        // persisted.
+        if (key >= 0 && !Thread.currentThread().isInterrupted())
+            record(key, value);
+        return value;
+    }
+
+    /**
+     * Merge the results computed since the last save into a new
+     * snapshot file, which atomically replaces the old one.  This
+     * method does blocking I/O, so don't call it on the UI thread.
+     */
+    public void save() throws IOException {
+        synchronized (mSaveLock) {
+            saveLocked();
+        }
+    }
+
+    /**
+     * Does the work of save() while holding mSaveLock.
+     */
+    private void saveLocked() throws IOException {
+        File file = mFile;
+        if (file == null)
+            return;
+
+        long[] keys;
+        long[] values;
+        int count;
+        synchronized (this) {
+            keys = Arrays.copyOf(mPendingKeys, mPendingCount);
+            values = Arrays.copyOf(mPendingValues, mPendingCount);
+            count = mPendingCount;
+        }
+
+        if (count == 0)
+            return;
+
+        // Count the saved entries, which may fill only part of the
+        // old table.
+        LongBuffer old = entries();
+        int oldCapacity = old == null
+            ? 0
+            : (old.limit() - sHEADER_LONGS) / 2;
+        int oldCount = 0;
+        for (int i = 0; i < oldCapacity; ++i)
+            if (old.get(sHEADER_LONGS + 2 * i) != sEMPTY)
+                ++oldCount;
+
+        // Size the new table so it's at most half full.
+        int capacity =
+            Integer.highestOneBit(Math.max(8, 2 * (oldCount + count)) - 1) << 1;
+
+        long[] table = new long[2 * capacity];
+        Arrays.fill(table, sEMPTY);
+        for (int i = 0; i < oldCapacity; ++i) {
+            long key = old.get(sHEADER_LONGS + 2 * i);
+            if (key != sEMPTY)
+                insert(table, key, old.get(sHEADER_LONGS + 2 * i + 1));
+        }
+        for (int i = 0; i < count; ++i)
+            insert(table, keys[i], values[i]);
+
+        // Write to a temporary file and then rename it, so a crash
+        // never leaves a partially written snapshot behind.
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(stream));
+            output.writeLong(sMAGIC);
+            output.writeLong(capacity);
+            for (long entry : table)
+                output.writeLong(entry);
+            output.flush();
+            stream.getFD().sync();
+        }
+
+        synchronized (this) {
+            if (file != mFile || !temporary.renameTo(file))
+                throw new IOException("unable to replace " + file);
+
+            mEntries = map(file);
+            mMapped = true;
+
+            // Drop the pending entries that were just saved.
+            mPendingCount -= count;
+            System.arraycopy(mPendingKeys, count, mPendingKeys, 0, mPendingCount);
+            System.arraycopy(mPendingValues, count, mPendingValues, 0, mPendingCount);
+        }
+    }
+
+    /**
+     * Returns the mapped table, mapping the snapshot file the first
+     * time it's called.
+     */
+    private LongBuffer entries() {
+        if (!mMapped)
+            synchronized (this) {
+                if (!mMapped) {
+                    File file = mFile;
+                    try {
+                        mEntries = file != null && file.exists()
+                            ? map(file)
+                            : null;
+                    } catch (IOException e) {
+                        // Treat an unreadable snapshot as empty, so
+                        // the results are just recomputed.
+                        mEntries = null;
+                    }
+                    mMapped = true;
+                }
+            }
+
+        return mEntries;
+    }
+
+    /**
+     * Returns a read-only mapping of the table in snapshot @a file.
+     */
+    private static LongBuffer map(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            LongBuffer entries = channel
+                .map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .asLongBuffer();
+
+            if (entries.limit() < sHEADER_LONGS
+                || entries.get(0) != sMAGIC
+                || Long.bitCount(entries.get(1)) != 1
+                || entries.limit() != sHEADER_LONGS + 2 * entries.get(1))
+                throw new IOException(file + " isn't a valid snapshot");
+            return entries;
+        }
+    }
+
+    /**
+     * Record that @a key maps to @a value so it's written by the next
+     * save().
+     */
+    private synchronized void record(long key, long value) {
+        if (mPendingCount == mPendingKeys.length) {
+            mPendingKeys = Arrays.copyOf(mPendingKeys, 2 * mPendingCount);
+            mPendingValues = Arrays.copyOf(mPendingValues, 2 * mPendingCount);
+        }
+        mPendingKeys[mPendingCount] = key;
+        mPendingValues[mPendingCount++] = value;
+    }
+
+    /**
+     * Insert @a key and @a value into the open-addressing @a table
+     * unless @a key is already there.
+     */
+    private static void insert(long[] table, long key, long value) {
+        int mask = table.length / 2 - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (table[2 * slot] == key)
+                return;
+            else if (table[2 * slot] == sEMPTY) {
+                table[2 * slot] = key;
+                table[2 * slot + 1] = value;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a well-mixed hash of @a key using the 64-bit golden
+     * ratio multiplier.
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
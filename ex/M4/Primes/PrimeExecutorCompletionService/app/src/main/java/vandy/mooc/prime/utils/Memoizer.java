@@ -1,29 +1,40 @@
 package vandy.mooc.prime.utils;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 import static vandy.mooc.prime.utils.LaunderThrowable.launderThrowable;
 
 /**
  * This class defines a "memoizing" cache that maps a key to the value
- * produced by a function.  FutureTask is used to ensure only a single
- * call to the function is run when a key and value is first added to
- * the cache.  This code is based on an example in "Java Concurrency
- * in Practice" by Brian Goetz et al.  More information on memoization 
- * is available at https://en.wikipedia.org/wiki/Memoization.
+ * produced by a function.  CompletableFuture is used to ensure only a
+ * single call to the function is run when a key and value is first
+ * added to the cache, either on the calling thread via get() or on an
+ * Executor via getAsync().  This code is based on an example in "Java
+ * Concurrency in Practice" by Brian Goetz et al.  More information on
+ * memoization is available at https://en.wikipedia.org/wiki/Memoization.
  */
 public class Memoizer<K, V> {
     /**
      * This map associates a key K with a value V that's produced by a
-     * function.  A Future is used to ensure that the function is only
-     * called once.
+     * function.  A CompletableFuture is used to ensure that the
+     * function is only called once, and lets asynchronous callers
+     * chain on a value that's still being computed.
      */
-    private final ConcurrentMap<K, Future<V>> cache =
+    private final ConcurrentMap<K, CompletableFuture<V>> cache =
             new ConcurrentHashMap<>();
 
     /**
@@ -31,6 +42,39 @@ public class Memoizer<K, V> {
      */
     private final Function<K, V> mFunction;
 
+    /**
+     * Number of requests for keys that were already in the cache.
+     * LongAdders are striped, so threads counting concurrently
+     * don't contend for a single variable.
+     */
+    private final LongAdder mHits = new LongAdder();
+
+    /**
+     * Number of requests that added a key to the cache.
+     */
+    private final LongAdder mMisses = new LongAdder();
+
+    /**
+     * Number of values that were computed.
+     */
+    private final LongAdder mLoads = new LongAdder();
+
+    /**
+     * Total time spent computing values, in nanoseconds.
+     */
+    private final LongAdder mLoadNanos = new LongAdder();
+
+    /**
+     * Number of hits whose values were still being computed.
+     */
+    private final LongAdder mInFlightWaits = new LongAdder();
+
+    /**
+     * Number of computations that were cancelled and removed from
+     * the cache.
+     */
+    private final LongAdder mCancellations = new LongAdder();
+
     /**
      * Constructor initializes the function field.
      */
@@ -45,53 +89,354 @@ public class Memoizer<K, V> {
      * it.
      */
     public V get(final K key) {
-        // Keep looping as long as we keep getting interrupted.
+        // Keep looping as long as other callers keep cancelling the
+        // computation.
         while (true) {
             // Try to find the key in the cache.
-            Future<V> future = cache.get(key);
+            CompletableFuture<V> future = cache.get(key);
 
             // If the key isn't present then we'll need to compute its
             // value.
             if (future == null) {
-                // Create a FutureTask whose run() method will compute
-                // the value and store it in the cache.
-                FutureTask<V> futureTask =
-                        new FutureTask<>(() -> mFunction.apply(key));
+                // Create a CompletableFuture that will hold the value
+                // once it's computed.
+                CompletableFuture<V> newFuture = new CompletableFuture<>();
 
-                // Atomically add futureTask to the cache as the value
+                // Atomically add newFuture to the cache as the value
                 // associated with key.
-                future = cache.putIfAbsent(key, futureTask);
+                future = cache.putIfAbsent(key, newFuture);
 
                 // A value of null from put() indicates the key was
                 // just added (i.e., it's the "first time in"), which
                 // also indicates the value hasn't been computed yet.
                 if (future == null) {
-                    // A FutureTask "isa" Future, so this assignment
-                    // is fine.
-                    future = futureTask;
+                    future = newFuture;
 
-                    // Run futureTask to compute the value, which is
+                    miss(key, newFuture);
+
+                    // Compute the value in this thread, which is
                     // implicitly stored in the cache when the
                     // computation is finished.
-                    futureTask.run();
-                }
-            } else {
-                System.out.println("value " 
-                                   + key 
-                                   + " was cached");
-            }
+                    compute(key, newFuture);
+                } else
+                    // Another thread just added the key.
+                    hit(key, future);
+            } else
+                hit(key, future);
 
             try {
                 // Return the result of the future, which will block
-                // if the futureTask hasn't finished running yet.
+                // if the value hasn't finished being computed yet.
                 return future.get();
             } catch (CancellationException e) {
                 // Remove key from the cache and retry the while loop
                 // from the beginning.
-                cache.remove(key, future);
+                cancelled(key, future);
+            } catch (InterruptedException e) {
+                // Give up waiting, but leave the computation running
+                // for the other callers.
+                Thread.currentThread().interrupt();
+                throw new CancellationException
+                    ("interrupted while waiting for " + key);
+            } catch (Exception e) {
+                throw launderThrowable(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Returns a CompletableFuture that's completed with the value
+     * associated with the key in cache.  If there is no value
+     * associated with the key then the function is run on @a executor
+     * to create the value and store it in the cache.  Unlike get(),
+     * no thread ever blocks waiting for a value that's still being
+     * computed, since callers chain on the future instead.
+     */
+    public CompletableFuture<V> getAsync(final K key,
+                                         Executor executor) {
+        // Try to find the key in the cache.
+        CompletableFuture<V> future = cache.get(key);
+
+        // If the key isn't present then we'll need to compute its
+        // value.
+        if (future == null) {
+            CompletableFuture<V> newFuture = new CompletableFuture<>();
+
+            // Atomically add newFuture to the cache as the value
+            // associated with key.
+            future = cache.putIfAbsent(key, newFuture);
+
+            if (future == null) {
+                future = newFuture;
+
+                miss(key, newFuture);
+
+                try {
+                    // Compute the value on the executor.
+                    executor.execute(() -> compute(key, newFuture));
+                } catch (RejectedExecutionException e) {
+                    // Don't cache a value that will never be
+                    // computed.
+                    cache.remove(key, newFuture);
+                    newFuture.completeExceptionally(e);
+                }
+            } else
+                // Another thread just added the key.
+                hit(key, future);
+        } else
+            hit(key, future);
+
+        // A value that's already been computed needs no retry, so
+        // skip the chain of futures below.
+        if (future.isDone() && !future.isCompletedExceptionally())
+            return CompletableFuture.completedFuture(future.join());
+
+        // If another caller cancelled the computation then remove key
+        // from the cache and try again, which is the asynchronous
+        // equivalent of the retry loop in get().  A
+        // CancellationException thrown by the function doesn't
+        // cancel the future, so it's passed on to the caller.
+        final CompletableFuture<V> cached = future;
+        return cached
+            .handle((value, throwable) -> {
+                    if (!cached.isCancelled())
+                        return cached;
+
+                    cancelled(key, cached);
+                    return getAsync(key, executor);
+                })
+            .thenCompose(Function.identity());
+    }
+
+    /**
+     * Returns a map from each of the @a keys to its value, computing
+     * the values of the keys that aren't in the cache yet on the
+     * calling thread.
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        return getAll(keys, null);
+    }
+
+    /**
+     * Returns a map from each of the @a keys to its value.  Duplicate
+     * keys are only looked up once, and all the keys that aren't in
+     * the cache yet are added in a single pass before any of them are
+     * computed, so other threads asking for those keys wait for this
+     * batch rather than computing them again.  If @a batchFunction
+     * isn't null the missing values are computed together by calling
+     * it once with the set of missing keys, which lets algorithms
+     * such as a sieve amortize their work over the batch.  Any key
+     * missing from the map it returns is computed by the function
+     * passed to the constructor.
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys,
+                            Function<Set<K>, Map<K, V>> batchFunction) {
+        // Futures for every distinct key, in the order of the keys.
+        Map<K, CompletableFuture<V>> futures =
+            new LinkedHashMap<>(keys.size() * 4 / 3 + 1);
+
+        // Futures this thread added to the cache, which it must
+        // complete.
+        Map<K, CompletableFuture<V>> misses = new LinkedHashMap<>();
+
+        for (K key : keys) {
+            if (futures.containsKey(key))
+                continue;
+
+            CompletableFuture<V> future = cache.get(key);
+
+            if (future == null) {
+                CompletableFuture<V> newFuture = new CompletableFuture<>();
+                future = cache.putIfAbsent(key, newFuture);
+
+                if (future == null) {
+                    future = newFuture;
+                    misses.put(key, newFuture);
+
+                    miss(key, newFuture);
+                } else
+                    hit(key, future);
+            } else
+                hit(key, future);
+
+            futures.put(key, future);
+        }
+
+        if (!misses.isEmpty())
+            computeAll(misses, batchFunction);
+
+        Map<K, V> values = new LinkedHashMap<>(futures.size() * 4 / 3 + 1);
+        for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+            K key = entry.getKey();
+            CompletableFuture<V> future = entry.getValue();
+
+            try {
+                values.put(key, future.get());
+            } catch (CancellationException e) {
+                // Remove key from the cache and fall back to get(),
+                // which retries until the value is computed.
+                cancelled(key, future);
+                values.put(key, get(key));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException
+                    ("interrupted while waiting for " + key);
             } catch (Exception e) {
                 throw launderThrowable(e.getCause());
             }
         }
+        return values;
+    }
+
+    /**
+     * Complete the futures in @a misses, either with one call to @a
+     * batchFunction or, if it's null, by applying the function to
+     * each key in turn.
+     */
+    private void computeAll(Map<K, CompletableFuture<V>> misses,
+                            Function<Set<K>, Map<K, V>> batchFunction) {
+        if (batchFunction != null) {
+            Map<K, V> batch;
+            long start = System.nanoTime();
+            try {
+                batch = batchFunction
+                    .apply(Collections.unmodifiableSet(misses.keySet()));
+                mLoads.add(batch.size());
+            } catch (Throwable t) {
+                mLoads.add(misses.size());
+                // Don't leave any waiting thread blocked forever.
+                for (Map.Entry<K, CompletableFuture<V>> entry : misses.entrySet())
+                    failed(entry.getKey(), entry.getValue(), t);
+                return;
+            } finally {
+                mLoadNanos.add(System.nanoTime() - start);
+            }
+
+            for (Map.Entry<K, CompletableFuture<V>> entry : misses.entrySet())
+                if (batch.containsKey(entry.getKey()))
+                    entry.getValue().complete(batch.get(entry.getKey()));
+                else
+                    compute(entry.getKey(), entry.getValue());
+        } else
+            for (Map.Entry<K, CompletableFuture<V>> entry : misses.entrySet())
+                compute(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Apply the function to @a key and complete @a future with its
+     * value or with the exception it threw.
+     */
+    private void compute(K key,
+                         CompletableFuture<V> future) {
+        long start = System.nanoTime();
+        try {
+            future.complete(mFunction.apply(key));
+        } catch (Throwable t) {
+            failed(key, future, t);
+        } finally {
+            mLoads.increment();
+            mLoadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Complete @a future with the @a throwable that computing @a key
+     * threw, and remove it from the cache so the next request
+     * computes the value again.  The throwable is wrapped so that
+     * even a CancellationException (e.g., thrown by a function that
+     * was interrupted) doesn't mark the future as cancelled, which
+     * would make waiting callers retry rather than see it.
+     */
+    private void failed(K key,
+                        CompletableFuture<V> future,
+                        Throwable throwable) {
+        cache.remove(key, future);
+        future.completeExceptionally(new CompletionException(throwable));
+    }
+
+    /**
+     * Count a request that added @a key to the cache with @a future
+     * and let subclasses know it was added.
+     */
+    private void miss(K key,
+                      CompletableFuture<V> future) {
+        mMisses.increment();
+        onInsert(key, future);
+    }
+
+    /**
+     * Count a request that found @a key in the cache with @a future,
+     * noting whether its value is still being computed, and let
+     * subclasses know it was accessed.
+     */
+    private void hit(K key,
+                     CompletableFuture<V> future) {
+        mHits.increment();
+        if (!future.isDone())
+            mInFlightWaits.increment();
+        onAccess(key);
+    }
+
+    /**
+     * Count a cancelled computation of @a key and remove its @a
+     * future from the cache.
+     */
+    private void cancelled(K key,
+                           CompletableFuture<V> future) {
+        mCancellations.increment();
+        cache.remove(key, future);
+    }
+
+    /**
+     * Returns a snapshot of how the cache has been used.  Counts
+     * updated concurrently may or may not be included.
+     */
+    public MemoizerStats getStats() {
+        return new MemoizerStats(mHits.sum(),
+                                 mMisses.sum(),
+                                 mLoads.sum(),
+                                 mLoadNanos.sum(),
+                                 mInFlightWaits.sum(),
+                                 mCancellations.sum());
+    }
+
+    /**
+     * Reset the statistics returned by getStats() to 0.  Counts
+     * updated concurrently may or may not be reset.
+     */
+    public void resetStats() {
+        mHits.reset();
+        mMisses.reset();
+        mLoads.reset();
+        mLoadNanos.reset();
+        mInFlightWaits.reset();
+        mCancellations.reset();
+    }
+
+    /**
+     * Hook method called after @a key is added to the cache with the
+     * @a future that holds its value.  By default it does nothing.
+     */
+    protected void onInsert(K key,
+                            Future<V> future) {
+    }
+
+    /**
+     * Hook method called when @a key is found in the cache.  By
+     * default it does nothing.
+     */
+    protected void onAccess(K key) {
+    }
+
+    /**
+     * Remove @a key from the cache if it's still mapped to @a future,
+     * so its value will be computed again the next time it's
+     * requested.  Threads already waiting on @a future still get its
+     * value, and a future added for @a key since then isn't removed.
+     * Returns true if @a future was removed.
+     */
+    protected boolean remove(K key,
+                             Future<V> future) {
+        return cache.remove(key, future);
     }
 }
@@ -0,0 +1,143 @@
+package vandy.mooc.prime.utils;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of how a Memoizer's cache has been used,
+ * which shows whether caching is paying for itself.  Hits count every
+ * request for a key that was already in the cache, including the
+ * in-flight waits for keys whose values were still being computed.
+ * Misses count the requests that added a key, each of which is
+ * followed by a load that computes its value.
+ */
+public class MemoizerStats {
+    /**
+     * Number of requests for keys that were already in the cache.
+     */
+    private final long mHits;
+
+    /**
+     * Number of requests that added a key to the cache.
+     */
+    private final long mMisses;
+
+    /**
+     * Number of values that were computed.
+     */
+    private final long mLoads;
+
+    /**
+     * Total time spent computing values, in nanoseconds.
+     */
+    private final long mTotalLoadNanos;
+
+    /**
+     * Number of hits whose values were still being computed.
+     */
+    private final long mInFlightWaits;
+
+    /**
+     * Number of computations that were cancelled and removed from
+     * the cache.
+     */
+    private final long mCancellations;
+
+    /**
+     * Constructor initializes the fields.
+     */
+    public MemoizerStats(long hits,
+                         long misses,
+                         long loads,
+                         long totalLoadNanos,
+                         long inFlightWaits,
+                         long cancellations) {
+        mHits = hits;
+        mMisses = misses;
+        mLoads = loads;
+        mTotalLoadNanos = totalLoadNanos;
+        mInFlightWaits = inFlightWaits;
+        mCancellations = cancellations;
+    }
+
+    /**
+     * Returns the number of requests for keys that were already in
+     * the cache.
+     */
+    public long getHits() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of requests that added a key to the cache.
+     */
+    public long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * Returns the fraction of requests that were hits, or 0 if there
+     * were no requests.
+     */
+    public double getHitRate() {
+        long requests = mHits + mMisses;
+        return requests == 0 ? 0 : (double) mHits / requests;
+    }
+
+    /**
+     * Returns the number of values that were computed.
+     */
+    public long getLoads() {
+        return mLoads;
+    }
+
+    /**
+     * Returns the total time spent computing values, in nanoseconds.
+     */
+    public long getTotalLoadNanos() {
+        return mTotalLoadNanos;
+    }
+
+    /**
+     * Returns the mean time taken to compute a value, in nanoseconds,
+     * or 0 if no values were computed.
+     */
+    public double getMeanLoadNanos() {
+        return mLoads == 0 ? 0 : (double) mTotalLoadNanos / mLoads;
+    }
+
+    /**
+     * Returns the number of hits whose values were still being
+     * computed.
+     */
+    public long getInFlightWaits() {
+        return mInFlightWaits;
+    }
+
+    /**
+     * Returns the number of computations that were cancelled and
+     * removed from the cache.
+     */
+    public long getCancellations() {
+        return mCancellations;
+    }
+
+    /**
+     * Returns a summary of the statistics.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                             "cache: hits=%d (%.1f%%) misses=%d"
+                             + " in-flight waits=%d cancellations=%d"
+                             + " loads=%d mean load=%.3f ms",
+                             mHits,
+                             100 * getHitRate(),
+                             mMisses,
+                             mInFlightWaits,
+                             mCancellations,
+                             mLoads,
+                             getMeanLoadNanos()
+                             / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,124 @@
+package vandy.mooc.prime.utils;
+
+/**
+ * Modular arithmetic in Montgomery form for a fixed odd modulus less
+ * than 2^63.  Each multiplication reduces the full 128-bit product
+ * without any division, so it can't overflow for any long modulus.
+ * More information on Montgomery multiplication is available at
+ * https://en.wikipedia.org/wiki/Montgomery_modular_multiplication.
+ */
+class Montgomery {
+    /**
+     * Mask for the low 32 bits of a long.
+     */
+    private static final long sLOW_MASK = 0xFFFFFFFFL;
+
+    /**
+     * The odd modulus n.
+     */
+    final long mModulus;
+
+    /**
+     * -n^-1 mod 2^64, which is used to reduce each product.
+     */
+    private final long mNegInverse;
+
+    /**
+     * The number 1 in Montgomery form, i.e., 2^64 mod n.
+     */
+    final long mOne;
+
+    /**
+     * The number n - 1 in Montgomery form.
+     */
+    final long mMinusOne;
+
+    /**
+     * 2^128 mod n, which converts a number into Montgomery form.
+     */
+    private final long mRSquared;
+
+    /**
+     * Constructor precomputes the constants for odd @a modulus.
+     */
+    Montgomery(long modulus) {
+        mModulus = modulus;
+
+        // Newton's iteration doubles the number of correct low bits
+        // of the inverse each step, starting from 3 bits.
+        long inverse = modulus;
+        for (int i = 0; i < 5; ++i)
+            inverse *= 2 - modulus * inverse;
+        mNegInverse = -inverse;
+
+        mOne = Long.remainderUnsigned(-1L, modulus) + 1;
+        mMinusOne = modulus - mOne;
+
+        long rSquared = mOne;
+        for (int i = 0; i < 64; ++i)
+            rSquared = add(rSquared, rSquared);
+        mRSquared = rSquared;
+    }
+
+    /**
+     * Returns @a a, which must be less than the modulus, in
+     * Montgomery form.
+     */
+    long toMontgomery(long a) {
+        return multiply(a, mRSquared);
+    }
+
+    /**
+     * Returns (@a a + @a b) mod n for @a a, @a b < n, treating the
+     * sum as unsigned so it can't overflow.
+     */
+    long add(long a, long b) {
+        long sum = a + b;
+        return Long.compareUnsigned(sum, mModulus) >= 0
+            ? sum - mModulus
+            : sum;
+    }
+
+    /**
+     * Returns the Montgomery product @a a * @a b * 2^-64 mod n.
+     */
+    long multiply(long a, long b) {
+        long low = a * b;
+        long high = multiplyHighUnsigned(a, b);
+        long m = low * mNegInverse;
+
+        // low + m * n is a multiple of 2^64, so its low word only
+        // carries into the high word when low is non-zero.
+        long t = high + multiplyHighUnsigned(m, mModulus) + (low != 0 ? 1 : 0);
+        return Long.compareUnsigned(t, mModulus) >= 0 ? t - mModulus : t;
+    }
+
+    /**
+     * Returns @a base ^ @a exponent in Montgomery form, where @a base
+     * is already in Montgomery form.
+     */
+    long pow(long base, long exponent) {
+        long result = mOne;
+        for (; exponent != 0; exponent >>>= 1) {
+            if ((exponent & 1) != 0)
+                result = multiply(result, base);
+            base = multiply(base, base);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the high 64 bits of the unsigned 128-bit product of @a
+     * a and @a b.
+     */
+    static long multiplyHighUnsigned(long a, long b) {
+        long a0 = a & sLOW_MASK, a1 = a >>> 32;
+        long b0 = b & sLOW_MASK, b1 = b >>> 32;
+
+        long p01 = a0 * b1;
+        long p10 = a1 * b0;
+        long middle = ((a0 * b0) >>> 32) + (p01 & sLOW_MASK) + (p10 & sLOW_MASK);
+
+        return a1 * b1 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+    }
+}
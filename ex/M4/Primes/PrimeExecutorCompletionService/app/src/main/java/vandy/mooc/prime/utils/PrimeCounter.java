@@ -0,0 +1,473 @@
+package vandy.mooc.prime.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static vandy.mooc.prime.utils.LaunderThrowable.launderThrowable;
+
+/**
+ * This class counts the primes less than or equal to x without
+ * enumerating them, using the Lagarias-Miller-Odlyzko refinement of
+ * the Meissel-Lehmer method, which takes roughly x^(2/3) time rather
+ * than the x time of a sieve.  For y a little above the cube root of
+ * x and a the number of primes up to y,
+ *
+ *   pi(x) = phi(x, a) + a - 1 - P2(x, a),
+ *
+ * where phi(x, a) counts the numbers up to x that aren't divisible by
+ * any of the first a primes, and P2(x, a) counts the numbers up to x
+ * that are the product of two primes greater than y.  Expanding
+ * phi(x, a) leaves a sum over the "ordinary leaves" n <= y, which is
+ * computed directly, and a sum of phi(x / n, b) over the "special
+ * leaves" n > y, all of which are below x / y.  Both the special
+ * leaves and P2(x, a) are computed by sieving [1, x / y] in
+ * cache-sized segments by the primes up to y, one prime at a time,
+ * keeping the unsieved numbers of each segment in a binary indexed
+ * tree, so phi(v, b) for any v in the segment is the count of the
+ * segments before it plus a prefix sum of the tree.  The segments are
+ * divided into ranges that are sieved in parallel on the pool, each
+ * of which caches the count of its unsieved numbers after each prime,
+ * and the counts of the earlier ranges are added in when the ranges
+ * are combined in order.  More information is available at
+ * https://en.wikipedia.org/wiki/Prime-counting_function#Algorithms_for_evaluating_%CF%80(x).
+ */
+public class PrimeCounter {
+    /**
+     * Largest x the counter accepts, which bounds the table of primes
+     * up to the square root of x to those below 2^25.
+     */
+    public static final long sMAX_X = 1_000_000_000_000_000L;
+
+    /**
+     * Values of x below this are counted with a simple sieve, which
+     * is faster for them.
+     */
+    private static final long sSIEVE_LIMIT = 1 << 20;
+
+    /**
+     * Number of consecutive values covered by a segment, which keeps
+     * its binary indexed tree within a typical L2 cache.
+     */
+    private static final int sSEGMENT_SIZE = 1 << 16;
+
+    /**
+     * Number of ranges of segments per thread, which balances the
+     * load since the special leaves are denser in the lower ranges.
+     */
+    private static final int sRANGES_PER_THREAD = 8;
+
+    /**
+     * Binary indexed tree reused by each thread to count the unsieved
+     * numbers in a segment.
+     */
+    private static final ThreadLocal<int[]> sTree =
+        ThreadLocal.withInitial(() -> new int[sSEGMENT_SIZE + 1]);
+
+    /**
+     * Scratch array reused by each thread to mark the sieved numbers
+     * in a segment.
+     */
+    private static final ThreadLocal<boolean[]> sSieved =
+        ThreadLocal.withInitial(() -> new boolean[sSEGMENT_SIZE]);
+
+    /**
+     * Runs the ranges of segments.
+     */
+    private final ExecutorService mExecutorService;
+
+    /**
+     * Number of threads in the pool.
+     */
+    private final int mParallelism;
+
+    /**
+     * Constructor initializes the fields so the counts are computed
+     * on @a executorService, which has @a parallelism threads.  Since
+     * count() blocks until the ranges it submits have finished, it
+     * must not be called from one of the pool's own threads.
+     */
+    public PrimeCounter(ExecutorService executorService,
+                        int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException
+                ("parallelism of " + parallelism + " must be positive");
+
+        mExecutorService = executorService;
+        mParallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of primes less than or equal to @a x.
+     */
+    public long count(long x) {
+        if (x < 0 || x > sMAX_X)
+            throw new IllegalArgumentException
+                ("x of " + x + " is outside the counter's range");
+
+        if (x < sSIEVE_LIMIT)
+            return primesUpTo((int) x).length;
+
+        return new Count(x).compute();
+    }
+
+    /**
+     * The results of sieving a range of segments.
+     */
+    private static class RangeResult {
+        /**
+         * Contribution of the range's special leaves and P2 terms,
+         * not counting the unsieved numbers before the range.
+         */
+        long mSum;
+
+        /**
+         * Number of times each phi(v, b) the range looked up counts
+         * the unsieved numbers before the range, indexed by b, with
+         * the sign of its term.
+         */
+        final long[] mCoefficients;
+
+        /**
+         * Number of numbers in the range that are unsieved after the
+         * first b primes, indexed by b.
+         */
+        final long[] mCounts;
+
+        /**
+         * Constructor initializes the fields for @a a primes.
+         */
+        RangeResult(int a) {
+            mCoefficients = new long[a + 1];
+            mCounts = new long[a + 1];
+        }
+    }
+
+    /**
+     * The state of counting the primes up to one x.
+     */
+    private class Count {
+        /**
+         * The number whose primes are counted.
+         */
+        private final long mX;
+
+        /**
+         * Bound on the ordinary leaves, which is at least the cube
+         * root of x.
+         */
+        private final int mY;
+
+        /**
+         * Largest value that's sieved, which is x / y.
+         */
+        private final long mZ;
+
+        /**
+         * All the primes up to the square root of x.
+         */
+        private final int[] mPrimes;
+
+        /**
+         * Number of primes up to y.
+         */
+        private final int mA;
+
+        /**
+         * Smallest prime factor of each number up to y, with
+         * Integer.MAX_VALUE for 1.
+         */
+        private final int[] mLeastFactors;
+
+        /**
+         * Moebius function of each number up to y.
+         */
+        private final byte[] mMoebius;
+
+        /**
+         * Constructor computes the tables needed to count the primes
+         * up to @a x.
+         */
+        Count(long x) {
+            mX = x;
+
+            // The sieving takes about x / y steps and the special
+            // leaves about y^2 steps, so y is scaled up from the
+            // cube root of x to balance them.
+            long cubeRoot = root(x, 3);
+            long y = (long) (cubeRoot * Math.max(1.0, Math.log(x) / 4));
+            y = Math.min(y, root(x, 2));
+
+            // Only numbers up to y^2 are left unsieved once the
+            // primes up to y are crossed off, so y^3 must be at least
+            // x.
+            if (y <= cubeRoot && cubeRoot * cubeRoot * cubeRoot != x)
+                y = cubeRoot + 1;
+
+            mY = (int) y;
+            mZ = x / y;
+            mPrimes = primesUpTo((int) root(x, 2));
+
+            int index = Arrays.binarySearch(mPrimes, mY);
+            mA = index >= 0 ? index + 1 : -index - 1;
+
+            mLeastFactors = new int[mY + 1];
+            mMoebius = new byte[mY + 1];
+            mLeastFactors[1] = Integer.MAX_VALUE;
+            mMoebius[1] = 1;
+            for (int i = 0; i < mA; ++i)
+                for (int multiple = mPrimes[i];
+                     multiple <= mY;
+                     multiple += mPrimes[i])
+                    if (mLeastFactors[multiple] == 0)
+                        mLeastFactors[multiple] = mPrimes[i];
+            for (int n = 2; n <= mY; ++n) {
+                int quotient = n / mLeastFactors[n];
+                mMoebius[n] = quotient % mLeastFactors[n] == 0
+                    ? 0
+                    : (byte) -mMoebius[quotient];
+            }
+        }
+
+        /**
+         * Returns the number of primes up to x.
+         */
+        long compute() {
+            // The ordinary leaves.
+            long pi = mA - 1;
+            for (int n = 1; n <= mY; ++n)
+                pi += mMoebius[n] * (mX / n);
+
+            long segments = (mZ + sSEGMENT_SIZE - 1) / sSEGMENT_SIZE;
+            int ranges = (int) Math.min(segments,
+                                        (long) mParallelism * sRANGES_PER_THREAD);
+
+            List<Future<RangeResult>> futures = new ArrayList<>(ranges);
+            for (int range = 0; range < ranges; ++range) {
+                long from = segments * range / ranges;
+                long to = segments * (range + 1) / ranges;
+                futures.add(mExecutorService.submit(() -> sieveRange(from, to)));
+            }
+
+            try {
+                // Combine the ranges in order, adding the unsieved
+                // numbers before each range to the phi(v, b) values
+                // it looked up.
+                long[] before = new long[mA + 1];
+                for (Future<RangeResult> future : futures) {
+                    RangeResult result = future.get();
+                    pi += result.mSum;
+                    for (int b = 0; b <= mA; ++b) {
+                        pi += result.mCoefficients[b] * before[b];
+                        before[b] += result.mCounts[b];
+                    }
+                }
+                return pi;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException
+                    ("interrupted while counting the primes up to " + mX);
+            } catch (ExecutionException e) {
+                throw launderThrowable(e.getCause());
+            } finally {
+                for (Future<RangeResult> future : futures)
+                    future.cancel(true);
+            }
+        }
+
+        /**
+         * Returns the results of sieving the segments numbered from
+         * @a from up to @a to.
+         */
+        private RangeResult sieveRange(long from,
+                                       long to) {
+            RangeResult result = new RangeResult(mA);
+            for (long segment = from; segment < to; ++segment) {
+                if (Thread.currentThread().isInterrupted())
+                    throw new CancellationException
+                        ("interrupted while counting the primes up to " + mX);
+
+                long low = 1 + segment * sSEGMENT_SIZE;
+                sieveSegment(low, Math.min(low + sSEGMENT_SIZE - 1, mZ), result);
+            }
+            return result;
+        }
+
+        /**
+         * Sieve [@a low, @a high] by each prime up to y in turn,
+         * adding the special leaves and P2 terms whose values are in
+         * the segment to @a result.  The counts in @a result must
+         * cover the segments of the range before this one.
+         */
+        private void sieveSegment(long low,
+                                  long high,
+                                  RangeResult result) {
+            int size = (int) (high - low + 1);
+            int[] tree = sTree.get();
+            boolean[] sieved = sSieved.get();
+
+            // Nothing is sieved yet, so each node of the tree counts
+            // all the numbers it covers.
+            Arrays.fill(sieved, 0, size, false);
+            for (int i = 1; i <= size; ++i)
+                tree[i] = i & -i;
+            int unsieved = size;
+
+            for (int b = 1; b <= mA; ++b) {
+                int prime = mPrimes[b - 1];
+
+                // The special leaves m * prime with m <= y < m *
+                // prime, where m is squarefree and its factors are
+                // all greater than prime, each contribute -mu(m) *
+                // phi(x / (m * prime), b - 1).  Only those whose
+                // values are in the segment are added here.
+                long quotient = mX / prime;
+                long first = Math.max(mY / prime, quotient / (high + 1)) + 1;
+                long last = Math.min(mY, quotient / low);
+
+                if (first <= last) {
+                    if ((long) prime * prime <= mY) {
+                        for (int m = (int) last; m >= first; --m)
+                            if (mMoebius[m] != 0 && mLeastFactors[m] > prime) {
+                                int sign = -mMoebius[m];
+                                result.mSum += sign
+                                    * (result.mCounts[b - 1]
+                                       + prefixSum(tree, (int) (quotient / m - low + 1)));
+                                result.mCoefficients[b - 1] += sign;
+                            }
+                    } else {
+                        // m must be a single prime greater than
+                        // prime, so only the primes are visited.
+                        int start = Math.max(b, lowerBound(first));
+                        int end = Math.min(mA, lowerBound(last + 1));
+                        for (int i = start; i < end; ++i)
+                            result.mSum += result.mCounts[b - 1]
+                                + prefixSum(tree, (int) (quotient / mPrimes[i] - low + 1));
+                        result.mCoefficients[b - 1] += Math.max(0, end - start);
+                    }
+                }
+
+                result.mCounts[b - 1] += unsieved;
+
+                // Cross off every multiple of prime, including prime
+                // itself.
+                for (long offset = (low + prime - 1) / prime * prime - low;
+                     offset < size;
+                     offset += prime)
+                    if (!sieved[(int) offset]) {
+                        sieved[(int) offset] = true;
+                        remove(tree, size, (int) offset + 1);
+                        --unsieved;
+                    }
+            }
+
+            // Only 1 and the primes greater than y are left unsieved,
+            // so for each prime p_j in (y, sqrt(x)] with x / p_j in
+            // the segment, P2 includes pi(x / p_j) - j + 1, which is
+            // phi(x / p_j, a) + a - j.
+            int start = Math.max(mA, lowerBound(mX / (high + 1) + 1));
+            int end = lowerBound(mX / low + 1);
+            for (int i = start; i < end; ++i)
+                result.mSum -= result.mCounts[mA]
+                    + prefixSum(tree, (int) (mX / mPrimes[i] - low + 1))
+                    + mA - (i + 1);
+            result.mCoefficients[mA] -= Math.max(0, end - start);
+            result.mCounts[mA] += unsieved;
+        }
+
+        /**
+         * Returns the index of the first prime that's at least @a n,
+         * or the number of primes if there isn't one.
+         */
+        private int lowerBound(long n) {
+            if (n > Integer.MAX_VALUE)
+                return mPrimes.length;
+
+            int index = Arrays.binarySearch(mPrimes, (int) n);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+
+    /**
+     * Returns the number of unsieved numbers among the first @a count
+     * numbers of the segment whose binary indexed tree is @a tree.
+     */
+    private static int prefixSum(int[] tree,
+                                 int count) {
+        int sum = 0;
+        for (int i = count; i > 0; i -= i & -i)
+            sum += tree[i];
+        return sum;
+    }
+
+    /**
+     * Remove the @a position'th number of the segment of @a size
+     * numbers whose binary indexed tree is @a tree.
+     */
+    private static void remove(int[] tree,
+                               int size,
+                               int position) {
+        for (int i = position; i <= size; i += i & -i)
+            --tree[i];
+    }
+
+    /**
+     * Returns the largest number whose @a k'th power is at most @a n.
+     */
+    private static long root(long n,
+                             int k) {
+        long root = (long) Math.pow((double) n, 1.0 / k);
+
+        // Correct the rounding of the double root.
+        while (root > 0 && power(root, k) > n)
+            --root;
+        while (power(root + 1, k) <= n)
+            ++root;
+        return root;
+    }
+
+    /**
+     * Returns @a n to the power @a k, or Long.MAX_VALUE if it
+     * overflows.
+     */
+    private static long power(long n,
+                              int k) {
+        long power = 1;
+        for (int i = 0; i < k; ++i)
+            if (power > Long.MAX_VALUE / n)
+                return Long.MAX_VALUE;
+            else
+                power *= n;
+        return power;
+    }
+
+    /**
+     * Returns all the primes less than or equal to @a limit using a
+     * simple Sieve of Eratosthenes.
+     */
+    private static int[] primesUpTo(int limit) {
+        if (limit < 2)
+            return new int[0];
+
+        boolean[] composite = new boolean[limit + 1];
+        int count = 0;
+        for (int i = 2; i <= limit; ++i)
+            if (!composite[i]) {
+                ++count;
+                for (long multiple = (long) i * i;
+                     multiple <= limit;
+                     multiple += i)
+                    composite[(int) multiple] = true;
+            }
+
+        int[] primes = new int[count];
+        for (int i = 2, j = 0; i <= limit; ++i)
+            if (!composite[i])
+                primes[j++] = i;
+        return primes;
+    }
+}
@@ -0,0 +1,181 @@
+package vandy.mooc.prime.utils;
+
+import java.util.SplittableRandom;
+
+/**
+ * A reproducible sequence of random prime candidates that's generated
+ * lazily, so each task can generate its own range of candidates when
+ * it runs rather than having them all generated up front.  The
+ * sequence is divided into fixed-size blocks, and each block is
+ * generated by its own SplittableRandom, which is split from a
+ * generator seeded by the sequence's seed and the block's index.  Any
+ * range can thus be generated without generating the ranges before
+ * it, and the candidates depend only on the seed, not on how the
+ * sequence is divided among tasks or which threads run them.  A
+ * sequence can also skip its first candidates, which resumes a job
+ * that checked them earlier without regenerating them.
+ */
+public class RandomCandidates {
+    /**
+     * Number of candidates in each block.
+     */
+    private static final int sBLOCK_SIZE = 1024;
+
+    /**
+     * Odd constant used to spread the seeds of consecutive blocks,
+     * which is the same "golden gamma" SplittableRandom uses.
+     */
+    private static final long sGOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Seed that determines the sequence.
+     */
+    private final long mSeed;
+
+    /**
+     * Index of the sequence's first candidate among the candidates
+     * determined by mSeed.
+     */
+    private final int mOffset;
+
+    /**
+     * Number of candidates in the sequence.
+     */
+    private final int mCount;
+
+    /**
+     * Smallest candidate.
+     */
+    private final long mOrigin;
+
+    /**
+     * Bound that every candidate is less than.
+     */
+    private final long mBound;
+
+    /**
+     * Constructor initializes the fields for a sequence of @a count
+     * candidates in [@a origin, @a bound) determined by @a seed.
+     */
+    public RandomCandidates(long seed,
+                            int count,
+                            long origin,
+                            long bound) {
+        if (count < 0 || origin >= bound)
+            throw new IllegalArgumentException
+                (count + " candidates in [" + origin + ", " + bound + ")");
+
+        mSeed = seed;
+        mOffset = 0;
+        mCount = count;
+        mOrigin = origin;
+        mBound = bound;
+    }
+
+    /**
+     * Constructor initializes the fields for the @a count candidates
+     * of @a sequence starting at @a offset.
+     */
+    private RandomCandidates(RandomCandidates sequence,
+                             int offset,
+                             int count) {
+        mSeed = sequence.mSeed;
+        mOffset = offset;
+        mCount = count;
+        mOrigin = sequence.mOrigin;
+        mBound = sequence.mBound;
+    }
+
+    /**
+     * Returns the seed that determines the sequence.
+     */
+    public long getSeed() {
+        return mSeed;
+    }
+
+    /**
+     * Returns the number of candidates that were skipped before the
+     * sequence's first candidate.
+     */
+    public int getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * Returns the smallest candidate.
+     */
+    public long getOrigin() {
+        return mOrigin;
+    }
+
+    /**
+     * Returns the bound that every candidate is less than.
+     */
+    public long getBound() {
+        return mBound;
+    }
+
+    /**
+     * Returns the number of candidates in the sequence.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the candidates with indices from @a from (inclusive) to
+     * @a to (exclusive).
+     */
+    public long[] generate(int from, int to) {
+        if (from < 0 || to > mCount || from > to)
+            throw new IndexOutOfBoundsException
+                ("[" + from + ", " + to + ") of " + mCount + " candidates");
+
+        long[] candidates = new long[to - from];
+
+        // Index the candidates from the start of the sequence
+        // determined by the seed.
+        int start = mOffset + from;
+        int end = mOffset + to;
+        for (int i = start; i < end; ) {
+            int block = i / sBLOCK_SIZE;
+            SplittableRandom random = blockRandom(block);
+
+            // Skip the block's candidates before the range starts.
+            for (int skip = i - block * sBLOCK_SIZE; skip > 0; --skip)
+                random.nextLong(mOrigin, mBound);
+
+            for (int blockEnd = Math.min(end, (block + 1) * sBLOCK_SIZE);
+                 i < blockEnd;
+                 ++i)
+                candidates[i - start] = random.nextLong(mOrigin, mBound);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Returns all the candidates in the sequence.
+     */
+    public long[] toArray() {
+        return generate(0, mCount);
+    }
+
+    /**
+     * Returns the sequence without its first @a n candidates.
+     */
+    public RandomCandidates skip(int n) {
+        if (n < 0 || n > mCount)
+            throw new IndexOutOfBoundsException
+                ("skip " + n + " of " + mCount + " candidates");
+
+        return new RandomCandidates(this, mOffset + n, mCount - n);
+    }
+
+    /**
+     * Returns a new generator for the candidates in @a block.
+     */
+    private SplittableRandom blockRandom(int block) {
+        return new SplittableRandom(mSeed + block * sGOLDEN_GAMMA).split();
+    }
+}
@@ -0,0 +1,251 @@
+package vandy.mooc.prime.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static vandy.mooc.prime.utils.LaunderThrowable.launderThrowable;
+
+/**
+ * This class uses a segmented Sieve of Eratosthenes to determine the
+ * smallest factor of every number in a batch of prime candidates.
+ * The candidates are sorted and partitioned into cache-sized windows,
+ * each of which is sieved at most once by whichever thread first
+ * asks for one of its results, so the work is amortized across all
+ * the candidates in a window instead of being repeated for each one.
+ * More information on segmented sieves is available at
+ * https://en.wikipedia.org/wiki/Sieve_of_Eratosthenes#Segmented_sieve.
+ */
+public class SegmentedSieve
+       implements PrimeChecker {
+    /**
+     * Number of consecutive values covered by a window, which keeps
+     * the per-window array of smallest factors within a typical L2
+     * cache.
+     */
+    private static final int sWINDOW_SIZE = 1 << 15;
+
+    /**
+     * Largest candidate the sieve accepts, which bounds the table of
+     * sieving primes to those below 2^20.
+     */
+    public static final long sMAX_CANDIDATE = 1L << 40;
+
+    /**
+     * Number of sieving primes processed between checks for thread
+     * interruption.
+     */
+    private static final int sINTERRUPT_CHECK_INTERVAL = 256;
+
+    /**
+     * Scratch array reused by each thread to sieve a window.
+     */
+    private static final ThreadLocal<int[]> sScratch =
+        ThreadLocal.withInitial(() -> new int[sWINDOW_SIZE]);
+
+    /**
+     * The distinct candidates in ascending order.
+     */
+    private final long[] mCandidates;
+
+    /**
+     * The smallest factor of each candidate in mCandidates, or 0 if
+     * the candidate is prime.  Each entry is written by the thread
+     * that sieves its window and is safely published by that
+     * window's FutureTask.
+     */
+    private final long[] mFactors;
+
+    /**
+     * Index in mCandidates of the first candidate in each window,
+     * followed by mCandidates.length as a sentinel.
+     */
+    private final int[] mWindowOffsets;
+
+    /**
+     * A FutureTask for each window that's being (or has been)
+     * sieved, which ensures each window is only sieved once.
+     */
+    private final AtomicReferenceArray<FutureTask<Void>> mWindows;
+
+    /**
+     * All the primes up to the square root of the largest candidate.
+     */
+    private final int[] mSievingPrimes;
+
+    /**
+     * Constructor sorts the @a candidates into windows and computes
+     * the primes needed to sieve them.  The windows themselves are
+     * sieved lazily by smallestFactor().
+     */
+    public SegmentedSieve(long[] candidates) {
+        long[] sorted = candidates.clone();
+        Arrays.sort(sorted);
+
+        // Remove duplicates, which share a single result.
+        int distinct = 0;
+        for (long candidate : sorted) {
+            if (candidate < 0 || candidate > sMAX_CANDIDATE)
+                throw new IllegalArgumentException
+                    ("candidate " + candidate + " is outside the sieve's range");
+            if (distinct == 0 || sorted[distinct - 1] != candidate)
+                sorted[distinct++] = candidate;
+        }
+
+        mCandidates = Arrays.copyOf(sorted, distinct);
+        mFactors = new long[distinct];
+
+        // Start a new window whenever a candidate lies beyond the
+        // end of the current one, so sparse candidates get small
+        // windows and dense candidates share large ones.
+        int[] offsets = new int[distinct + 1];
+        int windowCount = 0;
+        for (int i = 0; i < distinct; ++i)
+            if (windowCount == 0
+                || mCandidates[i] - mCandidates[offsets[windowCount - 1]]
+                   >= sWINDOW_SIZE)
+                offsets[windowCount++] = i;
+        offsets[windowCount] = distinct;
+
+        mWindowOffsets = Arrays.copyOf(offsets, windowCount + 1);
+        mWindows = new AtomicReferenceArray<>(windowCount);
+        mSievingPrimes = distinct == 0
+            ? new int[0]
+            : primesUpTo((int) Math.sqrt((double) mCandidates[distinct - 1]));
+    }
+
+    /**
+     * Returns 0 if @a n is prime or the smallest factor of @a n if
+     * it is not prime.  The number @a n must be one of the
+     * candidates passed to the constructor.
+     */
+    @Override
+    public long smallestFactor(long n) {
+        // Small numbers are treated as prime, just like the
+        // brute-force checkers.
+        if (n <= 3)
+            return 0;
+
+        int index = Arrays.binarySearch(mCandidates, n);
+        if (index < 0)
+            throw new IllegalArgumentException
+                (n + " is not a candidate of this sieve");
+
+        // Find the window containing the candidate.
+        int window = Arrays.binarySearch(mWindowOffsets, index);
+        if (window < 0)
+            window = -window - 2;
+
+        awaitWindow(window);
+        return mFactors[index];
+    }
+
+    /**
+     * Block until @a window has been sieved, sieving it in the
+     * calling thread if no other thread has started it yet.
+     */
+    private void awaitWindow(int window) {
+        // Keep looping as long as sieving the window was cancelled
+        // by some other thread being interrupted.
+        while (true) {
+            FutureTask<Void> task = mWindows.get(window);
+
+            if (task == null) {
+                FutureTask<Void> newTask =
+                    new FutureTask<>(() -> sieveWindow(window), null);
+
+                // Only the thread that installs the task runs it.
+                if (!mWindows.compareAndSet(window, null, newTask))
+                    continue;
+
+                task = newTask;
+                task.run();
+            }
+
+            try {
+                task.get();
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException
+                    ("interrupted while waiting for window " + window);
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof CancellationException))
+                    throw launderThrowable(e.getCause());
+
+                // Remove the cancelled task so the window can be
+                // sieved again, and only retry if this thread
+                // wasn't interrupted itself.
+                mWindows.compareAndSet(window, task, null);
+                if (Thread.currentThread().isInterrupted())
+                    throw (CancellationException) e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Sieve the values spanned by @a window and record the smallest
+     * factor of each candidate in that window.
+     */
+    private void sieveWindow(int window) {
+        int from = mWindowOffsets[window];
+        int to = mWindowOffsets[window + 1];
+        long low = mCandidates[from];
+        long high = mCandidates[to - 1];
+        int span = (int) (high - low + 1);
+
+        int[] factors = sScratch.get();
+        Arrays.fill(factors, 0, span, 0);
+
+        for (int i = 0; i < mSievingPrimes.length; ++i) {
+            int prime = mSievingPrimes[i];
+            if ((long) prime * prime > high)
+                break;
+
+            if (i % sINTERRUPT_CHECK_INTERVAL == 0
+                && Thread.currentThread().isInterrupted())
+                throw new CancellationException
+                    ("interrupted while sieving window " + window);
+
+            // Cross off multiples of prime, starting at its square so
+            // the prime itself is never crossed off.  The first prime
+            // to cross off a value is its smallest factor.
+            long first = Math.max((long) prime * prime,
+                                  (low + prime - 1) / prime * prime);
+            for (long offset = first - low; offset < span; offset += prime)
+                if (factors[(int) offset] == 0)
+                    factors[(int) offset] = prime;
+        }
+
+        for (int i = from; i < to; ++i)
+            mFactors[i] = factors[(int) (mCandidates[i] - low)];
+    }
+
+    /**
+     * Returns all the primes less than or equal to @a limit using a
+     * simple Sieve of Eratosthenes.
+     */
+    private static int[] primesUpTo(int limit) {
+        if (limit < 2)
+            return new int[0];
+
+        boolean[] composite = new boolean[limit + 1];
+        int count = 0;
+        for (int i = 2; i <= limit; ++i)
+            if (!composite[i]) {
+                ++count;
+                for (long multiple = (long) i * i;
+                     multiple <= limit;
+                     multiple += i)
+                    composite[(int) multiple] = true;
+            }
+
+        int[] primes = new int[count];
+        for (int i = 2, j = 0; i <= limit; ++i)
+            if (!composite[i])
+                primes[j++] = i;
+        return primes;
+    }
+}
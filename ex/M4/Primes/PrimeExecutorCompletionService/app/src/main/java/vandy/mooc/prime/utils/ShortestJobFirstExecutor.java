@@ -0,0 +1,178 @@
+package vandy.mooc.prime.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size thread pool that runs the tasks it estimates are
+ * cheapest first, rather than in the order they were submitted, which
+ * lowers the mean time it takes tasks to complete when their costs
+ * vary widely.  Tasks estimate their own cost by implementing the Job
+ * interface, and tasks that don't are treated as free.  Running the
+ * cheapest task first could starve an expensive one forever, so the
+ * tasks age: each task's priority improves by one unit of cost for
+ * every "aging" nanoseconds it waits.  Since all the waiting tasks age
+ * at the same rate, this is the same as ordering them by their
+ * submission time plus their cost times the aging rate, so the order
+ * of the queue never changes and a PriorityBlockingQueue suffices.
+ * A task submitted later can thus only run first if it's submitted
+ * within cost times aging nanoseconds of the earlier one, which bounds
+ * how long any task can be passed over.
+ */
+public class ShortestJobFirstExecutor
+       extends ThreadPoolExecutor {
+    /**
+     * A task that estimates how much it costs to run, in whatever
+     * units the tasks sharing an executor agree on.
+     */
+    public interface Job {
+        /**
+         * Returns the estimated cost of running the task, which must
+         * not be negative.
+         */
+        long estimatedCost();
+    }
+
+    /**
+     * Number of nanoseconds a task must wait for its priority to
+     * improve by one unit of cost.
+     */
+    private final long mAgingNanos;
+
+    /**
+     * Time the pool was created, which the priorities are measured
+     * from.
+     */
+    private final long mStart = System.nanoTime();
+
+    /**
+     * Number of tasks submitted, which breaks ties between tasks with
+     * the same priority in favor of the one submitted first.
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Constructor creates a pool of @a threads threads whose waiting
+     * tasks' priorities improve by one unit of cost every @a
+     * agingNanos nanoseconds.
+     */
+    public ShortestJobFirstExecutor(int threads,
+                                    long agingNanos) {
+        super(threads,
+              threads,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new PriorityBlockingQueue<>());
+
+        if (agingNanos <= 0)
+            throw new IllegalArgumentException
+                ("aging of " + agingNanos + " ns must be positive");
+        mAgingNanos = agingNanos;
+
+        // Start the threads now, so every task goes through the
+        // queue rather than the first ones running as they arrive.
+        prestartAllCoreThreads();
+    }
+
+    /**
+     * Hook method that wraps @a callable in a task that's ordered by
+     * its estimated cost.
+     */
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new PrioritizedTask<>(callable, priority(callable));
+    }
+
+    /**
+     * Hook method that wraps @a runnable in a task that's ordered by
+     * its estimated cost and returns @a value.
+     */
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable,
+                                               T value) {
+        return new PrioritizedTask<>(runnable, value, priority(runnable));
+    }
+
+    /**
+     * Run @a command when it's the cheapest waiting task, after
+     * ordering it by its estimated cost if it hasn't been already.
+     * As with submit(), any exception @a command throws is then
+     * captured by the task that wraps it.
+     */
+    @Override
+    public void execute(Runnable command) {
+        super.execute(command instanceof PrioritizedTask
+                      ? command
+                      : newTaskFor(command, null));
+    }
+
+    /**
+     * Returns the priority of @a task submitted now, which is its
+     * submission time plus its estimated cost times the aging rate,
+     * so lower values run first.
+     */
+    private long priority(Object task) {
+        long cost = task instanceof Job
+            ? ((Job) task).estimatedCost()
+            : 0;
+        long submitted = System.nanoTime() - mStart;
+
+        // Saturate rather than overflow for enormous costs.
+        return cost > (Long.MAX_VALUE - submitted) / mAgingNanos
+            ? Long.MAX_VALUE
+            : submitted + cost * mAgingNanos;
+    }
+
+    /**
+     * A FutureTask that's ordered by its priority in the queue.
+     */
+    private class PrioritizedTask<T>
+            extends FutureTask<T>
+            implements Comparable<PrioritizedTask<?>> {
+        /**
+         * Priority of the task, where lower values run first.
+         */
+        private final long mPriority;
+
+        /**
+         * Position of the task in submission order.
+         */
+        private final long mSequenceNumber = mSequence.getAndIncrement();
+
+        /**
+         * Constructor initializes the fields for @a callable.
+         */
+        PrioritizedTask(Callable<T> callable,
+                        long priority) {
+            super(callable);
+            mPriority = priority;
+        }
+
+        /**
+         * Constructor initializes the fields for @a runnable, which
+         * returns @a value.
+         */
+        PrioritizedTask(Runnable runnable,
+                        T value,
+                        long priority) {
+            super(runnable, value);
+            mPriority = priority;
+        }
+
+        /**
+         * Order the tasks by priority, and then by submission order.
+         */
+        @Override
+        public int compareTo(PrioritizedTask<?> other) {
+            int order = Long.compare(mPriority, other.mPriority);
+            return order != 0
+                ? order
+                : Long.compare(mSequenceNumber, other.mSequenceNumber);
+        }
+    }
+}
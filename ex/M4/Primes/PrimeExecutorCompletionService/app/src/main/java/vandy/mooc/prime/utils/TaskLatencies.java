@@ -0,0 +1,68 @@
+package vandy.mooc.prime.utils;
+
+/**
+ * Records how long tasks wait in an executor's queue and how long
+ * they then take to run, so a pool that's too small (long waits) can
+ * be told apart from tasks that are expensive (long runs).
+ */
+public class TaskLatencies {
+    /**
+     * Time from when each task was submitted until it started.
+     */
+    private final LatencyHistogram mQueueWait = new LatencyHistogram();
+
+    /**
+     * Time from when each task started until it finished.
+     */
+    private final LatencyHistogram mExecution = new LatencyHistogram();
+
+    /**
+     * Record a task that was submitted at @a submitted, started at @a
+     * started, and finished at @a finished, all in System.nanoTime()
+     * units.
+     */
+    public void record(long submitted,
+                       long started,
+                       long finished) {
+        mQueueWait.record(started - submitted);
+        mExecution.record(finished - started);
+    }
+
+    /**
+     * Add all the tasks recorded by @a other.
+     */
+    public void add(TaskLatencies other) {
+        mQueueWait.add(other.mQueueWait);
+        mExecution.add(other.mExecution);
+    }
+
+    /**
+     * Discard all the recorded tasks.
+     */
+    public void reset() {
+        mQueueWait.reset();
+        mExecution.reset();
+    }
+
+    /**
+     * Returns the histogram of queue wait times.
+     */
+    public LatencyHistogram getQueueWait() {
+        return mQueueWait;
+    }
+
+    /**
+     * Returns the histogram of execution times.
+     */
+    public LatencyHistogram getExecution() {
+        return mExecution;
+    }
+
+    /**
+     * Returns a summary of the queue wait and execution times.
+     */
+    @Override
+    public String toString() {
+        return "queue wait: " + mQueueWait + "\nexecution: " + mExecution;
+    }
+}
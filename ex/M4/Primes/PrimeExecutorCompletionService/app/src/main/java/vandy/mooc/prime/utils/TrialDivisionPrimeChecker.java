@@ -0,0 +1,194 @@
+package vandy.mooc.prime.utils;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Uses trial division to determine if a given number is prime or
+ * not, which is the same algorithm as the brute-force checkers but
+ * only divides by primes up to the square root of the number.  The
+ * primes come from a table computed once and shared by every
+ * instance, which covers every candidate below 2^32.  Larger
+ * candidates are then divided by the odd numbers beyond the table.
+ * Interruption is checked once per block of divisors rather than for
+ * each one, so it costs next to nothing.  So is an optional deadline
+ * for each candidate, which bounds how long any candidate can occupy
+ * a thread, at the cost of only reporting how far the search got.
+ */
+public class TrialDivisionPrimeChecker
+       implements PrimeChecker {
+    /**
+     * Bound on the primes in the table, whose square covers every
+     * candidate below 2^32.
+     */
+    private static final int sTABLE_LIMIT = 1 << 16;
+
+    /**
+     * All the primes below sTABLE_LIMIT in ascending order.
+     */
+    private static final int[] sPRIMES = primesBelow(sTABLE_LIMIT);
+
+    /**
+     * Number of divisors tested between checks for thread
+     * interruption and the deadline, which must be a power of 2.
+     */
+    private static final int sINTERRUPT_CHECK_INTERVAL = 1 << 10;
+
+    /**
+     * Number of the smallest primes estimateDivisions() tries before
+     * estimating the cost of checking a candidate from its magnitude.
+     */
+    private static final int sPREFILTER_PRIMES = 8;
+
+    /**
+     * Square root of Long.MAX_VALUE, rounded down.
+     */
+    private static final long sMAX_ROOT = 3_037_000_499L;
+
+    /**
+     * Number of nanoseconds allowed to check each candidate, or 0 if
+     * there's no limit.
+     */
+    private final long mTimeoutNanos;
+
+    /**
+     * Constructor initializes the checker so there's no limit on how
+     * long a candidate takes to check.
+     */
+    public TrialDivisionPrimeChecker() {
+        this(0);
+    }
+
+    /**
+     * Constructor initializes the checker so checking each candidate
+     * throws DeadlineExceededException if it takes longer than @a
+     * timeoutNanos nanoseconds, or never if @a timeoutNanos is 0.
+     */
+    public TrialDivisionPrimeChecker(long timeoutNanos) {
+        if (timeoutNanos < 0)
+            throw new IllegalArgumentException
+                ("timeout of " + timeoutNanos + " ns must not be negative");
+        mTimeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * Returns 0 if @a n is prime or the smallest factor of @a n if
+     * it is not prime.  Throws DeadlineExceededException if the
+     * timeout expires first.
+     */
+    @Override
+    public long smallestFactor(long n) {
+        if (n <= 3)
+            return 0;
+
+        long limit = sqrt(n);
+        long deadline = mTimeoutNanos > 0
+            ? System.nanoTime() + mTimeoutNanos
+            : 0;
+
+        for (int i = 0; i < sPRIMES.length; ++i) {
+            int prime = sPRIMES[i];
+            if (prime > limit)
+                return 0;
+
+            if ((i & (sINTERRUPT_CHECK_INTERVAL - 1)) == 0)
+                check(n, prime, deadline);
+
+            if (n % prime == 0)
+                return prime;
+        }
+
+        // Only reached if n is at least 2^32 and has no factor in the
+        // table.
+        for (long factor = sTABLE_LIMIT + 1; factor <= limit; factor += 2) {
+            if ((factor & (2 * sINTERRUPT_CHECK_INTERVAL - 1)) == 1)
+                check(n, factor, deadline);
+
+            if (n % factor == 0)
+                return factor;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns an estimate of the number of divisions smallestFactor()
+     * makes to check @a n, which is cheap enough to compute for every
+     * candidate before it's checked.  Candidates with a factor among
+     * the first few primes are found after that many divisions, and
+     * the rest are assumed to be prime, so their estimate only
+     * depends on their magnitude: the number of primes up to their
+     * square root, plus the odd divisors beyond the table.
+     */
+    public static long estimateDivisions(long n) {
+        if (n <= 3)
+            return 0;
+
+        // Prefilter with the primes whose divisions are cheaper than
+        // the estimate itself.
+        for (int i = 0; i < sPREFILTER_PRIMES; ++i)
+            if (n % sPRIMES[i] == 0)
+                return i + 1;
+
+        long limit = sqrt(n);
+        if (limit < sTABLE_LIMIT)
+            // The prime number theorem estimates the number of primes
+            // up to the limit.
+            return Math.max(sPREFILTER_PRIMES,
+                            (long) (limit / Math.log(Math.max(limit, 2))));
+        else
+            return sPRIMES.length + (limit - sTABLE_LIMIT) / 2;
+    }
+
+    /**
+     * Throw CancellationException if the thread factoring @a n has
+     * been interrupted, or DeadlineExceededException if @a deadline
+     * has passed, since @a n has no factor below @a divisor.  A
+     * deadline of 0 never passes.
+     */
+    private static void check(long n,
+                              long divisor,
+                              long deadline) {
+        if (Thread.currentThread().isInterrupted())
+            throw new CancellationException
+                ("interrupted while factoring " + n);
+        else if (deadline != 0 && System.nanoTime() - deadline > 0)
+            throw new DeadlineExceededException(n, divisor);
+    }
+
+    /**
+     * Returns the largest number whose square is at most @a n.
+     */
+    private static long sqrt(long n) {
+        long root = Math.min((long) Math.sqrt((double) n), sMAX_ROOT);
+
+        // Correct the rounding of the double square root.
+        while (root * root > n)
+            --root;
+        while (root < sMAX_ROOT && (root + 1) * (root + 1) <= n)
+            ++root;
+        return root;
+    }
+
+    /**
+     * Returns all the primes less than @a limit using a simple Sieve
+     * of Eratosthenes.
+     */
+    private static int[] primesBelow(int limit) {
+        boolean[] composite = new boolean[limit];
+        int count = 0;
+        for (int i = 2; i < limit; ++i)
+            if (!composite[i]) {
+                ++count;
+                for (long multiple = (long) i * i;
+                     multiple < limit;
+                     multiple += i)
+                    composite[(int) multiple] = true;
+            }
+
+        int[] primes = new int[count];
+        for (int i = 2, j = 0; i < limit; ++i)
+            if (!composite[i])
+                primes[j++] = i;
+        return primes;
+    }
+}
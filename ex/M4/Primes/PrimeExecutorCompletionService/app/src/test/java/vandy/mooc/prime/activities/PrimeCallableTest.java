@@ -0,0 +1,47 @@
+package vandy.mooc.prime.activities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import vandy.mooc.prime.utils.ShortestJobFirstExecutor;
+import vandy.mooc.prime.utils.TrialDivisionPrimeChecker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests checking candidates asynchronously with PrimeCallable's
+ * cache.
+ */
+public class PrimeCallableTest {
+    /**
+     * A candidate that isn't cached is checked by a task that reports
+     * its estimated cost, and once it's cached it's done right away.
+     */
+    @Test
+    public void checkAsyncRunsCostedTasks() throws Exception {
+        long candidate = 1_000_000_007L * 3;
+        List<Runnable> tasks = new ArrayList<>();
+
+        CompletableFuture<PrimeCallable.PrimeResult> future =
+            PrimeCallable.checkAsync(candidate, tasks::add);
+        assertFalse(future.isDone());
+        assertEquals(1, tasks.size());
+        assertTrue(tasks.get(0) instanceof ShortestJobFirstExecutor.Job);
+        assertEquals(TrialDivisionPrimeChecker.estimateDivisions(candidate),
+                     ((ShortestJobFirstExecutor.Job) tasks.get(0)).estimatedCost());
+
+        tasks.get(0).run();
+        assertEquals(candidate, future.get().getPrimeCandidate());
+        assertEquals(3, future.get().getSmallestFactor());
+
+        PrimeCallable.PrimeResult cached =
+            PrimeCallable.checkAsync(candidate, tasks::add).get();
+        assertEquals(3, cached.getSmallestFactor());
+        assertEquals(1, tasks.size());
+    }
+}
@@ -0,0 +1,74 @@
+package vandy.mooc.prime.activities;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import vandy.mooc.prime.utils.MillerRabinPrimeChecker;
+import vandy.mooc.prime.utils.RandomCandidates;
+import vandy.mooc.prime.utils.SegmentedSieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that chunks cover all the candidates in order.
+ */
+public class PrimeChunkCallableTest {
+    /**
+     * The candidates used by the tests.
+     */
+    private final RandomCandidates mCandidates =
+        new RandomCandidates(42, 10_007, 2, 1_000_000_000L);
+
+    /**
+     * Chunks of an array check every candidate once, in order.
+     */
+    @Test
+    public void arrayChunksCoverCandidates() {
+        long[] candidates = mCandidates.toArray();
+        assertCovers(candidates,
+                     PrimeChunkCallable.makeChunks(candidates,
+                                                   new SegmentedSieve(candidates),
+                                                   4));
+    }
+
+    /**
+     * Chunks that generate their own candidates check the same ones,
+     * each with a checker created for its own candidates.
+     */
+    @Test
+    public void generatingChunksCoverCandidates() {
+        assertCovers(mCandidates.toArray(),
+                     PrimeChunkCallable.makeChunks(mCandidates,
+                                                   values -> {
+                                                       assertTrue(values.length < mCandidates.size());
+                                                       return PrimeStrategy.SEGMENTED_SIEVE.create(values);
+                                                   },
+                                                   4));
+    }
+
+    /**
+     * Check that the results of @a chunks, run in order, are the
+     * results of @a candidates.
+     */
+    private static void assertCovers(long[] candidates,
+                                     List<PrimeChunkCallable> chunks) {
+        assertTrue(chunks.size() >= 4);
+
+        MillerRabinPrimeChecker checker = new MillerRabinPrimeChecker();
+        int next = 0;
+        for (PrimeChunkCallable chunk : chunks) {
+            List<PrimeCallable.PrimeResult> results = chunk.call();
+            assertEquals(chunk.size(), results.size());
+
+            for (PrimeCallable.PrimeResult result : results) {
+                assertEquals(candidates[next], result.getPrimeCandidate());
+                assertEquals(checker.smallestFactor(candidates[next]),
+                             result.getSmallestFactor());
+                ++next;
+            }
+        }
+        assertEquals(candidates.length, next);
+    }
+}
@@ -0,0 +1,308 @@
+package vandy.mooc.prime.activities;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import vandy.mooc.prime.utils.Flow;
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.MillerRabinPrimeChecker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a PrimePublisher honors its Subscriber's demand.  The
+ * chunks run on a ManualExecutor, so each test decides when and in
+ * what order they run.
+ */
+public class PrimePublisherTest {
+    /**
+     * Number of candidates published by each test.
+     */
+    private static final int sCOUNT = 1_000;
+
+    /**
+     * Parallelism that limits the chunks to at most 10 candidates,
+     * since there are at least 4 chunks per thread.
+     */
+    private static final int sPARALLELISM = 25;
+
+    /**
+     * Largest number of candidates in a chunk.
+     */
+    private static final int sMAX_CHUNK = 10;
+
+    /**
+     * The candidates published by each test.
+     */
+    private final long[] mCandidates =
+        LongStream.range(1_000_000, 1_000_000 + sCOUNT).toArray();
+
+    /**
+     * Counts the candidates that have been checked.
+     */
+    private final AtomicInteger mChecked = new AtomicInteger();
+
+    /**
+     * Checks the candidates and counts them.
+     */
+    private final PrimeChecker mChecker = new PrimeChecker() {
+            private final PrimeChecker mMillerRabin =
+                new MillerRabinPrimeChecker();
+
+            @Override
+            public long smallestFactor(long n) {
+                mChecked.incrementAndGet();
+                return mMillerRabin.smallestFactor(n);
+            }
+        };
+
+    /**
+     * An Executor that queues its tasks until the test runs them.
+     */
+    static class ManualExecutor
+           implements Executor {
+        /**
+         * The tasks that haven't run yet.
+         */
+        final Deque<Runnable> mTasks = new ArrayDeque<>();
+
+        /**
+         * Becomes true once the executor rejects new tasks.
+         */
+        boolean mShutdown;
+
+        @Override
+        public void execute(Runnable task) {
+            if (mShutdown)
+                throw new RejectedExecutionException("shut down");
+            mTasks.add(task);
+        }
+
+        /**
+         * Run the oldest task, returning false if there wasn't one.
+         */
+        boolean runFirst() {
+            Runnable task = mTasks.pollFirst();
+            if (task != null)
+                task.run();
+            return task != null;
+        }
+
+        /**
+         * Run the newest task, returning false if there wasn't one.
+         */
+        boolean runLast() {
+            Runnable task = mTasks.pollLast();
+            if (task != null)
+                task.run();
+            return task != null;
+        }
+    }
+
+    /**
+     * A Subscriber that records what it receives.
+     */
+    static class RecordingSubscriber
+           implements Flow.Subscriber<PrimeCallable.PrimeResult> {
+        /**
+         * The subscription, once the Publisher has provided it.
+         */
+        Flow.Subscription mSubscription;
+
+        /**
+         * The results received, in the order they arrived.
+         */
+        final List<PrimeCallable.PrimeResult> mResults = new ArrayList<>();
+
+        /**
+         * The error received, if any.
+         */
+        Throwable mError;
+
+        /**
+         * Number of times onComplete() was called.
+         */
+        int mCompletions;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            mSubscription = subscription;
+        }
+
+        @Override
+        public void onNext(PrimeCallable.PrimeResult result) {
+            mResults.add(result);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            mError = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            ++mCompletions;
+        }
+    }
+
+    /**
+     * Nothing is checked until results are requested, and then only
+     * enough chunks are submitted to meet the demand.
+     */
+    @Test
+    public void checksOnlyWhatIsRequested() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingSubscriber subscriber = subscribe(executor, 0);
+        assertTrue(executor.mTasks.isEmpty());
+
+        subscriber.mSubscription.request(15);
+        while (executor.runFirst())
+            continue;
+
+        assertEquals(15, subscriber.mResults.size());
+        assertTrue(mChecked.get() + " checked",
+                   mChecked.get() < 15 + sMAX_CHUNK);
+        assertEquals(0, subscriber.mCompletions);
+
+        // Requesting more resumes the computations.
+        subscriber.mSubscription.request(10);
+        while (executor.runFirst())
+            continue;
+        assertEquals(25, subscriber.mResults.size());
+        assertTrue(mChecked.get() < 25 + sMAX_CHUNK);
+    }
+
+    /**
+     * A Subscriber that requests everything gets each result once,
+     * followed by a single onComplete().
+     */
+    @Test
+    public void deliversEveryResultOnce() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingSubscriber subscriber = subscribe(executor, 0);
+        subscriber.mSubscription.request(Long.MAX_VALUE);
+
+        // Finish the chunks out of order.
+        while (executor.runLast())
+            continue;
+
+        assertResultsAreCorrect(subscriber);
+        assertEquals(1, subscriber.mCompletions);
+        assertNull(subscriber.mError);
+
+        // Extra demand after completion changes nothing.
+        subscriber.mSubscription.request(1);
+        assertEquals(1, subscriber.mCompletions);
+        assertEquals(sCOUNT, mChecked.get());
+    }
+
+    /**
+     * With a window the results arrive in the order of the
+     * candidates, even if the chunks finish in reverse order, and no
+     * more candidates are checked than the window allows.
+     */
+    @Test
+    public void windowKeepsResultsInOrder() {
+        int window = 40;
+        ManualExecutor executor = new ManualExecutor();
+        RecordingSubscriber subscriber = subscribe(executor, window);
+        subscriber.mSubscription.request(Long.MAX_VALUE);
+
+        while (executor.runLast())
+            assertTrue(mChecked.get() + " checked, "
+                       + subscriber.mResults.size() + " delivered",
+                       mChecked.get() - subscriber.mResults.size()
+                       <= window + sMAX_CHUNK);
+
+        assertResultsAreCorrect(subscriber);
+        for (int i = 0; i < sCOUNT; ++i)
+            assertEquals(mCandidates[i],
+                         subscriber.mResults.get(i).getPrimeCandidate());
+        assertEquals(1, subscriber.mCompletions);
+        assertNull(subscriber.mError);
+    }
+
+    /**
+     * Cancelling stops the computations and the results.
+     */
+    @Test
+    public void cancelStopsResults() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingSubscriber subscriber = subscribe(executor, 0);
+        subscriber.mSubscription.request(Long.MAX_VALUE);
+        executor.runFirst();
+        int delivered = subscriber.mResults.size();
+
+        subscriber.mSubscription.cancel();
+        while (executor.runFirst())
+            continue;
+
+        assertEquals(delivered, subscriber.mResults.size());
+        assertEquals(0, subscriber.mCompletions);
+        assertNull(subscriber.mError);
+    }
+
+    /**
+     * A request that isn't positive and a rejected chunk are both
+     * reported to onError().
+     */
+    @Test
+    public void reportsErrors() {
+        RecordingSubscriber invalid = subscribe(new ManualExecutor(), 0);
+        invalid.mSubscription.request(0);
+        assertTrue(invalid.mError instanceof IllegalArgumentException);
+
+        ManualExecutor executor = new ManualExecutor();
+        executor.mShutdown = true;
+        RecordingSubscriber rejected = subscribe(executor, 0);
+        rejected.mSubscription.request(5);
+        assertTrue(rejected.mError instanceof RejectedExecutionException);
+        assertEquals(0, rejected.mCompletions);
+    }
+
+    /**
+     * Returns a Subscriber subscribed to a publisher of the
+     * candidates, whose chunks run on @a executor and whose results
+     * are in order if @a window is positive.
+     */
+    private RecordingSubscriber subscribe(Executor executor,
+                                          int window) {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new PrimePublisher(executor,
+                           sPARALLELISM,
+                           mCandidates,
+                           mChecker,
+                           window).subscribe(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Check that @a subscriber received the correct result for each
+     * candidate exactly once.
+     */
+    private void assertResultsAreCorrect(RecordingSubscriber subscriber) {
+        assertEquals(sCOUNT, subscriber.mResults.size());
+
+        MillerRabinPrimeChecker checker = new MillerRabinPrimeChecker();
+        Set<Long> seen = new HashSet<>();
+        for (PrimeCallable.PrimeResult result : subscriber.mResults) {
+            assertTrue(seen.add(result.getPrimeCandidate()));
+            assertFalse(result.isUnknown());
+            assertEquals(checker.smallestFactor(result.getPrimeCandidate()),
+                         result.getSmallestFactor());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package vandy.mooc.prime.activities;
+
+import org.junit.Test;
+
+import java.util.function.Function;
+
+import vandy.mooc.prime.utils.DeadlineExceededException;
+import vandy.mooc.prime.utils.MillerRabinPrimeChecker;
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.RandomCandidates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the checkers each strategy creates for chunks of candidates,
+ * and which strategies honor a deadline.
+ */
+public class PrimeStrategyTest {
+    /**
+     * The Mersenne prime 2^61 - 1, which takes trial division far
+     * longer than a nanosecond to check.
+     */
+    private static final long sLARGE_PRIME = (1L << 61) - 1;
+
+    /**
+     * Every strategy's checkers, including the ones MEMOIZED creates
+     * from a batch lookup in the cache, agree with Miller-Rabin for
+     * each chunk's candidates.
+     */
+    @Test
+    public void chunkCheckersAreCorrect() {
+        RandomCandidates candidates =
+            new RandomCandidates(42, 2_000, 2, 1_000_000);
+        MillerRabinPrimeChecker reference = new MillerRabinPrimeChecker();
+
+        for (PrimeStrategy strategy : PrimeStrategy.values()) {
+            Function<long[], PrimeChecker> factory =
+                strategy.createFactory(candidates);
+
+            for (int from = 0; from < candidates.size(); from += 500) {
+                long[] values = candidates.generate(from, from + 500);
+                PrimeChecker checker = factory.apply(values);
+                for (long n : values)
+                    assertEquals(strategy + " " + n,
+                                 reference.smallestFactor(n),
+                                 checker.smallestFactor(n));
+            }
+        }
+    }
+
+    /**
+     * Only TRIAL_DIVISION supports a deadline, and the others reject
+     * one rather than ignoring it.
+     */
+    @Test
+    public void onlyTrialDivisionSupportsDeadline() {
+        long[] candidates = { 91 };
+
+        for (PrimeStrategy strategy : PrimeStrategy.values()) {
+            // Every strategy works without a deadline.
+            assertEquals(strategy.toString(),
+                         7,
+                         strategy.create(candidates, 0).smallestFactor(91));
+
+            if (strategy == PrimeStrategy.TRIAL_DIVISION)
+                assertTrue(strategy.supportsDeadline());
+            else {
+                assertFalse(strategy.supportsDeadline());
+                try {
+                    strategy.create(candidates, 1_000);
+                    fail(strategy + " accepted a deadline");
+                } catch (UnsupportedOperationException e) {
+                    // Expected.
+                }
+            }
+        }
+    }
+
+    /**
+     * TRIAL_DIVISION gives up once its deadline passes and reports
+     * how far it got.
+     */
+    @Test
+    public void trialDivisionGivesUpAtDeadline() {
+        try {
+            PrimeStrategy.TRIAL_DIVISION
+                .create(null, 1)
+                .smallestFactor(sLARGE_PRIME);
+            fail("expected a DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertEquals(sLARGE_PRIME, e.getCandidate());
+            assertTrue(e.getNoFactorBelow() >= 2);
+        }
+
+        PrimeCallable.PrimeResult result =
+            PrimeCallable.check(sLARGE_PRIME,
+                                PrimeStrategy.TRIAL_DIVISION.create(null, 1));
+        assertTrue(result.isUnknown());
+        assertEquals(0, result.getSmallestFactor());
+    }
+}
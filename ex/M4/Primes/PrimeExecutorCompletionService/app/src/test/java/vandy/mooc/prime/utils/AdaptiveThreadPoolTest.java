@@ -0,0 +1,62 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that an AdaptiveThreadPool grows when more threads help and
+ * stays within its bounds.
+ */
+public class AdaptiveThreadPoolTest {
+    /**
+     * Tasks that mostly wait complete faster with more threads, so
+     * the pool grows, but never beyond its upper bound.
+     */
+    @Test(timeout = 30_000)
+    public void growsWithinBounds() throws InterruptedException {
+        AdaptiveThreadPool pool = new AdaptiveThreadPool(1, 1, 4);
+        int tasks = 1_500;
+        CountDownLatch done = new CountDownLatch(tasks);
+        try {
+            for (int i = 0; i < tasks; ++i)
+                pool.execute(() -> {
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        done.countDown();
+                    });
+
+            int largest = 1;
+            while (!done.await(50, TimeUnit.MILLISECONDS)) {
+                int size = pool.getCorePoolSize();
+                assertTrue(size + " threads", size >= 1 && size <= 4);
+                largest = Math.max(largest, size);
+            }
+            assertTrue(pool.getSizeSummary(), largest > 1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * The initial size must lie within the bounds.
+     */
+    @Test
+    public void rejectsInvalidBounds() {
+        int[][] bounds = { { 0, 1, 2 }, { 2, 1, 3 }, { 1, 3, 2 } };
+        for (int[] bound : bounds)
+            try {
+                new AdaptiveThreadPool(bound[0], bound[1], bound[2]).shutdown();
+                fail("accepted " + bound[0] + " <= " + bound[1] + " <= " + bound[2]);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+    }
+}
@@ -0,0 +1,111 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests BailliePSW against a plain sieve, against
+ * BigInteger.isProbablePrime(), and against composites built to fool
+ * weaker tests.
+ */
+public class BailliePSWTest {
+    /**
+     * The reference sieve.
+     */
+    private static final PlainSieve sPlainSieve = new PlainSieve(1 << 20);
+
+    /**
+     * Every number covered by the sieve, and numbers that aren't
+     * positive.
+     */
+    @Test
+    public void matchesSieve() {
+        for (long n = 0; n < sPlainSieve.limit(); ++n)
+            assertEquals(n + "",
+                         sPlainSieve.isPrime(n),
+                         BailliePSW.isProbablePrime(BigInteger.valueOf(n)));
+
+        assertFalse(BailliePSW.isProbablePrime(BigInteger.valueOf(-7)));
+    }
+
+    /**
+     * Random odd numbers, primes, and products of two primes from 64
+     * to 1024 bits.
+     */
+    @Test(timeout = 60_000)
+    public void matchesBigInteger() {
+        Random random = new Random(42);
+        for (int i = 0; i < 500; ++i) {
+            int bits = 64 + random.nextInt(1024 - 64 + 1);
+
+            BigInteger odd = new BigInteger(bits, random).setBit(0);
+            assertEquals(odd + "", odd.isProbablePrime(100), BailliePSW.isProbablePrime(odd));
+
+            BigInteger prime = BigInteger.probablePrime(bits, random);
+            assertTrue(prime + "", BailliePSW.isProbablePrime(prime));
+
+            BigInteger p = BigInteger.probablePrime(bits / 2, random);
+            BigInteger q = BigInteger.probablePrime(bits - bits / 2, random);
+            assertFalse(p + " * " + q, BailliePSW.isProbablePrime(p.multiply(q)));
+        }
+    }
+
+    /**
+     * Carmichael numbers (6k + 1)(12k + 1)(18k + 1) beyond a long,
+     * which pass the Fermat test to every base prime to them, and
+     * squares of primes, which no valid Lucas parameters exist for.
+     */
+    @Test(timeout = 60_000)
+    public void rejectsCarmichaelNumbersAndSquares() {
+        int found = 0;
+        for (BigInteger k = BigInteger.valueOf(1L << 21);
+             found < 20;
+             k = k.add(BigInteger.ONE)) {
+            BigInteger a = k.multiply(BigInteger.valueOf(6)).add(BigInteger.ONE);
+            BigInteger b = k.multiply(BigInteger.valueOf(12)).add(BigInteger.ONE);
+            BigInteger c = k.multiply(BigInteger.valueOf(18)).add(BigInteger.ONE);
+            if (a.isProbablePrime(100)
+                && b.isProbablePrime(100)
+                && c.isProbablePrime(100)) {
+                BigInteger carmichael = a.multiply(b).multiply(c);
+                assertTrue(carmichael.bitLength() >= Long.SIZE);
+                assertEquals(0, BailliePSW.smallFactor(carmichael));
+                assertFalse(carmichael + "", BailliePSW.isProbablePrime(carmichael));
+                ++found;
+            }
+        }
+
+        Random random = new Random(7);
+        for (int i = 0; i < 200; ++i) {
+            BigInteger p = BigInteger.probablePrime(32 + random.nextInt(200), random);
+            assertFalse(p + "^2", BailliePSW.isProbablePrime(p.multiply(p)));
+        }
+    }
+
+    /**
+     * The small factor is the smallest prime below 1000 that divides
+     * the number, unless the number is that prime.
+     */
+    @Test
+    public void findsSmallFactors() {
+        assertEquals(2, BailliePSW.smallFactor(BigInteger.ONE.shiftLeft(100)));
+        assertEquals(0, BailliePSW.smallFactor(BigInteger.valueOf(997)));
+        assertEquals(0, BailliePSW.smallFactor(BigInteger.valueOf(1009L * 1013)));
+
+        for (long n = 4; n < sPlainSieve.limit(); ++n) {
+            long factor = sPlainSieve.smallestFactor(n);
+            assertEquals(n + "",
+                         factor < 1000 ? factor : 0,
+                         BailliePSW.smallFactor(BigInteger.valueOf(n)));
+        }
+
+        BigInteger big = BigInteger.probablePrime(200, new Random(3));
+        assertEquals(991, BailliePSW.smallFactor(big.multiply(BigInteger.valueOf(991 * 997))));
+    }
+}
@@ -0,0 +1,150 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a BoundedMemoizer stays within its maximum size and
+ * keeps frequently requested keys rather than one-off ones.
+ */
+public class BoundedMemoizerTest {
+    /**
+     * A BoundedMemoizer that counts the keys it evicts.
+     */
+    private static class CountingMemoizer
+            extends BoundedMemoizer<Long, Long> {
+        /**
+         * Number of keys removed from the cache.
+         */
+        final LongAdder mEvictions = new LongAdder();
+
+        /**
+         * Constructor initializes the superclass.
+         */
+        CountingMemoizer(Function<Long, Long> function,
+                         int maximumSize) {
+            super(function, maximumSize);
+        }
+
+        @Override
+        protected boolean remove(Long key, Future<Long> future) {
+            boolean removed = super.remove(key, future);
+            if (removed)
+                mEvictions.increment();
+            return removed;
+        }
+
+        /**
+         * Returns the number of keys in the cache.
+         */
+        long size() {
+            return getStats().getMisses() - mEvictions.sum();
+        }
+    }
+
+    /**
+     * The cache never holds more than its maximum size, and evicted
+     * keys are computed again when they're requested.
+     */
+    @Test
+    public void staysWithinMaximumSize() {
+        CountingMemoizer memoizer = new CountingMemoizer(key -> key + 1, 100);
+
+        for (long key = 0; key < 10_000; ++key) {
+            assertEquals(key + 1, (long) memoizer.get(key));
+            assertTrue(memoizer.size() <= 100);
+        }
+        assertEquals(100, memoizer.size());
+
+        assertEquals(1, (long) memoizer.get(0L));
+        assertEquals(10_001, memoizer.getStats().getLoads());
+    }
+
+    /**
+     * A scan of one-off keys doesn't flush keys that are requested
+     * again and again.
+     */
+    @Test
+    public void resistsScans() {
+        ConcurrentHashMap<Long, AtomicInteger> loads = new ConcurrentHashMap<>();
+        CountingMemoizer memoizer = new CountingMemoizer(key -> {
+                loads.computeIfAbsent(key, k -> new AtomicInteger())
+                     .incrementAndGet();
+                return key;
+            }, 1_000);
+
+        // Make keys [0, 500) popular.
+        for (int round = 0; round < 5; ++round)
+            for (long key = 0; key < 500; ++key)
+                memoizer.get(key);
+
+        // Scan 20 times the cache's size of keys used once, with the
+        // popular keys requested now and then.
+        Random random = new Random(42);
+        for (long key = 1_000_000; key < 1_020_000; ++key) {
+            memoizer.get(key);
+            memoizer.get((long) random.nextInt(500));
+        }
+
+        int reloaded = 0;
+        for (long key = 0; key < 500; ++key) {
+            memoizer.get(key);
+            if (loads.get(key).get() > 1)
+                ++reloaded;
+        }
+        assertTrue(reloaded + " popular keys were evicted", reloaded < 25);
+        assertTrue(memoizer.size() <= 1_000);
+    }
+
+    /**
+     * Concurrent requests get the right values, and the cache stays
+     * within its maximum size once they're done.
+     */
+    @Test(timeout = 60_000)
+    public void concurrentRequests() throws Exception {
+        CountingMemoizer memoizer = new CountingMemoizer(key -> 2 * key, 500);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                long seed = t;
+                futures.add(executor.submit(() -> {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < 50_000; ++i) {
+                            // Skew the keys so some are hot.
+                            long key = (long) Math.abs(random.nextGaussian() * 1_000);
+                            assertEquals(2 * key, (long) memoizer.get(key));
+                        }
+                    }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(memoizer.size() + " keys cached", memoizer.size() <= 500);
+    }
+
+    /**
+     * A cache must have room for a window and a main region.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTinyMaximumSize() {
+        new BoundedMemoizer<Long, Long>(key -> key, 1);
+    }
+}
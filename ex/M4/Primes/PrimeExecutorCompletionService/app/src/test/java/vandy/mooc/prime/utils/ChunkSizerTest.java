@@ -0,0 +1,51 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a ChunkSizer adapts chunk sizes to the measured cost of
+ * the items.
+ */
+public class ChunkSizerTest {
+    /**
+     * Chunks hold the number of items that take the target time,
+     * but there are always enough chunks to spread over the threads.
+     */
+    @Test
+    public void sizesChunksForTarget() {
+        ChunkSizer sizer = new ChunkSizer(1_000_000, 1_000);
+        assertEquals(1_000, sizer.chunkSize(1_000_000, 4));
+
+        // Only 100 items for 4 threads leaves room for 6 per chunk.
+        assertEquals(6, sizer.chunkSize(100, 4));
+
+        // Every chunk has at least one item.
+        assertEquals(1, sizer.chunkSize(0, 4));
+        assertEquals(1, new ChunkSizer(1, 1_000_000).chunkSize(1_000, 1));
+    }
+
+    /**
+     * The estimate moves toward the measured time per item.
+     */
+    @Test
+    public void adaptsToMeasurements() {
+        ChunkSizer sizer = new ChunkSizer(1_000_000, 1_000);
+
+        // Items that are 10 times more expensive than the estimate.
+        for (int i = 0; i < 50; ++i)
+            sizer.record(100, 100 * 10_000L);
+        assertEquals(100, sizer.chunkSize(1_000_000, 4), 1);
+
+        // Recording an empty chunk changes nothing.
+        sizer.record(0, 1_000_000_000L);
+        assertEquals(100, sizer.chunkSize(1_000_000, 4), 1);
+
+        // And then cheaper ones.
+        for (int i = 0; i < 50; ++i)
+            sizer.record(1_000, 1_000 * 100L);
+        assertTrue(sizer.chunkSize(1_000_000, 4) >= 9_900);
+    }
+}
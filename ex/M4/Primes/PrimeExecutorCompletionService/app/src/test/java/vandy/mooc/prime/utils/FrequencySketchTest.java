@@ -0,0 +1,67 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the estimates of a FrequencySketch.
+ */
+public class FrequencySketchTest {
+    /**
+     * A key's estimate counts its increments up to the counters'
+     * maximum of 15.
+     */
+    @Test
+    public void countsIncrements() {
+        FrequencySketch sketch = new FrequencySketch(1_000);
+        Long key = 12345L;
+
+        assertEquals(0, sketch.frequency(key));
+        for (int i = 1; i <= 20; ++i) {
+            sketch.increment(key);
+            assertEquals(Math.min(i, 15), sketch.frequency(key));
+        }
+    }
+
+    /**
+     * Estimates never undercount, and rarely overcount much when the
+     * sketch isn't overloaded.
+     */
+    @Test
+    public void estimatesAreClose() {
+        FrequencySketch sketch = new FrequencySketch(1_000);
+        for (long key = 0; key < 500; ++key)
+            for (int i = 0; i < key % 8; ++i)
+                sketch.increment(key);
+
+        int overcounts = 0;
+        for (long key = 0; key < 500; ++key) {
+            int frequency = sketch.frequency(key);
+            assertTrue(frequency >= key % 8);
+            if (frequency > key % 8 + 1)
+                ++overcounts;
+        }
+        assertTrue(overcounts + " keys overcounted", overcounts < 25);
+    }
+
+    /**
+     * All the counters are halved once the sample is full, so old
+     * popularity fades away.
+     */
+    @Test
+    public void agesCounts() {
+        FrequencySketch sketch = new FrequencySketch(10);
+        Long hot = -1L;
+        for (int i = 0; i < 8; ++i)
+            sketch.increment(hot);
+        assertEquals(8, sketch.frequency(hot));
+
+        // Fill the rest of the sample of 10 * 10 increments with
+        // other keys.
+        for (long key = 0; key < 92; ++key)
+            sketch.increment(key);
+        assertTrue(sketch.frequency(hot) <= 4);
+    }
+}
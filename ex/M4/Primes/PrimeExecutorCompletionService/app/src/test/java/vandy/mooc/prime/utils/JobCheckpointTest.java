@@ -0,0 +1,205 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a JobCheckpoint lets a job resume where it left off.
+ */
+public class JobCheckpointTest {
+    /**
+     * Number of bytes in the header of a checkpoint file.
+     */
+    private static final int sHEADER_BYTES = 6 * Long.BYTES;
+
+    /**
+     * Number of bytes in each record of a checkpoint file.
+     */
+    private static final int sRECORD_BYTES = 2 * Long.BYTES;
+
+    /**
+     * The checkpoint file used by each test.
+     */
+    private File mFile;
+
+    /**
+     * The candidates checked by the job.
+     */
+    private final RandomCandidates mCandidates =
+        new RandomCandidates(42, 100, 2, 1_000_000);
+
+    @Before
+    public void createFile() throws IOException {
+        mFile = File.createTempFile("primes", ".checkpoint");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void deleteFile() {
+        mFile.delete();
+    }
+
+    /**
+     * A closed checkpoint resumes after the results it recorded.
+     */
+    @Test(timeout = 10_000)
+    public void resumesAfterRecordedResults() throws Exception {
+        JobCheckpoint checkpoint = new JobCheckpoint(mFile, mCandidates);
+        record(checkpoint, 0, 30);
+        checkpoint.close();
+        awaitLength(sHEADER_BYTES + 30 * sRECORD_BYTES);
+
+        JobCheckpoint resumed = JobCheckpoint.resume(mFile);
+        assertNotNull(resumed);
+        assertEquals(30, resumed.getCursor());
+        assertEquals(100, resumed.getCandidates().size());
+        assertArrayEquals(mCandidates.skip(30).toArray(),
+                          resumed.getRemaining().toArray());
+
+        // The resumed checkpoint appends to the same file.
+        record(resumed, 30, 50);
+        resumed.close();
+        awaitLength(sHEADER_BYTES + 50 * sRECORD_BYTES);
+        JobCheckpoint again = JobCheckpoint.resume(mFile);
+        assertEquals(50, again.getCursor());
+        again.discard();
+    }
+
+    /**
+     * A record torn by a crash is dropped, and overwritten by the
+     * next result.
+     */
+    @Test(timeout = 10_000)
+    public void dropsTornRecord() throws Exception {
+        JobCheckpoint checkpoint = new JobCheckpoint(mFile, mCandidates);
+        record(checkpoint, 0, 10);
+        checkpoint.close();
+        awaitLength(sHEADER_BYTES + 10 * sRECORD_BYTES);
+
+        try (FileOutputStream output = new FileOutputStream(mFile, true)) {
+            output.write(new byte[sRECORD_BYTES - 3]);
+        }
+
+        JobCheckpoint resumed = JobCheckpoint.resume(mFile);
+        assertEquals(10, resumed.getCursor());
+        record(resumed, 10, 11);
+        resumed.close();
+        awaitLength(sHEADER_BYTES + 11 * sRECORD_BYTES);
+    }
+
+    /**
+     * Recording stops at an unknown result, so a resumed job checks
+     * that candidate again instead of reading it as prime.
+     */
+    @Test(timeout = 10_000)
+    public void stopsAtUnknownResult() throws Exception {
+        JobCheckpoint checkpoint = new JobCheckpoint(mFile, mCandidates);
+        record(checkpoint, 0, 30);
+        checkpoint.recordUnknown();
+        record(checkpoint, 31, 40);
+        checkpoint.close();
+        awaitLength(sHEADER_BYTES + 30 * sRECORD_BYTES);
+
+        JobCheckpoint resumed = JobCheckpoint.resume(mFile);
+        assertEquals(30, resumed.getCursor());
+        resumed.discard();
+    }
+
+    /**
+     * A finished or discarded job leaves nothing to resume.
+     */
+    @Test(timeout = 10_000)
+    public void nothingToResume() throws Exception {
+        JobCheckpoint checkpoint = new JobCheckpoint(mFile, mCandidates);
+        record(checkpoint, 0, 100);
+        checkpoint.close();
+        awaitLength(sHEADER_BYTES + 100 * sRECORD_BYTES);
+        assertNull(JobCheckpoint.resume(mFile));
+
+        JobCheckpoint discarded = new JobCheckpoint(mFile, mCandidates);
+        record(discarded, 0, 10);
+        discarded.discard();
+
+        // A second stop is ignored.
+        discarded.close();
+        while (mFile.exists())
+            Thread.sleep(10);
+        assertNull(JobCheckpoint.resume(mFile));
+    }
+
+    /**
+     * Checkpoints of concurrent jobs share the flusher without
+     * mixing up their records.
+     */
+    @Test(timeout = 10_000)
+    public void concurrentJobsAreSeparate() throws Exception {
+        File other = File.createTempFile("primes", ".checkpoint");
+        assertTrue(other.delete());
+        try {
+            JobCheckpoint first = new JobCheckpoint(mFile, mCandidates);
+            JobCheckpoint second = new JobCheckpoint(other, mCandidates);
+            record(first, 0, 20);
+            record(second, 0, 40);
+            first.close();
+            second.close();
+            awaitLength(sHEADER_BYTES + 20 * sRECORD_BYTES);
+            while (other.length() != sHEADER_BYTES + 40 * sRECORD_BYTES)
+                Thread.sleep(10);
+
+            JobCheckpoint firstResumed = JobCheckpoint.resume(mFile);
+            JobCheckpoint secondResumed = JobCheckpoint.resume(other);
+            assertEquals(20, firstResumed.getCursor());
+            assertEquals(40, secondResumed.getCursor());
+            firstResumed.discard();
+            secondResumed.discard();
+        } finally {
+            other.delete();
+        }
+    }
+
+    /**
+     * A file that isn't a checkpoint is treated as no job.
+     */
+    @Test
+    public void ignoresInvalidFile() throws Exception {
+        assertNull(JobCheckpoint.resume(mFile));
+
+        try (FileOutputStream output = new FileOutputStream(mFile)) {
+            output.write(new byte[3 * sHEADER_BYTES]);
+        }
+        assertNull(JobCheckpoint.resume(mFile));
+        assertFalse(mFile.length() == 0);
+    }
+
+    /**
+     * Record a result for the candidates of the job in [@a from, @a
+     * to).
+     */
+    private void record(JobCheckpoint checkpoint,
+                        int from,
+                        int to) {
+        long[] candidates = mCandidates.generate(from, to);
+        for (long candidate : candidates)
+            checkpoint.record(candidate, candidate % 2 == 0 ? 2 : 0);
+    }
+
+    /**
+     * Wait until the flusher has written @a length bytes to the file.
+     */
+    private void awaitLength(long length) throws InterruptedException {
+        while (mFile.length() != length)
+            Thread.sleep(10);
+    }
+}
@@ -0,0 +1,90 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the precision of the percentiles a LatencyHistogram reports.
+ */
+public class LatencyHistogramTest {
+    /**
+     * Values below 128 are reported exactly.
+     */
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100; ++value)
+            histogram.record(value);
+
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    /**
+     * Percentiles of values spread over many powers of 2 are within
+     * 1.6% of the exact ones, and never above the maximum.
+     */
+    @Test
+    public void largeValuesAreWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(42);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (long) Math.exp(random.nextDouble() * 30);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] { 1, 25, 50, 90, 99, 99.9 }) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + reported + " vs " + exact,
+                       reported >= exact && reported <= exact * 1.016 + 1);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+    }
+
+    /**
+     * Merged histograms count the values of both, and a reset one
+     * counts none.
+     */
+    @Test
+    public void addsAndResets() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        for (long value = 0; value < 1_000; ++value)
+            (value % 2 == 0 ? first : second).record(value * 1_000);
+
+        first.add(second);
+        assertEquals(1_000, first.getTotalCount());
+        assertEquals(999_000, first.getMax());
+        long median = first.getValueAtPercentile(50);
+        assertTrue(median >= 499_000 && median <= 499_000 * 1.016);
+
+        first.reset();
+        assertEquals(0, first.getTotalCount());
+        assertEquals(0, first.getValueAtPercentile(50));
+    }
+
+    /**
+     * Extreme values are recorded without overflowing the buckets.
+     */
+    @Test
+    public void recordsExtremes() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+}
@@ -0,0 +1,184 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongUnaryOperator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a MappedSnapshot persists results across instances,
+ * which stand in for runs of the app.
+ */
+public class MappedSnapshotTest {
+    /**
+     * Identifies a snapshot file.
+     */
+    private static final long sMAGIC = 0x5052494D45530001L;
+
+    /**
+     * A function that fails the test if the snapshot calls it.
+     */
+    private static final LongUnaryOperator sUNREACHABLE = key -> {
+        throw new AssertionError("computed " + key + " again");
+    };
+
+    /**
+     * The snapshot file used by each test.
+     */
+    private File mFile;
+
+    @Before
+    public void createFile() throws IOException {
+        mFile = File.createTempFile("primes", ".snapshot");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void deleteFile() {
+        mFile.delete();
+        new File(mFile.getPath() + ".tmp").delete();
+    }
+
+    /**
+     * Saved results are read back by the next run instead of being
+     * computed again, and each save merges in the new results.
+     */
+    @Test
+    public void persistsAndMergesResults() throws IOException {
+        MappedSnapshot first = snapshot(key -> 3 * key);
+        for (long key = 0; key < 1_000; ++key)
+            assertEquals(3 * key, first.applyAsLong(key));
+        first.save();
+
+        AtomicInteger calls = new AtomicInteger();
+        MappedSnapshot second = snapshot(key -> {
+                calls.incrementAndGet();
+                return 3 * key;
+            });
+        for (long key = 0; key < 2_000; ++key)
+            assertEquals(3 * key, second.applyAsLong(key));
+        assertEquals(1_000, calls.get());
+        second.save();
+
+        MappedSnapshot third = snapshot(sUNREACHABLE);
+        for (long key = 0; key < 2_000; ++key)
+            assertEquals(3 * key, third.applyAsLong(key));
+    }
+
+    /**
+     * Saving a few new results at a time sizes the table by the
+     * number of entries, so the file doesn't double on every save.
+     */
+    @Test
+    public void repeatedSavesStayBounded() throws IOException {
+        MappedSnapshot snapshot = snapshot(key -> 3 * key);
+        long key = 0;
+        for (int save = 0; save < 30; ++save) {
+            for (int i = 0; i < 10; ++i, ++key)
+                snapshot.applyAsLong(key);
+            snapshot.save();
+
+            // The header, plus a table at most a quarter full.
+            assertTrue(mFile.length() + " bytes for " + key + " entries",
+                       mFile.length() <= 8 * (2 + 2 * 4 * key));
+        }
+
+        MappedSnapshot next = snapshot(sUNREACHABLE);
+        for (long saved = 0; saved < key; ++saved)
+            assertEquals(3 * saved, next.applyAsLong(saved));
+    }
+
+    /**
+     * Results computed by an interrupted thread may be wrong, so
+     * they're returned but not saved.
+     */
+    @Test
+    public void skipsInterruptedResults() throws IOException {
+        MappedSnapshot first = snapshot(key -> {
+                if (key == 7)
+                    Thread.currentThread().interrupt();
+                return key == 7 ? 0 : key;
+            });
+        first.applyAsLong(5);
+        assertEquals(0, first.applyAsLong(7));
+        Thread.interrupted();
+        first.save();
+
+        AtomicInteger calls = new AtomicInteger();
+        MappedSnapshot second = snapshot(key -> {
+                calls.incrementAndGet();
+                return key;
+            });
+        assertEquals(5, second.applyAsLong(5));
+        assertEquals(7, second.applyAsLong(7));
+        assertEquals(1, calls.get());
+    }
+
+    /**
+     * A table with no empty slot is probed at most once per slot
+     * rather than forever.
+     */
+    @Test(timeout = 10_000)
+    public void fullTableDoesNotLoop() throws IOException {
+        try (DataOutputStream output =
+             new DataOutputStream(new FileOutputStream(mFile))) {
+            output.writeLong(sMAGIC);
+            output.writeLong(8);
+            for (int i = 0; i < 8; ++i) {
+                output.writeLong(100 + i);
+                output.writeLong(1);
+            }
+        }
+
+        MappedSnapshot snapshot = snapshot(key -> 42);
+        assertEquals(42, snapshot.applyAsLong(5));
+        assertEquals(1, snapshot.applyAsLong(103));
+    }
+
+    /**
+     * A file that isn't a snapshot is treated as empty, and replaced
+     * by the next save.
+     */
+    @Test
+    public void replacesInvalidFile() throws IOException {
+        try (FileOutputStream output = new FileOutputStream(mFile)) {
+            output.write(new byte[100]);
+        }
+
+        MappedSnapshot first = snapshot(key -> -key);
+        assertEquals(-9, first.applyAsLong(9));
+        first.save();
+
+        assertEquals(-9, snapshot(sUNREACHABLE).applyAsLong(9));
+    }
+
+    /**
+     * Negative keys can't be stored, so they're always computed.
+     */
+    @Test
+    public void computesNegativeKeys() throws IOException {
+        MappedSnapshot first = snapshot(key -> 1);
+        first.applyAsLong(-3);
+        first.save();
+        assertFalse(mFile.exists());
+    }
+
+    /**
+     * Returns a snapshot of @a function's results kept in mFile.
+     */
+    private MappedSnapshot snapshot(LongUnaryOperator function) {
+        MappedSnapshot snapshot = new MappedSnapshot(function);
+        snapshot.setFile(mFile);
+        return snapshot;
+    }
+}
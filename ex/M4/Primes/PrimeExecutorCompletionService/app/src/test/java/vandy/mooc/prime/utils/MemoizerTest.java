@@ -0,0 +1,386 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests how a Memoizer shares computations among its callers, and
+ * how it handles computations that fail, are cancelled, or are waited
+ * on by a thread that's interrupted.
+ */
+public class MemoizerTest {
+    /**
+     * A CancellationException thrown by the function (e.g., because
+     * it was interrupted) must reach the caller rather than make
+     * get() retry forever.
+     */
+    @Test(timeout = 10_000)
+    public void functionCancellationPropagatesFromGet() {
+        AtomicInteger calls = new AtomicInteger();
+        Memoizer<Long, Long> memoizer =
+            new Memoizer<>(key -> {
+                    calls.incrementAndGet();
+                    throw new CancellationException("interrupted");
+                });
+
+        try {
+            memoizer.get(7L);
+            fail("expected a CancellationException");
+        } catch (CancellationException e) {
+            assertEquals(1, calls.get());
+        }
+
+        // The failure isn't cached, so the next request tries again.
+        try {
+            memoizer.get(7L);
+            fail("expected a CancellationException");
+        } catch (CancellationException e) {
+            assertEquals(2, calls.get());
+        }
+    }
+
+    /**
+     * getAll() and getAsync() must also pass on a
+     * CancellationException thrown by the function.
+     */
+    @Test(timeout = 10_000)
+    public void functionCancellationPropagatesFromGetAllAndGetAsync() 
+        throws InterruptedException {
+        Memoizer<Long, Long> memoizer =
+            new Memoizer<>(key -> {
+                    throw new CancellationException("interrupted");
+                });
+
+        try {
+            memoizer.getAll(Arrays.asList(1L, 2L));
+            fail("expected a CancellationException");
+        } catch (CancellationException e) {
+            // Expected.
+        }
+
+        try {
+            memoizer.getAsync(3L, Runnable::run).get();
+            fail("expected an ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CancellationException);
+        }
+    }
+
+    /**
+     * A thread that's interrupted while waiting for another thread's
+     * computation gives up with its interrupt status set, and the
+     * computation still completes for everyone else.
+     */
+    @Test(timeout = 10_000)
+    public void interruptedWaiterGivesUp() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Memoizer<Long, Long> memoizer =
+            new Memoizer<>(key -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    return key * 2;
+                });
+
+        Thread computer = new Thread(() -> memoizer.get(21L));
+        computer.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        AtomicReference<Boolean> interrupted = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+                try {
+                    memoizer.get(21L);
+                } catch (Throwable t) {
+                    thrown.set(t);
+                    interrupted.set(Thread.currentThread().isInterrupted());
+                }
+            });
+        waiter.start();
+
+        // Wait until the waiter blocks on the future.
+        while (waiter.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        waiter.interrupt();
+        waiter.join(5_000);
+
+        assertFalse(waiter.isAlive());
+        assertTrue(thrown.get() instanceof CancellationException);
+        assertTrue(interrupted.get());
+
+        release.countDown();
+        computer.join(5_000);
+        assertEquals(42L, (long) memoizer.get(21L));
+        assertEquals(1, memoizer.getStats().getLoads());
+    }
+
+    /**
+     * A computation cancelled by another caller is removed from the
+     * cache and computed again by the threads waiting for it.
+     */
+    @Test(timeout = 10_000)
+    public void cancelledComputationIsRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Future<Long>> inserted = new AtomicReference<>();
+        Memoizer<Long, Long> memoizer =
+            new Memoizer<Long, Long>(key -> {
+                    if (calls.incrementAndGet() == 1) {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new AssertionError(e);
+                        }
+                    }
+                    return key + 1;
+                }) {
+                @Override
+                protected void onInsert(Long key, Future<Long> future) {
+                    inserted.compareAndSet(null, future);
+                }
+            };
+
+        AtomicReference<Long> computed = new AtomicReference<>();
+        Thread computer = new Thread(() -> computed.set(memoizer.get(1L)));
+        computer.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicReference<Long> waited = new AtomicReference<>();
+        Thread waiter = new Thread(() -> waited.set(memoizer.get(1L)));
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+
+        // Cancel the first computation, as a caller holding its
+        // future could, which makes the waiter compute it again.
+        inserted.get().cancel(false);
+        waiter.join(5_000);
+        release.countDown();
+        computer.join(5_000);
+
+        assertEquals(2L, (long) waited.get());
+        assertEquals(2L, (long) computed.get());
+        assertEquals(2, calls.get());
+        assertTrue(memoizer.getStats().getCancellations() > 0);
+    }
+
+    /**
+     * Callers that ask for a key while its value is being computed
+     * on the executor chain on the same computation.
+     */
+    @Test(timeout = 10_000)
+    public void getAsyncComputesOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Memoizer<Long, Long> memoizer =
+            new Memoizer<>(key -> {
+                    calls.incrementAndGet();
+                    return key * 3;
+                });
+
+        List<Runnable> queued = new ArrayList<>();
+        CompletableFuture<Long> first = memoizer.getAsync(4L, queued::add);
+        CompletableFuture<Long> second = memoizer.getAsync(4L, queued::add);
+        assertFalse(first.isDone());
+        assertEquals(1, queued.size());
+
+        queued.get(0).run();
+        assertEquals(12L, (long) first.get());
+        assertEquals(12L, (long) second.get());
+        assertEquals(12L, (long) memoizer.get(4L));
+        assertEquals(1, calls.get());
+        assertEquals(1, memoizer.getStats().getInFlightWaits());
+    }
+
+    /**
+     * A key whose computation the executor rejects isn't left in the
+     * cache.
+     */
+    @Test(timeout = 10_000)
+    public void getAsyncForgetsRejectedKey() throws Exception {
+        Memoizer<Long, Long> memoizer = new Memoizer<>(key -> key);
+
+        try {
+            memoizer.getAsync(8L, command -> {
+                    throw new RejectedExecutionException("shut down");
+                }).get();
+            fail("expected an ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        assertEquals(8L, (long) memoizer.getAsync(8L, Runnable::run).get());
+    }
+
+    /**
+     * A value that's already computed is returned without using the
+     * executor, in a future that doesn't share the cached one.
+     */
+    @Test
+    public void getAsyncReturnsComputedValue() throws Exception {
+        Memoizer<Long, Long> memoizer = new Memoizer<>(key -> 2 * key);
+        assertEquals(18L, (long) memoizer.get(9L));
+
+        CompletableFuture<Long> future = memoizer.getAsync(9L, command -> {
+                throw new AssertionError("computed 9 again");
+            });
+        assertTrue(future.isDone());
+        future.obtrudeValue(0L);
+        assertEquals(18L, (long) memoizer.get(9L));
+    }
+
+    /**
+     * getAll() computes only the missing keys, once each, in a
+     * single call to the batch function, and falls back to the
+     * function for keys the batch leaves out.
+     */
+    @Test
+    public void getAllBatchesMissingKeys() {
+        AtomicInteger calls = new AtomicInteger();
+        Memoizer<Long, Long> memoizer =
+            new Memoizer<>(key -> {
+                    calls.incrementAndGet();
+                    return -key;
+                });
+        memoizer.get(1L);
+
+        List<Set<Long>> batches = new ArrayList<>();
+        Map<Long, Long> values =
+            memoizer.getAll(Arrays.asList(3L, 1L, 2L, 3L, 4L),
+                            keys -> {
+                                batches.add(new HashSet<>(keys));
+                                Map<Long, Long> batch = new HashMap<>();
+                                for (Long key : keys)
+                                    if (key != 4L)
+                                        batch.put(key, -key);
+                                return batch;
+                            });
+
+        assertEquals(Arrays.asList(3L, 1L, 2L, 4L),
+                     new ArrayList<>(values.keySet()));
+        for (Map.Entry<Long, Long> entry : values.entrySet())
+            assertEquals(-entry.getKey(), (long) entry.getValue());
+
+        assertEquals(1, batches.size());
+        assertEquals(new HashSet<>(Arrays.asList(2L, 3L, 4L)), batches.get(0));
+
+        // Key 1 was computed by get() and key 4 by the fallback.
+        assertEquals(2, calls.get());
+    }
+
+    /**
+     * A thread that asks for a key in a batch that's being computed
+     * waits for the batch instead of computing the key again.
+     */
+    @Test(timeout = 10_000)
+    public void getAllIsSingleFlight() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Memoizer<Long, Long> memoizer =
+            new Memoizer<>(key -> {
+                    calls.incrementAndGet();
+                    return key;
+                });
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread batcher = new Thread(() -> memoizer.getAll(Arrays.asList(5L, 6L), keys -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                Map<Long, Long> batch = new HashMap<>();
+                for (Long key : keys)
+                    batch.put(key, key);
+                return batch;
+            }));
+        batcher.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicReference<Long> value = new AtomicReference<>();
+        Thread waiter = new Thread(() -> value.set(memoizer.get(6L)));
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+
+        release.countDown();
+        waiter.join(5_000);
+        batcher.join(5_000);
+        assertEquals(6L, (long) value.get());
+        assertEquals(0, calls.get());
+        assertEquals(2, memoizer.getStats().getLoads());
+    }
+
+    /**
+     * A failed batch is reported to the caller and isn't cached.
+     */
+    @Test
+    public void getAllReportsFailedBatch() {
+        Memoizer<Long, Long> memoizer = new Memoizer<>(key -> key);
+
+        try {
+            memoizer.getAll(Arrays.asList(1L, 2L), keys -> {
+                    throw new IllegalStateException("batch failed");
+                });
+            fail("expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        assertEquals(2L, (long) memoizer.getAll(Arrays.asList(1L, 2L)).get(2L));
+    }
+
+    /**
+     * The statistics count the hits, misses, and loads, and can be
+     * reset.
+     */
+    @Test
+    public void countsStatistics() {
+        Memoizer<Long, Long> memoizer = new Memoizer<>(key -> key);
+        for (long key = 0; key < 4; ++key)
+            for (int i = 0; i < 3; ++i)
+                memoizer.get(key);
+
+        MemoizerStats stats = memoizer.getStats();
+        assertEquals(8, stats.getHits());
+        assertEquals(4, stats.getMisses());
+        assertEquals(4, stats.getLoads());
+        assertEquals(2.0 / 3, stats.getHitRate(), 1e-9);
+        assertEquals(0, stats.getInFlightWaits());
+        assertEquals(0, stats.getCancellations());
+        assertTrue(stats.toString(), stats.toString().contains("hits=8 (66.7%) misses=4"));
+
+        memoizer.resetStats();
+        stats = memoizer.getStats();
+        assertEquals(0, stats.getHits() + stats.getMisses() + stats.getLoads());
+        assertEquals(0, stats.getHitRate(), 0);
+        assertEquals(0, stats.getMeanLoadNanos(), 0);
+    }
+}
@@ -0,0 +1,71 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests MillerRabinPrimeChecker against a plain sieve and
+ * BigInteger.
+ */
+public class MillerRabinPrimeCheckerTest {
+    /**
+     * The reference sieve.
+     */
+    private static final PlainSieve sPlainSieve = new PlainSieve(1 << 21);
+
+    /**
+     * Composites that are strong pseudoprimes to several small
+     * bases, and Carmichael numbers, which fool weaker tests.
+     */
+    private static final long[] sPSEUDOPRIMES = {
+        2047L, 1373653L, 25326001L, 3215031751L, 2152302898747L,
+        3474749660383L, 341550071728321L, 3825123056546413051L,
+        561L, 41041L, 825265L, 321197185L, 5394826801L, 232250619601L
+    };
+
+    /**
+     * Every number covered by the sieve.
+     */
+    @Test
+    public void matchesSieve() {
+        MillerRabinPrimeChecker checker = new MillerRabinPrimeChecker();
+        for (long n = 0; n < sPlainSieve.limit(); ++n) {
+            assertEquals(n + "", sPlainSieve.isPrime(n), MillerRabinPrimeChecker.isPrime(n));
+            assertEquals(n + "", sPlainSieve.smallestFactor(n), checker.smallestFactor(n));
+        }
+    }
+
+    /**
+     * Composites that fool the test for too few witnesses.
+     */
+    @Test
+    public void rejectsPseudoprimes() {
+        for (long n : sPSEUDOPRIMES)
+            assertFalse(n + "", MillerRabinPrimeChecker.isPrime(n));
+    }
+
+    /**
+     * Random odd numbers over the whole range of a long, including
+     * the primes just below 2^63.
+     */
+    @Test
+    public void matchesBigInteger() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; ++i) {
+            long n = (random.nextLong() >>> 1) | 1;
+            assertEquals(n + "",
+                         BigInteger.valueOf(n).isProbablePrime(64),
+                         MillerRabinPrimeChecker.isPrime(n));
+        }
+
+        for (long n = Long.MAX_VALUE; n > Long.MAX_VALUE - 2_000; n -= 2)
+            assertEquals(n + "",
+                         BigInteger.valueOf(n).isProbablePrime(64),
+                         MillerRabinPrimeChecker.isPrime(n));
+    }
+}
@@ -0,0 +1,79 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the Montgomery arithmetic shared by MillerRabinPrimeChecker
+ * and PollardRhoPrimeChecker against BigInteger.
+ */
+public class MontgomeryTest {
+    /**
+     * Montgomery products and powers match BigInteger for random
+     * odd moduli of every size up to 2^63.
+     */
+    @Test
+    public void matchesBigInteger() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; ++i) {
+            int bits = 2 + random.nextInt(62);
+            long modulus = (random.nextLong() >>> (64 - bits)) | (1L << (bits - 1)) | 1;
+
+            Montgomery montgomery = new Montgomery(modulus);
+            long a = Long.remainderUnsigned(random.nextLong(), modulus);
+            long b = Long.remainderUnsigned(random.nextLong(), modulus);
+            long exponent = random.nextLong() >>> 1;
+
+            BigInteger m = BigInteger.valueOf(modulus);
+            BigInteger bigA = BigInteger.valueOf(a);
+
+            long product = fromMontgomery(montgomery,
+                                          montgomery.multiply(montgomery.toMontgomery(a),
+                                                              montgomery.toMontgomery(b)));
+            assertEquals(a + " * " + b + " mod " + modulus,
+                         bigA.multiply(BigInteger.valueOf(b)).mod(m).longValue(),
+                         product);
+
+            long power = fromMontgomery(montgomery,
+                                        montgomery.pow(montgomery.toMontgomery(a), exponent));
+            assertEquals(a + " ^ " + exponent + " mod " + modulus,
+                         bigA.modPow(BigInteger.valueOf(exponent), m).longValue(),
+                         power);
+        }
+    }
+
+    /**
+     * The high word of unsigned 128-bit products matches BigInteger.
+     */
+    @Test
+    public void multiplyHighUnsigned() {
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        Random random = new Random(11);
+        for (int i = 0; i < 20_000; ++i) {
+            long a = random.nextLong(), b = random.nextLong();
+            BigInteger product = unsigned(a).multiply(unsigned(b));
+            assertEquals(product.shiftRight(64).and(mask).longValue(),
+                         Montgomery.multiplyHighUnsigned(a, b));
+        }
+        assertEquals(-2L, Montgomery.multiplyHighUnsigned(-1L, -1L));
+    }
+
+    /**
+     * Returns @a x, which is in Montgomery form, as an ordinary
+     * residue.
+     */
+    private static long fromMontgomery(Montgomery montgomery, long x) {
+        return montgomery.multiply(x, 1);
+    }
+
+    /**
+     * Returns @a x as an unsigned BigInteger.
+     */
+    private static BigInteger unsigned(long x) {
+        return new BigInteger(Long.toUnsignedString(x));
+    }
+}
@@ -0,0 +1,89 @@
+package vandy.mooc.prime.utils;
+
+import java.util.Arrays;
+
+/**
+ * A plain sieve of Eratosthenes, which is slow but obviously correct,
+ * that the faster prime checking kernels are tested against.
+ */
+final class PlainSieve {
+    /**
+     * The smallest prime factor of each number below the limit, or 0
+     * if the number is 0, 1, or prime.
+     */
+    private final int[] mFactors;
+
+    /**
+     * The primes below the limit in ascending order.
+     */
+    private final int[] mPrimes;
+
+    /**
+     * Constructor sieves the numbers below @a limit.
+     */
+    PlainSieve(int limit) {
+        mFactors = new int[limit];
+        int[] primes = new int[limit];
+        int count = 0;
+
+        for (int i = 2; i < limit; ++i)
+            if (mFactors[i] == 0) {
+                primes[count++] = i;
+                for (long multiple = (long) i * i;
+                     multiple < limit;
+                     multiple += i)
+                    if (mFactors[(int) multiple] == 0)
+                        mFactors[(int) multiple] = i;
+            }
+
+        mPrimes = Arrays.copyOf(primes, count);
+    }
+
+    /**
+     * Returns the number of values the sieve covers.
+     */
+    int limit() {
+        return mFactors.length;
+    }
+
+    /**
+     * Returns 0 if @a n is prime or the smallest factor of @a n if it
+     * is not prime, following PrimeChecker's convention that numbers
+     * up to 3 are prime.  Numbers beyond the sieve are checked by
+     * dividing them by its primes, so @a n must be less than the
+     * square of the limit.
+     */
+    long smallestFactor(long n) {
+        if (n <= 3)
+            return 0;
+        if (n < mFactors.length)
+            return mFactors[(int) n];
+
+        if ((long) mFactors.length * mFactors.length <= n)
+            throw new IllegalArgumentException(n + " is too large for the sieve");
+
+        for (int prime : mPrimes) {
+            if ((long) prime * prime > n)
+                break;
+            if (n % prime == 0)
+                return prime;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns true if @a n is prime.
+     */
+    boolean isPrime(long n) {
+        return n >= 2 && (n <= 3 || smallestFactor(n) == 0);
+    }
+
+    /**
+     * Returns the number of primes up to @a x, which must be less
+     * than the limit.
+     */
+    int countPrimes(long x) {
+        int index = Arrays.binarySearch(mPrimes, (int) x);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+}
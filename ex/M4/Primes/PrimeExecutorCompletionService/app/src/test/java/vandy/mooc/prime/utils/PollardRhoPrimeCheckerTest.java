@@ -0,0 +1,85 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests PollardRhoPrimeChecker against a plain sieve and against
+ * composites whose smallest factor is known.
+ */
+public class PollardRhoPrimeCheckerTest {
+    /**
+     * The reference sieve.
+     */
+    private static final PlainSieve sPlainSieve = new PlainSieve(1 << 21);
+
+    /**
+     * Every number covered by the sieve.
+     */
+    @Test
+    public void matchesSieve() {
+        PollardRhoPrimeChecker checker = new PollardRhoPrimeChecker();
+        for (long n = 0; n < sPlainSieve.limit(); ++n)
+            assertEquals(n + "", sPlainSieve.smallestFactor(n), checker.smallestFactor(n));
+    }
+
+    /**
+     * Products of two random primes of up to 31 bits, which have no
+     * small factor for trial division to find.
+     */
+    @Test(timeout = 60_000)
+    public void findsSmallerFactorOfSemiprimes() {
+        PollardRhoPrimeChecker checker = new PollardRhoPrimeChecker();
+        Random random = new Random(42);
+        for (int i = 0; i < 2_000; ++i) {
+            long p = prime(11 + random.nextInt(21), random);
+            long q = prime(11 + random.nextInt(21), random);
+            assertEquals(p + " * " + q,
+                         Math.min(p, q),
+                         checker.smallestFactor(p * q));
+        }
+    }
+
+    /**
+     * Powers of a prime and products of three primes, where rho may
+     * split off the larger factors first.
+     */
+    @Test(timeout = 60_000)
+    public void findsSmallestFactorOfPowersAndTriples() {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; ++i) {
+            long p = prime(11 + random.nextInt(10), random);
+            long q = prime(11 + random.nextInt(10), random);
+            long r = prime(11 + random.nextInt(10), random);
+
+            assertEquals(p, PollardRhoPrimeChecker.smallestPrimeFactor(p * p));
+            assertEquals(p, PollardRhoPrimeChecker.smallestPrimeFactor(p * p * p));
+            assertEquals(Math.min(p, Math.min(q, r)),
+                         PollardRhoPrimeChecker.smallestPrimeFactor(r * q * p));
+        }
+
+        // The largest prime below 2^31, squared.
+        assertEquals(2147483647L,
+                     PollardRhoPrimeChecker.smallestPrimeFactor(2147483647L * 2147483647L));
+    }
+
+    /**
+     * A prime is its own smallest prime factor.
+     */
+    @Test
+    public void primeIsItsOwnFactor() {
+        assertEquals(Long.MAX_VALUE - 24,
+                     PollardRhoPrimeChecker.smallestPrimeFactor(Long.MAX_VALUE - 24));
+    }
+
+    /**
+     * Returns a random prime with @a bits bits.
+     */
+    private static long prime(int bits, Random random) {
+        return BigInteger.probablePrime(bits, random).longValue();
+    }
+}
@@ -0,0 +1,110 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests PrimeCounter against a plain sieve and against known values
+ * of pi(x).
+ */
+public class PrimeCounterTest {
+    /**
+     * The reference sieve, which covers values past the counter's
+     * own sieve limit of 2^20.
+     */
+    private static final PlainSieve sPlainSieve = new PlainSieve(1 << 23);
+
+    /**
+     * Number of threads in the pool.
+     */
+    private static final int sPARALLELISM = 4;
+
+    /**
+     * The pool the counts are computed on.
+     */
+    private final ExecutorService mExecutorService =
+        Executors.newFixedThreadPool(sPARALLELISM);
+
+    /**
+     * The counter being tested.
+     */
+    private final PrimeCounter mCounter =
+        new PrimeCounter(mExecutorService, sPARALLELISM);
+
+    @After
+    public void tearDown() {
+        mExecutorService.shutdownNow();
+    }
+
+    /**
+     * Every small value, values around the counter's sieve limit, and
+     * random values up to the reference sieve's limit.
+     */
+    @Test(timeout = 120_000)
+    public void matchesSieve() {
+        for (long x = 0; x < 10_000; ++x)
+            assertEquals(x + "", sPlainSieve.countPrimes(x), mCounter.count(x));
+
+        for (long x = (1 << 20) - 100; x < (1 << 20) + 100; ++x)
+            assertEquals(x + "", sPlainSieve.countPrimes(x), mCounter.count(x));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 200; ++i) {
+            long x = random.nextInt(sPlainSieve.limit());
+            assertEquals(x + "", sPlainSieve.countPrimes(x), mCounter.count(x));
+        }
+    }
+
+    /**
+     * Powers of 10 whose counts are well known.
+     */
+    @Test(timeout = 120_000)
+    public void matchesKnownValues() {
+        long[] counts = {
+            0L, 4L, 25L, 168L, 1_229L, 9_592L, 78_498L, 664_579L,
+            5_761_455L, 50_847_534L, 455_052_511L, 4_118_054_813L,
+            37_607_912_018L, 346_065_536_839L
+        };
+
+        long x = 1;
+        for (long count : counts) {
+            assertEquals(x + "", count, mCounter.count(x));
+            x *= 10;
+        }
+    }
+
+    /**
+     * The count doesn't depend on how many ranges it's divided into.
+     */
+    @Test(timeout = 120_000)
+    public void doesNotDependOnParallelism() {
+        PrimeCounter single = new PrimeCounter(mExecutorService, 1);
+        Random random = new Random(7);
+        for (int i = 0; i < 20; ++i) {
+            long x = 1_000_000_000L + (long) (random.nextDouble() * 9_000_000_000L);
+            assertEquals(x + "", single.count(x), mCounter.count(x));
+        }
+    }
+
+    /**
+     * Values outside the counter's range are rejected.
+     */
+    @Test
+    public void rejectsValuesOutOfRange() {
+        long[] invalid = { -1, PrimeCounter.sMAX_X + 1 };
+        for (long x : invalid)
+            try {
+                mCounter.count(x);
+                fail("counted " + x);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+    }
+}
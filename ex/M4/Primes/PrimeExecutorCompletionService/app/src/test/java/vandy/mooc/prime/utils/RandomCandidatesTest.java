@@ -0,0 +1,103 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that RandomCandidates generates the same candidates however
+ * the sequence is divided.
+ */
+public class RandomCandidatesTest {
+    /**
+     * Number of candidates in the sequence, which spans several
+     * blocks and ends partway through one.
+     */
+    private static final int sCOUNT = 5_000;
+
+    /**
+     * The sequence being tested.
+     */
+    private final RandomCandidates mCandidates =
+        new RandomCandidates(42, sCOUNT, 1_000, 1_000_000_000_000L);
+
+    /**
+     * Any range matches the same range of the whole sequence, and the
+     * candidates lie within the bounds.
+     */
+    @Test
+    public void rangesMatchWholeSequence() {
+        long[] all = mCandidates.toArray();
+        assertEquals(sCOUNT, all.length);
+        for (long candidate : all)
+            assertTrue(candidate >= 1_000 && candidate < 1_000_000_000_000L);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 500; ++i) {
+            int from = random.nextInt(sCOUNT + 1);
+            int to = from + random.nextInt(sCOUNT - from + 1);
+            assertArrayEquals("[" + from + ", " + to + ")",
+                              Arrays.copyOfRange(all, from, to),
+                              mCandidates.generate(from, to));
+        }
+    }
+
+    /**
+     * The candidates depend only on the seed.
+     */
+    @Test
+    public void seedDeterminesSequence() {
+        assertArrayEquals(mCandidates.toArray(),
+                          new RandomCandidates(42, sCOUNT, 1_000, 1_000_000_000_000L)
+                          .toArray());
+        assertFalse(Arrays.equals(mCandidates.toArray(),
+                                  new RandomCandidates(43, sCOUNT, 1_000, 1_000_000_000_000L)
+                                  .toArray()));
+    }
+
+    /**
+     * Skipping candidates, even repeatedly, leaves the rest of the
+     * sequence unchanged.
+     */
+    @Test
+    public void skipKeepsTheRest() {
+        long[] all = mCandidates.toArray();
+
+        RandomCandidates rest = mCandidates.skip(1_000).skip(100);
+        assertEquals(1_100, rest.getOffset());
+        assertEquals(sCOUNT - 1_100, rest.size());
+        assertArrayEquals(Arrays.copyOfRange(all, 1_100, sCOUNT), rest.toArray());
+        assertArrayEquals(Arrays.copyOfRange(all, 1_200, 1_300), rest.generate(100, 200));
+
+        assertEquals(0, mCandidates.skip(sCOUNT).toArray().length);
+    }
+
+    /**
+     * Ranges outside the sequence are rejected.
+     */
+    @Test
+    public void rejectsInvalidRanges() {
+        int[][] ranges = { { -1, 10 }, { 10, 5 }, { 0, sCOUNT + 1 } };
+        for (int[] range : ranges)
+            try {
+                mCandidates.generate(range[0], range[1]);
+                fail("generated [" + range[0] + ", " + range[1] + ")");
+            } catch (IndexOutOfBoundsException e) {
+                // Expected.
+            }
+
+        try {
+            mCandidates.skip(sCOUNT + 1);
+            fail("skipped " + (sCOUNT + 1));
+        } catch (IndexOutOfBoundsException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests SegmentedSieve against a plain sieve.
+ */
+public class SegmentedSieveTest {
+    /**
+     * The reference sieve, whose primes can check any candidate up to
+     * SegmentedSieve.sMAX_CANDIDATE.
+     */
+    private static final PlainSieve sPlainSieve = new PlainSieve((1 << 20) + 1);
+
+    /**
+     * Every number in a dense range, which shares a few windows.
+     */
+    @Test
+    public void denseRange() {
+        long[] candidates = LongStream.range(0, 200_000).toArray();
+        assertMatches(candidates);
+    }
+
+    /**
+     * Random candidates spread over the whole range of the sieve,
+     * which each get a window of their own.
+     */
+    @Test
+    public void sparseCandidates() {
+        Random random = new Random(42);
+        long[] candidates = new long[2_000];
+        for (int i = 0; i < candidates.length; ++i)
+            candidates[i] = (long) (random.nextDouble() * SegmentedSieve.sMAX_CANDIDATE);
+        candidates[0] = SegmentedSieve.sMAX_CANDIDATE;
+        assertMatches(candidates);
+    }
+
+    /**
+     * Candidates near the top of the range, both dense and with
+     * duplicates, in no particular order.
+     */
+    @Test
+    public void largeDuplicatedCandidates() {
+        long base = SegmentedSieve.sMAX_CANDIDATE - 100_000;
+        Random random = new Random(7);
+        long[] candidates = new long[5_000];
+        for (int i = 0; i < candidates.length; ++i)
+            candidates[i] = base + random.nextInt(20_000);
+        assertMatches(candidates);
+    }
+
+    /**
+     * Threads asking for results concurrently all see the same
+     * results.
+     */
+    @Test(timeout = 30_000)
+    public void concurrentLookups() throws Exception {
+        long[] candidates = LongStream.range(1_000_000_000L, 1_000_300_000L).toArray();
+        SegmentedSieve sieve = new SegmentedSieve(candidates);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                        for (int i = offset; i < candidates.length; i += 4)
+                            assertEquals(candidates[i] + "",
+                                         sPlainSieve.smallestFactor(candidates[i]),
+                                         sieve.smallestFactor(candidates[i]));
+                    }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Candidates outside the sieve's range are rejected.
+     */
+    @Test
+    public void rejectsOutOfRange() {
+        for (long candidate : new long[] { -1, SegmentedSieve.sMAX_CANDIDATE + 1 })
+            try {
+                new SegmentedSieve(new long[] { 5, candidate });
+                fail("accepted " + candidate);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+    }
+
+    /**
+     * Check that a SegmentedSieve over @a candidates agrees with the
+     * plain sieve on all of them.
+     */
+    private static void assertMatches(long[] candidates) {
+        SegmentedSieve sieve = new SegmentedSieve(candidates);
+        for (long candidate : candidates)
+            assertEquals(candidate + "",
+                         sPlainSieve.smallestFactor(candidate),
+                         sieve.smallestFactor(candidate));
+    }
+}
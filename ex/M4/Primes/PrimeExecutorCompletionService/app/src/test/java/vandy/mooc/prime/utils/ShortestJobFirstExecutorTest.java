@@ -0,0 +1,190 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the order a ShortestJobFirstExecutor runs its tasks in.  Each
+ * test blocks the pool's only thread until all its tasks are queued,
+ * so the order depends only on their priorities.
+ */
+public class ShortestJobFirstExecutorTest {
+    /**
+     * The names of the tasks, in the order they ran.
+     */
+    private final List<String> mOrder =
+        Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Released once all the tasks are queued.
+     */
+    private final CountDownLatch mQueued = new CountDownLatch(1);
+
+    /**
+     * The executor being tested.
+     */
+    private ShortestJobFirstExecutor mExecutor;
+
+    /**
+     * A task that records its name when it runs.
+     */
+    private class Task
+            implements Runnable, ShortestJobFirstExecutor.Job {
+        /**
+         * Name recorded when the task runs.
+         */
+        final String mName;
+
+        /**
+         * Estimated cost of the task.
+         */
+        final long mCost;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        Task(String name, long cost) {
+            mName = name;
+            mCost = cost;
+        }
+
+        @Override
+        public long estimatedCost() {
+            return mCost;
+        }
+
+        @Override
+        public void run() {
+            mOrder.add(mName);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (mExecutor != null)
+            mExecutor.shutdownNow();
+    }
+
+    /**
+     * Without enough time to age, the cheapest tasks run first, and
+     * tasks of the same cost run in submission order.
+     */
+    @Test(timeout = 10_000)
+    public void runsCheapestFirst() throws Exception {
+        block(TimeUnit.SECONDS.toNanos(1));
+        mExecutor.submit(new Task("5", 5));
+        mExecutor.submit(new Task("3", 3));
+        mExecutor.execute(new Task("1a", 1));
+        mExecutor.submit(new Task("4", 4));
+        mExecutor.submit(new Task("1b", 1));
+        mExecutor.submit(() -> mOrder.add("free"));
+
+        assertEquals(Arrays.asList("free", "1a", "1b", "3", "4", "5"),
+                     runAll());
+    }
+
+    /**
+     * A task that's waited longer than its extra cost times the aging
+     * rate runs before a cheaper task submitted after it.
+     */
+    @Test(timeout = 10_000)
+    public void expensiveTaskAges() throws Exception {
+        // Each unit of cost is worth a microsecond of waiting.
+        block(TimeUnit.MICROSECONDS.toNanos(1));
+        mExecutor.submit(new Task("expensive", 1_000));
+        Thread.sleep(20);
+        mExecutor.submit(new Task("cheap", 0));
+        mExecutor.submit(new Task("cheaper", 0));
+
+        assertEquals(Arrays.asList("expensive", "cheap", "cheaper"),
+                     runAll());
+    }
+
+    /**
+     * An enormous cost saturates rather than overflowing into a
+     * negative priority that would run first.
+     */
+    @Test(timeout = 10_000)
+    public void saturatesEnormousCosts() throws Exception {
+        block(Long.MAX_VALUE / 2);
+        mExecutor.submit(new Task("enormous", Long.MAX_VALUE));
+        mExecutor.submit(new Task("cheap", 1));
+
+        assertEquals(Arrays.asList("cheap", "enormous"), runAll());
+    }
+
+    /**
+     * An exception thrown by a task is captured by its future, and a
+     * task run by execute() that throws doesn't stop later tasks.
+     */
+    @Test(timeout = 10_000)
+    public void capturesExceptions() throws Exception {
+        block(1);
+        Future<?> failed = mExecutor.submit(() -> {
+                throw new IllegalStateException("failed");
+            });
+        mExecutor.execute(() -> {
+                throw new IllegalStateException("ignored");
+            });
+        mExecutor.execute(new Task("after", 1));
+
+        assertEquals(Collections.singletonList("after"), runAll());
+        try {
+            failed.get();
+            fail("no ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * The aging rate must be positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidAging() {
+        new ShortestJobFirstExecutor(1, 0);
+    }
+
+    /**
+     * Create a one-thread executor whose tasks' priorities improve by
+     * one unit of cost every @a agingNanos nanoseconds, and block its
+     * thread until runAll() is called.
+     */
+    private void block(long agingNanos) throws InterruptedException {
+        mExecutor = new ShortestJobFirstExecutor(1, agingNanos);
+        CountDownLatch blocked = new CountDownLatch(1);
+        mExecutor.execute(() -> {
+                blocked.countDown();
+                try {
+                    mQueued.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        blocked.await();
+    }
+
+    /**
+     * Release the executor's thread and return the names of the
+     * tasks in the order they ran.
+     */
+    private List<String> runAll() throws InterruptedException {
+        mQueued.countDown();
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        return new ArrayList<>(mOrder);
+    }
+}
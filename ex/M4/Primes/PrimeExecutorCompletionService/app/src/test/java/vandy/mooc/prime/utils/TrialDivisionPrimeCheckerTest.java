@@ -0,0 +1,138 @@
+package vandy.mooc.prime.utils;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests TrialDivisionPrimeChecker against a plain sieve, on both
+ * sides of the end of its prime table at 2^16.
+ */
+public class TrialDivisionPrimeCheckerTest {
+    /**
+     * The reference sieve.
+     */
+    private static final PlainSieve sPlainSieve = new PlainSieve(1 << 21);
+
+    /**
+     * Every number covered by the sieve.
+     */
+    @Test
+    public void matchesSieve() {
+        TrialDivisionPrimeChecker checker = new TrialDivisionPrimeChecker();
+        for (long n = 0; n < sPlainSieve.limit(); ++n)
+            assertEquals(n + "", sPlainSieve.smallestFactor(n), checker.smallestFactor(n));
+    }
+
+    /**
+     * Numbers of at least 2^32 whose smallest factor is beyond the
+     * table, so it's found by the odd divisors.
+     */
+    @Test(timeout = 60_000)
+    public void findsFactorsBeyondTable() {
+        TrialDivisionPrimeChecker checker = new TrialDivisionPrimeChecker();
+
+        // The last prime in the table and the first one beyond it,
+        // squared.
+        assertEquals(65521, checker.smallestFactor(65521L * 65521));
+        assertEquals(65537, checker.smallestFactor(65537L * 65537));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 200; ++i) {
+            long p = prime(17 + random.nextInt(3), random);
+            long q = prime(17 + random.nextInt(3), random);
+            long n = p * q;
+            assertEquals(p + " * " + q, sPlainSieve.smallestFactor(n), checker.smallestFactor(n));
+            assertEquals(p + " * " + q, Math.min(p, q), checker.smallestFactor(n));
+        }
+    }
+
+    /**
+     * Primes of at least 2^32, which need every odd divisor up to
+     * their square root.
+     */
+    @Test(timeout = 60_000)
+    public void findsPrimesBeyondTable() {
+        TrialDivisionPrimeChecker checker = new TrialDivisionPrimeChecker();
+        Random random = new Random(7);
+        for (int i = 0; i < 50; ++i) {
+            long p = prime(33 + random.nextInt(8), random);
+            assertEquals(p + "", 0, checker.smallestFactor(p));
+        }
+    }
+
+    /**
+     * A check that runs out of time reports the bound below which the
+     * candidate has no factor.
+     */
+    @Test
+    public void reportsDeadline() {
+        long prime = 1_099_511_627_791L;
+        try {
+            new TrialDivisionPrimeChecker(1).smallestFactor(prime);
+            fail("no DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertEquals(prime, e.getCandidate());
+            assertTrue(e.getNoFactorBelow() >= 2);
+            assertTrue(e.getNoFactorBelow() <= 1 << 20);
+        }
+    }
+
+    /**
+     * An interrupted thread stops checking.
+     */
+    @Test
+    public void stopsWhenInterrupted() {
+        Thread.currentThread().interrupt();
+        try {
+            new TrialDivisionPrimeChecker().smallestFactor(1_099_511_627_791L);
+            fail("no CancellationException");
+        } catch (CancellationException e) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    /**
+     * The estimates find the smallest primes' multiples right away,
+     * don't decrease as primes grow, and are near the number of
+     * divisions done for primes.
+     */
+    @Test
+    public void estimatesDivisions() {
+        assertEquals(0, TrialDivisionPrimeChecker.estimateDivisions(3));
+        assertEquals(1, TrialDivisionPrimeChecker.estimateDivisions(1L << 40));
+        assertEquals(2, TrialDivisionPrimeChecker.estimateDivisions(3 * 1_000_003L));
+
+        long previous = 0;
+        for (long n = 101; n < sPlainSieve.limit(); n += 2)
+            if (sPlainSieve.isPrime(n)) {
+                long estimate = TrialDivisionPrimeChecker.estimateDivisions(n);
+                assertTrue(n + "", estimate >= previous);
+                previous = estimate;
+
+                // The divisions are by the primes up to the square
+                // root.
+                int divisions = sPlainSieve.countPrimes((long) Math.sqrt(n));
+                assertTrue(n + ": " + estimate + " vs " + divisions,
+                           estimate >= divisions / 2 && estimate <= divisions * 2);
+            }
+
+        // Beyond the table each odd divisor counts.
+        long estimate = TrialDivisionPrimeChecker.estimateDivisions(1_099_511_627_791L);
+        assertTrue(estimate + "", estimate >= (1 << 19) - (1 << 15));
+        assertTrue(estimate + "", estimate >= previous);
+    }
+
+    /**
+     * Returns a random prime with @a bits bits.
+     */
+    private static long prime(int bits, Random random) {
+        return BigInteger.probablePrime(bits, random).longValue();
+    }
+}
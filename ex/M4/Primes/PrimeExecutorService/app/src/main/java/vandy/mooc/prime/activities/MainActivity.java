@@ -12,24 +12,30 @@ import android.widget.EditText;
 import android.widget.ScrollView;
 import android.widget.TextView;
 
+import java.io.File;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import vandy.mooc.prime.R;
+import vandy.mooc.prime.utils.AdaptiveThreadPool;
+import vandy.mooc.prime.utils.JobCheckpoint;
+import vandy.mooc.prime.utils.PollardRhoPrimeChecker;
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.RandomCandidates;
 import vandy.mooc.prime.utils.UiUtils;
 
 import static java.util.stream.Collectors.toList;
 
 /**
  * Main activity for an app that shows how to use the Java
- * ExecutorService interface and a fixed-size thread pool to determine
+ * ExecutorService interface and an adaptively sized thread pool to determine
  * if n random numbers are prime or not.  The user can interrupt the
  * thread performing this computation at any point and the thread will
  * also be interrupted when the activity is destroyed.  In addition,
- * runtime configuration changes are handled gracefully.
+ * runtime configuration changes are handled gracefully, and the
+ * results are checkpointed so a job that's lost when the process is
+ * killed resumes the next time the app is launched.
  */
 public class MainActivity 
        extends LifecycleLoggingActivity {
@@ -39,6 +45,12 @@ public class MainActivity
      */
     private final static int sDEFAULT_COUNT = 50;
 
+    /**
+     * Name of the file that checkpoints the results of the current
+     * job, so it can be resumed if the process is killed.
+     */
+    private final static String sCHECKPOINT_FILE_NAME = "primes.checkpoint";
+
     /**
      * An EditText field uesd to enter the desired number of iterations.
      */
@@ -79,13 +91,18 @@ public class MainActivity
          * Reference to the ExecutorService that runs the prime
          * computations.
          */
-        ExecutorService mExecutorService;
+        AdaptiveThreadPool mExecutorService;
 
         /**
          * This runnable executes in a background thread to get the
          * results of the futures.
          */
         FutureRunnable mFutureRunnable;
+
+        /**
+         * Records the results so the job can be resumed.
+         */
+        JobCheckpoint mCheckpoint;
     }
 
     /**
@@ -120,7 +137,20 @@ public class MainActivity
 
             // Show the "startOrStop" FAB.
             UiUtils.showFab(mStartOrStopFab);
-        } 
+        } else {
+            // Resume the job that was running when the process was
+            // last killed, if there was one.  Only the header of the
+            // checkpoint is read, so this is cheap.
+            JobCheckpoint checkpoint =
+                JobCheckpoint.resume(new File(getFilesDir(),
+                                              sCHECKPOINT_FILE_NAME));
+            if (checkpoint != null) {
+                startComputations(checkpoint);
+
+                // Show the "startOrStop" FAB.
+                UiUtils.showFab(mStartOrStopFab);
+            }
+        }
     }
 
     /**
@@ -239,43 +269,91 @@ public class MainActivity
             UiUtils.showToast(this,
                               "Please specify a count value that's > 0");
         else {
-            // Allocate the state that's retained across runtime
-            // configuration changes.
-            mRetainedState = new RetainedState();
-
-            // Allocate a thread pool with an extra thread for the
-            // "future waiter" task.
-            mRetainedState.mExecutorService = 
-                Executors.newFixedThreadPool(Runtime.getRuntime()
-                                             .availableProcessors() + 1);
-
-            // Create a list of futures that will contain the results
-            // of concurrently checking the primality of "count"
-            // random numbers.
-            final List<Future<PrimeCallable.PrimeResult>> futures = new Random()
-                // Generate "count" random between 0 and MAX_VALUE.
-                .longs(count, 0, Integer.MAX_VALUE)
-
-                // Convert each random number into a PrimeCallable.
-                .mapToObj(PrimeCallable::new)
-
-                // Submit each PrimeCallable to the ExecutorService.
-                .map(mRetainedState.mExecutorService::submit)
-
-                // Collect the results into a list of futures.
-                .collect(toList());
-
-            // Store the FutureRunnable in a field so it can be updated during a runtime configuration change.
-            mRetainedState.mFutureRunnable = new FutureRunnable(this,
-                                                                futures);
-
-            // Execute a runnable that waits for all the
-            // future results in the background so it doesn't block
-            // the UI thread.
-            mRetainedState.mExecutorService.execute(mRetainedState.mFutureRunnable);
+            // Describe "count" random numbers between 0 and
+            // MAX_VALUE, which each chunk generates for itself when it
+            // runs, so the UI thread doesn't spend longer starting
+            // the computations as count grows.
+            RandomCandidates candidates =
+                new RandomCandidates(new Random().nextLong(),
+                                     count,
+                                     0,
+                                     Integer.MAX_VALUE);
+
+            // Checkpoint a new job that checks the candidates, which
+            // replaces the checkpoint of any earlier job.
+            startComputations(new JobCheckpoint(new File(getFilesDir(),
+                                                         sCHECKPOINT_FILE_NAME),
+                                                candidates));
         }
+    }
 
-        println("Starting primality computations");
+    /**
+     * Start or resume the prime computations of the job recorded by
+     * @a checkpoint.
+     */
+    private void startComputations(JobCheckpoint checkpoint) {
+        // Allocate the state that's retained across runtime
+        // configuration changes.
+        mRetainedState = new RetainedState();
+        mRetainedState.mCheckpoint = checkpoint;
+
+        // Only report the latencies of this run's tasks.
+        PrimeChunkCallable.latencies().reset();
+
+        // Allocate a thread pool that starts with an extra thread
+        // for the "future waiter" task and then adapts its size
+        // to the throughput of the prime computations.  It never
+        // drops below 2 threads, since the waiter blocks one.
+        int processors = Runtime.getRuntime().availableProcessors();
+        mRetainedState.mExecutorService = 
+            new AdaptiveThreadPool(2,
+                                   processors + 1,
+                                   2 * processors + 1);
+
+        // Only check the candidates that the job hasn't already
+        // checked.
+        RandomCandidates candidates = checkpoint.getRemaining();
+
+        // Choose the strategy that checks the candidates, which
+        // by default is a Miller-Rabin test (backed by Pollard's
+        // rho for composites) since the candidates are too sparse
+        // to benefit from sieving them in batches.
+        PrimeChecker primeChecker = new PollardRhoPrimeChecker();
+
+        // Create a list of futures that will contain the results
+        // of concurrently checking the primality of the
+        // candidates, split into chunks so each task checks a
+        // range of candidates rather than just one.
+        final List<Future<List<PrimeCallable.PrimeResult>>> futures =
+            PrimeChunkCallable.makeChunks(candidates,
+                                          chunkCandidates -> primeChecker,
+                                          processors)
+            .stream()
+
+            // Submit each PrimeChunkCallable to the ExecutorService.
+            .map(mRetainedState.mExecutorService::submit)
+
+            // Collect the results into a list of futures.
+            .collect(toList());
+
+        // Store the FutureRunnable in a field so it can be updated during a runtime configuration change.
+        mRetainedState.mFutureRunnable = new FutureRunnable(this,
+                                                            futures,
+                                                            checkpoint);
+
+        // Execute a runnable that waits for all the
+        // future results in the background so it doesn't block
+        // the UI thread.
+        mRetainedState.mExecutorService.execute(mRetainedState.mFutureRunnable);
+
+        if (checkpoint.getCursor() > 0)
+            println("Resuming primality computations after "
+                    + checkpoint.getCursor()
+                    + " of "
+                    + checkpoint.getCandidates().size()
+                    + " candidates");
+        else
+            println("Starting primality computations");
 
         // Update the start/stop FAB to display a stop icon.
         mStartOrStopFab.setImageResource(R.drawable.ic_media_stop);
@@ -288,9 +366,10 @@ public class MainActivity
     static private class FutureRunnable 
                    implements Runnable {
         /**
-         * List of futures to the results of the PrimeCallable computations.
+         * List of futures to the results of the PrimeChunkCallable
+         * computations.
          */
-        List<Future<PrimeCallable.PrimeResult>> mFutures;
+        List<Future<List<PrimeCallable.PrimeResult>>> mFutures;
 
         /**
          * Reference back to the enclosing activity.
@@ -298,12 +377,19 @@ public class MainActivity
         MainActivity mActivity;
 
         /**
-         * Constructor initializes the field.
+         * Records the results so the job can be resumed.
+         */
+        JobCheckpoint mCheckpoint;
+
+        /**
+         * Constructor initializes the fields.
          */
         public FutureRunnable(MainActivity activity,
-                              List<Future<PrimeCallable.PrimeResult>> futures) {
+                              List<Future<List<PrimeCallable.PrimeResult>>> futures,
+                              JobCheckpoint checkpoint) {
             mActivity = activity;
             mFutures = futures;
+            mCheckpoint = checkpoint;
         }
 
         /**
@@ -319,27 +405,50 @@ public class MainActivity
         @Override
         public void run() {
             // Iterate through all the futures to get the results.
-            for (Future<PrimeCallable.PrimeResult> f : mFutures) {
+            for (Future<List<PrimeCallable.PrimeResult>> f : mFutures) {
                 try {
                     // This call will block until the future is triggered.
-                    PrimeCallable.PrimeResult result = f.get();
-
-                    if (result.mSmallestFactor != 0)
-                        mActivity.println(""
-                                          + result.mPrimeCandidate
+                    List<PrimeCallable.PrimeResult> results = f.get();
+
+                    // Print the whole chunk at once so the UI thread
+                    // is only posted to once per chunk.
+                    StringBuilder output = new StringBuilder();
+                    for (PrimeCallable.PrimeResult result : results) {
+                        // The futures are waited for in order, so the
+                        // results are recorded in order.
+                        mCheckpoint.record(result.mPrimeCandidate,
+                                           result.mSmallestFactor);
+
+                        if (output.length() > 0)
+                            output.append('\n');
+
+                        if (result.mSmallestFactor != 0)
+                            output.append(result.mPrimeCandidate
                                           + " is not prime with smallest factor "
                                           + result.mSmallestFactor);
-                    else
-                        mActivity.println(""
-                                          + result.mPrimeCandidate
+                        else
+                            output.append(result.mPrimeCandidate
                                           + " is prime");
+                    }
+
+                    if (output.length() > 0)
+                        mActivity.println(output.toString());
                 } catch (InterruptedException e) {
                     return;
                 } catch (Exception e) {
                     e.printStackTrace();
+
+                    // Stop recording, since recording the later
+                    // chunks' results would leave a gap, but keep the
+                    // checkpoint so the job can be retried from here.
+                    mCheckpoint.close();
                 }
             }
 
+            // The job is finished, so there's nothing to resume.
+            // This has no effect if the checkpoint was closed above.
+            mCheckpoint.discard();
+
             // Finish up and reset the UI.
             mActivity.done();
         }
@@ -349,6 +458,9 @@ public class MainActivity
      * Stop the prime computations.
      */
     private void interruptComputations() {
+        // The user abandoned the job, so don't resume it.
+        mRetainedState.mCheckpoint.discard();
+
         // Interrupt the prime thread.
         mRetainedState.mExecutorService.shutdownNow();
 
@@ -365,12 +477,26 @@ public class MainActivity
     public void done() {
         // Create a command to reset the UI.
         Runnable command = () -> {
+            // Both an interrupt and the end of the computations call
+            // done(), so the UI may already have been reset.
+            if (mRetainedState == null)
+                return;
+
+            // Get the size the thread pool chose before nulling out
+            // the reference to it.
+            String poolSize =
+                mRetainedState.mExecutorService.getSizeSummary();
+
             // Null out the reference to avoid later problems.
             mRetainedState = null;
 
             // Append the stringToPrint and terminate it with a
-            // newline.
-            mTextViewLog.append("Finished primality computations\n");
+            // newline, followed by how long the tasks waited to run
+            // and then ran, which shows whether the pool needs more
+            // threads or the tasks need a faster algorithm.
+            mTextViewLog.append("Finished primality computations\n"
+                                + PrimeChunkCallable.latencies() + "\n"
+                                + poolSize + "\n");
             mScrollView.fullScroll(ScrollView.FOCUS_DOWN);
 
             // Reset the start/stop FAB to the play icon.
@@ -426,7 +552,11 @@ public class MainActivity
         if (mRetainedState != null
             && !isChangingConfigurations()) {
             // Interrupt the ExecutorService since the activity is
-            // being destroyed.
+            // being destroyed.  Close the checkpoint first, so the
+            // partial results of interrupted chunks aren't recorded
+            // and the job resumes from the last complete chunk the
+            // next time the app is launched.
+            mRetainedState.mCheckpoint.close();
             mRetainedState.mExecutorService.shutdownNow();
 
             Log.d(TAG,
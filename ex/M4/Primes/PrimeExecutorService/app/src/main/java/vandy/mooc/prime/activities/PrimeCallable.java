@@ -1,12 +1,14 @@
 package vandy.mooc.prime.activities;
 
-import android.util.Log;
-
 import java.util.concurrent.Callable;
 
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.TrialDivisionPrimeChecker;
+
 /**
- * Uses a brute-force algorithm to determine if a given number is
- * prime or not.
+ * Uses a PrimeChecker strategy to determine if a given number is
+ * prime or not, which defaults to trial division by the primes up to
+ * its square root.
  */
 public class PrimeCallable
        implements Callable<PrimeCallable.PrimeResult> {
@@ -21,6 +23,11 @@ public class PrimeCallable
      */
     private final long mPrimeCandidate;
 
+    /**
+     * Strategy used to determine if mPrimeCandidate is prime or not.
+     */
+    private final PrimeChecker mPrimeChecker;
+
     /**
      * The result returned via the future.
      */
@@ -49,30 +56,19 @@ public class PrimeCallable
      */
     public PrimeCallable(long primeCandidate) {
         mPrimeCandidate = primeCandidate;
+        mPrimeChecker = new TrialDivisionPrimeChecker();
     }
-    
+
     /**
-     * This method provides a brute-force determination of whether
-     * number @a n is prime.  Returns 0 if it is prime, or the
-     * smallest factor if it is not prime. 
+     * Constructor initializes the fields so that @a primeCandidate is
+     * checked by the given @a primeChecker strategy.
      */
-    private long isPrime(long n) {
-        if (n > 3)
-            for (long factor = 2;
-                 factor <= n / 2; 
-                 ++factor)
-                if ((factor % (n / 10)) == 0
-                    && Thread.interrupted()) {
-                    Log.d(TAG,
-                          "Thread interrupted "
-                          + Thread.currentThread());
-                    break;
-                } else if (n / factor * factor == n)
-                    return factor;
-
-        return 0;
+    public PrimeCallable(long primeCandidate,
+                         PrimeChecker primeChecker) {
+        mPrimeCandidate = primeCandidate;
+        mPrimeChecker = primeChecker;
     }
-
+    
     /**
      * Hook method that determines if a given number is prime.
      * Returns 0 if it is prime or the smallest factor if it is not
@@ -84,6 +80,6 @@ public class PrimeCallable
         return new PrimeResult(mPrimeCandidate,
                                // Determine if mPrimeCandidate is
                                // prime or not.
-                               isPrime(mPrimeCandidate));
+                               mPrimeChecker.smallestFactor(mPrimeCandidate));
     }
 }
@@ -0,0 +1,62 @@
+package vandy.mooc.prime.utils;
+
+/**
+ * This class sizes chunks of work so that each one takes roughly a
+ * target amount of time to run.  It keeps an exponentially weighted
+ * moving average of the time taken per item, which is updated as
+ * each chunk finishes, so chunk sizes adapt to the cost of the work
+ * and the speed of the device.
+ */
+public class ChunkSizer {
+    /**
+     * Weight given to the newest measurement in the moving average.
+     */
+    private static final double sSMOOTHING = 0.25;
+
+    /**
+     * Minimum number of chunks per thread, which ensures the work is
+     * still spread evenly over the threads when each item is cheap.
+     */
+    private static final int sMIN_CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Target time to run each chunk, in nanoseconds.
+     */
+    private final long mTargetNanos;
+
+    /**
+     * Current estimate of the time taken per item, in nanoseconds.
+     * Concurrent updates may occasionally be lost, which is harmless
+     * for an estimate.
+     */
+    private volatile double mNanosPerItem;
+
+    /**
+     * Constructor initializes the fields.
+     */
+    public ChunkSizer(long targetNanos,
+                      double initialNanosPerItem) {
+        mTargetNanos = targetNanos;
+        mNanosPerItem = initialNanosPerItem;
+    }
+
+    /**
+     * Returns the number of items to put in each chunk when @a count
+     * items are processed by @a parallelism threads.
+     */
+    public int chunkSize(int count, int parallelism) {
+        long size = (long) (mTargetNanos / Math.max(1.0, mNanosPerItem));
+        long maxSize =
+            Math.max(1, count / ((long) sMIN_CHUNKS_PER_THREAD * parallelism));
+        return (int) Math.max(1, Math.min(size, maxSize));
+    }
+
+    /**
+     * Record that a chunk of @a items took @a elapsedNanos to run.
+     */
+    public void record(int items, long elapsedNanos) {
+        if (items > 0)
+            mNanosPerItem = sSMOOTHING * elapsedNanos / items
+                + (1 - sSMOOTHING) * mNanosPerItem;
+    }
+}
@@ -0,0 +1,170 @@
+package vandy.mooc.prime.utils;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, in the style of
+ * HdrHistogram.  Values below 128 each have their own bucket, and
+ * every larger power of 2 is split into 64 buckets, so any value is
+ * reported to within 1.6% using a fixed array of a few thousand
+ * counts.  Recording a value is lock-free and only increments one
+ * count, and histograms recorded by different threads can be merged
+ * by adding their counts.
+ */
+public class LatencyHistogram {
+    /**
+     * Number of bits of each value that select its bucket.
+     */
+    private static final int sSUB_BUCKET_BITS = 7;
+
+    /**
+     * Number of values below which each value has its own bucket.
+     */
+    private static final int sSUB_BUCKETS = 1 << sSUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets each larger power of 2 is split into.
+     */
+    private static final int sHALF_SUB_BUCKETS = sSUB_BUCKETS / 2;
+
+    /**
+     * Total number of buckets, which covers every non-negative long.
+     */
+    private static final int sBUCKETS =
+        sSUB_BUCKETS + (Long.SIZE - sSUB_BUCKET_BITS) * sHALF_SUB_BUCKETS;
+
+    /**
+     * Number of values recorded in each bucket.
+     */
+    private final AtomicLongArray mCounts = new AtomicLongArray(sBUCKETS);
+
+    /**
+     * Number of values recorded.
+     */
+    private final AtomicLong mTotalCount = new AtomicLong();
+
+    /**
+     * Largest value recorded, which is kept exactly.
+     */
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Record @a nanos, treating negative values as 0.
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        mCounts.incrementAndGet(indexOf(nanos));
+        mTotalCount.incrementAndGet();
+        mMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Add all the values recorded by @a other to this histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < sBUCKETS; ++i) {
+            long count = other.mCounts.get(i);
+            if (count != 0)
+                mCounts.addAndGet(i, count);
+        }
+        mTotalCount.addAndGet(other.mTotalCount.get());
+        mMax.accumulateAndGet(other.mMax.get(), Math::max);
+    }
+
+    /**
+     * Discard all the recorded values.  Values recorded concurrently
+     * may or may not be discarded.
+     */
+    public void reset() {
+        for (int i = 0; i < sBUCKETS; ++i)
+            mCounts.set(i, 0);
+        mTotalCount.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * Returns the number of values recorded.
+     */
+    public long getTotalCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * Returns the largest value recorded, or 0 if there are none.
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Returns the value that @a percentile percent of the recorded
+     * values are less than or equal to, to within the precision of
+     * the histogram, or 0 if there are none.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long totalCount = mTotalCount.get();
+        if (totalCount == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+        long count = 0;
+        for (int i = 0; i < sBUCKETS; ++i) {
+            count += mCounts.get(i);
+            if (count >= rank)
+                return Math.min(highestValueIn(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns a summary of the p50, p99, and max values in
+     * milliseconds.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                             "p50 %s, p99 %s, max %s (%d tasks)",
+                             format(getValueAtPercentile(50)),
+                             format(getValueAtPercentile(99)),
+                             format(getMax()),
+                             getTotalCount());
+    }
+
+    /**
+     * Returns the index of the bucket that holds @a value.
+     */
+    private static int indexOf(long value) {
+        if (value < sSUB_BUCKETS)
+            return (int) value;
+
+        // Keep the top sSUB_BUCKET_BITS - 1 bits below the leading 1.
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - sSUB_BUCKET_BITS;
+        return sSUB_BUCKETS
+            + (shift - 1) * sHALF_SUB_BUCKETS
+            + (int) (value >>> shift) - sHALF_SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the largest value held by the bucket at @a index.
+     */
+    private static long highestValueIn(int index) {
+        if (index < sSUB_BUCKETS)
+            return index;
+
+        int shift = (index - sSUB_BUCKETS) / sHALF_SUB_BUCKETS + 1;
+        long subBucket = (index - sSUB_BUCKETS) % sHALF_SUB_BUCKETS + sHALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns @a nanos formatted in milliseconds.
+     */
+    private static String format(long nanos) {
+        return String.format(Locale.ROOT,
+                             "%.3f ms",
+                             nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,107 @@
+package vandy.mooc.prime.utils;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Uses a deterministic variant of the Miller-Rabin test to determine
+ * if a given number is prime or not.  Testing against the first 12
+ * primes as witnesses gives the correct answer for every positive
+ * long, and all modular multiplications are done in Montgomery form
+ * so they can't overflow.  If the number is composite its smallest
+ * factor is then found by a separate search, which by default is a
+ * trial division bounded by its square root.  More information on
+ * the Miller-Rabin test is available at
+ * https://en.wikipedia.org/wiki/Miller%E2%80%93Rabin_primality_test.
+ */
+public class MillerRabinPrimeChecker
+       implements PrimeChecker {
+    /**
+     * Witnesses that make the Miller-Rabin test deterministic for all
+     * n < 3.3 * 10^24, which covers the full range of a long.
+     */
+    private static final long[] sWITNESSES = {
+        2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37
+    };
+
+    /**
+     * Number of trial divisors tested between checks for thread
+     * interruption.
+     */
+    private static final int sINTERRUPT_CHECK_INTERVAL = 1 << 16;
+
+    /**
+     * Returns 0 if @a n is prime or the smallest factor of @a n if
+     * it is not prime.
+     */
+    @Override
+    public long smallestFactor(long n) {
+        if (n <= 3 || isPrime(n))
+            return 0;
+        else
+            return smallestFactorOfComposite(n);
+    }
+
+    /**
+     * Returns true if @a n is prime, else false.
+     */
+    public static boolean isPrime(long n) {
+        if (n < 2)
+            return false;
+
+        // The witnesses double as a quick trial division, which also
+        // guarantees n is odd and coprime to every witness below.
+        for (long witness : sWITNESSES)
+            if (n % witness == 0)
+                return n == witness;
+
+        // Write n - 1 as d * 2^s with d odd.
+        int s = Long.numberOfTrailingZeros(n - 1);
+        long d = (n - 1) >>> s;
+
+        Montgomery montgomery = new Montgomery(n);
+
+        for (long witness : sWITNESSES) {
+            long x = montgomery.pow(montgomery.toMontgomery(witness), d);
+
+            if (x == montgomery.mOne || x == montgomery.mMinusOne)
+                continue;
+
+            boolean composite = true;
+            for (int r = 1; r < s && composite; ++r) {
+                x = montgomery.multiply(x, x);
+                if (x == montgomery.mMinusOne)
+                    composite = false;
+            }
+
+            if (composite)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the smallest factor of composite @a n by trial division
+     * with 2 and the odd numbers up to the square root of @a n.
+     * Subclasses can override this hook method to use a faster
+     * factoring algorithm.
+     */
+    protected long smallestFactorOfComposite(long n) {
+        if ((n & 1) == 0)
+            return 2;
+
+        long limit = (long) Math.sqrt((double) n);
+        for (long factor = 3; factor <= limit + 1; factor += 2) {
+            if ((factor & (sINTERRUPT_CHECK_INTERVAL - 1)) == 1
+                && Thread.currentThread().isInterrupted())
+                throw new CancellationException
+                    ("interrupted while factoring " + n);
+
+            if (n % factor == 0)
+                return factor;
+        }
+
+        // Only reached if n is really prime.
+        return 0;
+    }
+}
@@ -0,0 +1,173 @@
+package vandy.mooc.prime.utils;
+
+import java.util.concurrent.CancellationException;
+import java.util.stream.IntStream;
+
+/**
+ * Extends the Miller-Rabin prime checker to find the smallest factor
+ * of a composite number using Pollard's rho algorithm with Brent's
+ * cycle detection and batched GCDs.  Small factors are found by
+ * trial division first, and any remaining composite is split
+ * recursively until all its prime factors are known, so a semiprime
+ * with two large factors takes milliseconds rather than a search up
+ * to its square root.  More information on Pollard's rho algorithm
+ * is available at https://en.wikipedia.org/wiki/Pollard%27s_rho_algorithm.
+ */
+public class PollardRhoPrimeChecker
+       extends MillerRabinPrimeChecker {
+    /**
+     * Composites whose factors are all at least this large are split
+     * with Pollard's rho rather than by trial division.
+     */
+    private static final int sTRIAL_DIVISION_LIMIT = 1 << 10;
+
+    /**
+     * Number of |x - y| products accumulated between GCDs.
+     */
+    private static final int sGCD_BATCH_SIZE = 128;
+
+    /**
+     * The odd primes below sTRIAL_DIVISION_LIMIT.
+     */
+    private static final int[] sSMALL_PRIMES = oddPrimesBelow(sTRIAL_DIVISION_LIMIT);
+
+    /**
+     * Returns the smallest factor of composite @a n, which is the
+     * smallest of its prime factors.
+     */
+    @Override
+    protected long smallestFactorOfComposite(long n) {
+        return smallestPrimeFactor(n);
+    }
+
+    /**
+     * Returns the smallest prime factor of @a n > 1.
+     */
+    public static long smallestPrimeFactor(long n) {
+        if ((n & 1) == 0)
+            return 2;
+
+        for (int prime : sSMALL_PRIMES)
+            if (n % prime == 0)
+                return prime;
+
+        return smallestPrimeFactorOfRough(n);
+    }
+
+    /**
+     * Returns the smallest prime factor of @a n, none of whose
+     * factors are below sTRIAL_DIVISION_LIMIT.
+     */
+    private static long smallestPrimeFactorOfRough(long n) {
+        if (isPrime(n))
+            return n;
+
+        // Split n into two factors and recurse on both, since rho
+        // doesn't necessarily find the smallest factor first.
+        long factor = findFactor(n);
+        return Math.min(smallestPrimeFactorOfRough(factor),
+                        smallestPrimeFactorOfRough(n / factor));
+    }
+
+    /**
+     * Returns a non-trivial factor of odd composite @a n using
+     * Brent's variant of Pollard's rho algorithm, trying successive
+     * polynomials x^2 + c until one of them splits @a n.
+     */
+    private static long findFactor(long n) {
+        Montgomery montgomery = new Montgomery(n);
+
+        for (long c = 1; ; ++c) {
+            long factor =
+                findFactor(montgomery, montgomery.toMontgomery(c % n));
+            if (factor != n)
+                return factor;
+        }
+    }
+
+    /**
+     * Returns a factor of the modulus of @a montgomery found by
+     * iterating x^2 + @a c (in Montgomery form), which is the modulus
+     * itself if this polynomial fails to split it.
+     */
+    private static long findFactor(Montgomery montgomery,
+                                   long c) {
+        long n = montgomery.mModulus;
+        long y = montgomery.mOne;
+        long x = y;
+        long saved = y;
+        long product = montgomery.mOne;
+        long gcd = 1;
+
+        // Double the length of the cycle being searched each time
+        // around, as in Brent's cycle detection.
+        for (long length = 1; gcd == 1; length <<= 1) {
+            if (Thread.currentThread().isInterrupted())
+                throw new CancellationException
+                    ("interrupted while factoring " + n);
+
+            x = y;
+            for (long i = 0; i < length; ++i)
+                y = next(montgomery, y, c);
+
+            // Accumulate a batch of differences before each GCD,
+            // saving where the batch started in case it overshoots.
+            for (long k = 0; k < length && gcd == 1; k += sGCD_BATCH_SIZE) {
+                saved = y;
+                for (long i = 0; i < Math.min(sGCD_BATCH_SIZE, length - k); ++i) {
+                    y = next(montgomery, y, c);
+                    product = montgomery.multiply(product, difference(x, y));
+                }
+                gcd = gcd(product, n);
+            }
+        }
+
+        // If the batch multiplied in a factor of 0, step through it
+        // again one difference at a time.
+        if (gcd == n)
+            do {
+                saved = next(montgomery, saved, c);
+                gcd = gcd(difference(x, saved), n);
+            } while (gcd == 1);
+
+        return gcd;
+    }
+
+    /**
+     * Returns @a y^2 + @a c, in Montgomery form.
+     */
+    private static long next(Montgomery montgomery,
+                             long y,
+                             long c) {
+        return montgomery.add(montgomery.multiply(y, y), c);
+    }
+
+    /**
+     * Returns |@a a - @a b| for non-negative @a a and @a b.
+     */
+    private static long difference(long a, long b) {
+        return a > b ? a - b : b - a;
+    }
+
+    /**
+     * Returns the GCD of non-negative @a a and @a b using the
+     * iterative Euclid algorithm.
+     */
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long c = a % b;
+            a = b;
+            b = c;
+        }
+        return a;
+    }
+
+    /**
+     * Returns all the odd primes less than @a limit.
+     */
+    private static int[] oddPrimesBelow(int limit) {
+        return IntStream.range(3, limit)
+            .filter(i -> (i & 1) != 0 && isPrime(i))
+            .toArray();
+    }
+}
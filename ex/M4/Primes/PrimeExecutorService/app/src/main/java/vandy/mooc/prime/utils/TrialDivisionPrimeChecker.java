@@ -0,0 +1,121 @@
+package vandy.mooc.prime.utils;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Uses trial division to determine if a given number is prime or
+ * not, which is the same algorithm as the brute-force checkers but
+ * only divides by primes up to the square root of the number.  The
+ * primes come from a table computed once and shared by every
+ * instance, which covers every candidate below 2^32.  Larger
+ * candidates are then divided by the odd numbers beyond the table.
+ * Interruption is checked once per block of divisors rather than for
+ * each one, so it costs next to nothing.
+ */
+public class TrialDivisionPrimeChecker
+       implements PrimeChecker {
+    /**
+     * Bound on the primes in the table, whose square covers every
+     * candidate below 2^32.
+     */
+    private static final int sTABLE_LIMIT = 1 << 16;
+
+    /**
+     * All the primes below sTABLE_LIMIT in ascending order.
+     */
+    private static final int[] sPRIMES = primesBelow(sTABLE_LIMIT);
+
+    /**
+     * Number of divisors tested between checks for thread
+     * interruption, which must be a power of 2.
+     */
+    private static final int sINTERRUPT_CHECK_INTERVAL = 1 << 10;
+
+    /**
+     * Square root of Long.MAX_VALUE, rounded down.
+     */
+    private static final long sMAX_ROOT = 3_037_000_499L;
+
+    /**
+     * Returns 0 if @a n is prime or the smallest factor of @a n if
+     * it is not prime.
+     */
+    @Override
+    public long smallestFactor(long n) {
+        if (n <= 3)
+            return 0;
+
+        long limit = sqrt(n);
+
+        for (int i = 0; i < sPRIMES.length; ++i) {
+            int prime = sPRIMES[i];
+            if (prime > limit)
+                return 0;
+
+            if ((i & (sINTERRUPT_CHECK_INTERVAL - 1)) == 0)
+                checkInterrupted(n);
+
+            if (n % prime == 0)
+                return prime;
+        }
+
+        // Only reached if n is at least 2^32 and has no factor in the
+        // table.
+        for (long factor = sTABLE_LIMIT + 1; factor <= limit; factor += 2) {
+            if ((factor & (2 * sINTERRUPT_CHECK_INTERVAL - 1)) == 1)
+                checkInterrupted(n);
+
+            if (n % factor == 0)
+                return factor;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Throw CancellationException if the thread factoring @a n has
+     * been interrupted.
+     */
+    private static void checkInterrupted(long n) {
+        if (Thread.currentThread().isInterrupted())
+            throw new CancellationException
+                ("interrupted while factoring " + n);
+    }
+
+    /**
+     * Returns the largest number whose square is at most @a n.
+     */
+    private static long sqrt(long n) {
+        long root = Math.min((long) Math.sqrt((double) n), sMAX_ROOT);
+
+        // Correct the rounding of the double square root.
+        while (root * root > n)
+            --root;
+        while (root < sMAX_ROOT && (root + 1) * (root + 1) <= n)
+            ++root;
+        return root;
+    }
+
+    /**
+     * Returns all the primes less than @a limit using a simple Sieve
+     * of Eratosthenes.
+     */
+    private static int[] primesBelow(int limit) {
+        boolean[] composite = new boolean[limit];
+        int count = 0;
+        for (int i = 2; i < limit; ++i)
+            if (!composite[i]) {
+                ++count;
+                for (long multiple = (long) i * i;
+                     multiple < limit;
+                     multiple += i)
+                    composite[(int) multiple] = true;
+            }
+
+        int[] primes = new int[count];
+        for (int i = 2, j = 0; i < limit; ++i)
+            if (!composite[i])
+                primes[j++] = i;
+        return primes;
+    }
+}
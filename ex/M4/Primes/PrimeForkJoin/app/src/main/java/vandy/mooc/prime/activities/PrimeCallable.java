@@ -0,0 +1,79 @@
+package vandy.mooc.prime.activities;
+
+import java.util.concurrent.Callable;
+
+import vandy.mooc.prime.utils.PrimeChecker;
+import vandy.mooc.prime.utils.TrialDivisionPrimeChecker;
+
+/**
+ * Uses a PrimeChecker strategy to determine if a given number is
+ * prime or not, which defaults to trial division by the primes up to
+ * its square root.
+ */
+public class PrimeCallable
+       implements Callable<PrimeCallable.PrimeResult> {
+    /** 
+     * Number to evaluate for "primality".
+     */
+    private final long mPrimeCandidate;
+
+    /**
+     * Strategy used to determine if mPrimeCandidate is prime or not.
+     */
+    private final PrimeChecker mPrimeChecker;
+
+    /**
+     * The result returned via the future.
+     */
+    public static class PrimeResult {
+        /**
+         * Value that was evaluated for primality.
+         */
+        long mPrimeCandidate;
+        
+        /**
+         * Result of the isPrime() method.
+         */
+        long mSmallestFactor;
+        
+        /**
+         * Constructor initializes the fields.
+         */
+        PrimeResult(long primeCandidate, long smallestFactor) {
+            mPrimeCandidate = primeCandidate;
+            mSmallestFactor = smallestFactor;
+        }
+    }
+
+    /**
+     * Constructor initializes the fields.
+     */
+    public PrimeCallable(long primeCandidate) {
+        mPrimeCandidate = primeCandidate;
+        mPrimeChecker = new TrialDivisionPrimeChecker();
+    }
+
+    /**
+     * Constructor initializes the fields so that @a primeCandidate is
+     * checked by the given @a primeChecker strategy.
+     */
+    public PrimeCallable(long primeCandidate,
+                         PrimeChecker primeChecker) {
+        mPrimeCandidate = primeCandidate;
+        mPrimeChecker = primeChecker;
+    }
+    
+    /**
+     * Hook method that determines if a given number is prime.
+     * Returns 0 if it is prime or the smallest factor if it is not
+     * prime.
+     */
+    public PrimeResult call() {
+        // Return a PrimeResult containing the prime candidate and the
+        // result of checking this number for primality.
+        return new PrimeResult(mPrimeCandidate,
+                               // Determine if mPrimeCandidate is
+                               // prime or not.
+                               mPrimeChecker.smallestFactor(mPrimeCandidate));
+    }
+}
@@ -0,0 +1,169 @@
+package vandy.mooc.prime.activities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountedCompleter;
+import java.util.function.Consumer;
+
+import vandy.mooc.prime.utils.PrimeChecker;
+
+/**
+ * Uses a PrimeChecker strategy to determine if each number in a range
+ * of candidates is prime or not, running in a ForkJoinPool.  The
+ * range is split in half recursively, forking one half each time,
+ * until it's no larger than a threshold, so idle worker threads steal
+ * the pending halves and uneven candidate costs balance out across
+ * the cores.  The results of each leaf range are passed to a Consumer
+ * in bulk, and the root task runs a callback once every leaf has
+ * completed, so no thread blocks waiting for the results.
+ */
+public class PrimeTask
+       extends CountedCompleter<Void> {
+    /**
+     * Numbers to evaluate for "primality".
+     */
+    private final long[] mCandidates;
+
+    /**
+     * Index of the first candidate in this task's range.
+     */
+    private final int mFrom;
+
+    /**
+     * Index just past the last candidate in this task's range.
+     */
+    private final int mTo;
+
+    /**
+     * Ranges with at most this many candidates are checked without
+     * splitting them further.
+     */
+    private final int mThreshold;
+
+    /**
+     * Strategy used to determine if each candidate is prime or not.
+     */
+    private final PrimeChecker mPrimeChecker;
+
+    /**
+     * Receives the results of each leaf range.
+     */
+    private final Consumer<List<PrimeCallable.PrimeResult>> mResults;
+
+    /**
+     * Called when the root task completes, either normally or
+     * exceptionally.
+     */
+    private final Runnable mOnDone;
+
+    /**
+     * Constructor initializes the fields of the root task, which
+     * checks all the @a candidates.
+     */
+    public PrimeTask(long[] candidates,
+                     int threshold,
+                     PrimeChecker primeChecker,
+                     Consumer<List<PrimeCallable.PrimeResult>> results,
+                     Runnable onDone) {
+        this(null,
+             candidates,
+             0,
+             candidates.length,
+             threshold,
+             primeChecker,
+             results,
+             onDone);
+    }
+
+    /**
+     * Constructor initializes the fields of a task that checks the
+     * candidates in [@a from, @a to) on behalf of @a parent.
+     */
+    private PrimeTask(PrimeTask parent,
+                      long[] candidates,
+                      int from,
+                      int to,
+                      int threshold,
+                      PrimeChecker primeChecker,
+                      Consumer<List<PrimeCallable.PrimeResult>> results,
+                      Runnable onDone) {
+        super(parent);
+        mCandidates = candidates;
+        mFrom = from;
+        mTo = to;
+        mThreshold = Math.max(1, threshold);
+        mPrimeChecker = primeChecker;
+        mResults = results;
+        mOnDone = onDone;
+    }
+
+    /**
+     * Hook method that forks the upper half of the range until what's
+     * left is small enough, and then checks the remaining candidates.
+     */
+    @Override
+    public void compute() {
+        int to = mTo;
+
+        // Fork the upper half each time around, keeping the lower
+        // half for this thread.
+        while (to - mFrom > mThreshold) {
+            int middle = (mFrom + to) >>> 1;
+            addToPendingCount(1);
+            new PrimeTask(this,
+                          mCandidates,
+                          middle,
+                          to,
+                          mThreshold,
+                          mPrimeChecker,
+                          mResults,
+                          null).fork();
+            to = middle;
+        }
+
+        List<PrimeCallable.PrimeResult> results =
+            new ArrayList<>(to - mFrom);
+
+        // Stop early if the pool is shut down while checking.
+        for (int i = mFrom;
+             i < to && !Thread.currentThread().isInterrupted();
+             ++i)
+            results.add(new PrimeCallable.PrimeResult
+                        (mCandidates[i],
+                         mPrimeChecker.smallestFactor(mCandidates[i])));
+
+        mResults.accept(results);
+
+        // Complete this task and, once all its forked subtasks have
+        // also completed, its parent.
+        tryComplete();
+    }
+
+    /**
+     * Hook method called when this task and all of its subtasks have
+     * completed normally.
+     */
+    @Override
+    public void onCompletion(CountedCompleter<?> caller) {
+        if (mOnDone != null)
+            mOnDone.run();
+    }
+
+    /**
+     * Hook method called when this task or one of its subtasks threw
+     * @a exception, which is propagated up to the root task.
+     */
+    @Override
+    public boolean onExceptionalCompletion(Throwable exception,
+                                           CountedCompleter<?> caller) {
+        if (mOnDone != null) {
+            // Interrupting the checkers makes them throw
+            // CancellationException, which isn't worth reporting.
+            if (!(exception instanceof CancellationException))
+                exception.printStackTrace();
+            mOnDone.run();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,14 @@
+package vandy.mooc.prime.utils;
+
+/**
+ * This functional interface defines the strategy used to determine
+ * whether a given number is prime or not.
+ */
+@FunctionalInterface
+public interface PrimeChecker {
+    /**
+     * Returns 0 if @a n is prime or the smallest factor of @a n if
+     * it is not prime.  Numbers less than 4 are treated as prime.
+     */
+    long smallestFactor(long n);
+}